@@ -0,0 +1,143 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.clients;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import ch.xxx.trader.domain.model.entity.QuoteBf;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.domain.model.entity.QuoteCbAccessors;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import ch.xxx.trader.domain.model.entity.QuoteIb;
+import ch.xxx.trader.usecase.services.MyQuoteClient;
+import reactor.core.publisher.Mono;
+
+@Service
+public class RestQuoteClient implements MyQuoteClient {
+	private static final Logger LOG = LoggerFactory.getLogger(RestQuoteClient.class);
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final String URLBS = "https://www.bitstamp.net/api";
+	private static final String URLCB = "https://api.coinbase.com/v2";
+	private static final String URLIB = "https://api.itbit.com";
+	private static final String URLBF = "https://api.bitfinex.com";
+	private final WebClient webClient;
+
+	public RestQuoteClient(WebClient webClient) {
+		this.webClient = webClient;
+	}
+
+	@Override
+	public Mono<QuoteBs> getQuoteBitstamp(String currpair) {
+		return this.webClient.get().uri(String.format("%s/v2/ticker/%s/", URLBS, currpair))
+				.accept(MediaType.APPLICATION_JSON).exchangeToMono(response -> response.bodyToMono(QuoteBs.class))
+				.map(res -> {
+					res.setPair(currpair);
+					return res;
+				});
+	}
+
+	@Override
+	public Mono<QuoteBf> getQuoteBitfinex(String currpair) {
+		return this.webClient.get().uri(String.format("%s/v1/pubticker/%s", URLBF, currpair))
+				.accept(MediaType.APPLICATION_JSON).exchangeToMono(response -> response.bodyToMono(QuoteBf.class))
+				.map(res -> {
+					res.setPair(currpair);
+					return this.checkBfTimestamp(res);
+				});
+	}
+
+	@Override
+	public Mono<QuoteIb> getQuoteItbit(String currpair) {
+		return this.webClient.get().uri(String.format("%s/v1/markets/%s/ticker", URLIB, currpair))
+				.accept(MediaType.APPLICATION_JSON).exchangeToMono(response -> response.bodyToMono(QuoteIb.class));
+	}
+
+	@Override
+	public Mono<QuoteCbRates> getQuoteCoinbase(String currency) {
+		return this.webClient.get().uri(String.format("%s/exchange-rates?currency=%s", URLCB, currency))
+				.accept(MediaType.APPLICATION_JSON)
+				.exchangeToMono(response -> DataBufferUtils.join(response.bodyToFlux(DataBuffer.class)))
+				.map(dataBuffer -> {
+					try (InputStream inputStream = dataBuffer.asInputStream(true)) {
+						return parseCoinbaseRates(inputStream);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+
+	static QuoteCbRates parseCoinbaseRates(InputStream inputStream) throws IOException {
+		double[] rates = QuoteCbRates.createEmptyRates();
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			int depth = 0;
+			boolean inData = false;
+			boolean inRates = false;
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+					depth++;
+				} else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+					depth--;
+					inRates = inRates && depth >= 3;
+					inData = inData && depth >= 2;
+				} else if (token == JsonToken.FIELD_NAME && depth == 1) {
+					inData = "data".equals(parser.getCurrentName());
+				} else if (token == JsonToken.FIELD_NAME && depth == 2 && inData) {
+					inRates = "rates".equals(parser.getCurrentName());
+				} else if (token == JsonToken.FIELD_NAME && depth == 3 && inRates) {
+					int index = QuoteCbAccessors.indexOf(parser.getCurrentName());
+					JsonToken valueToken = parser.nextToken();
+					if (index >= 0 && (valueToken == JsonToken.VALUE_STRING || valueToken.isNumeric())) {
+						rates[index] = parser.getValueAsDouble(Double.NaN);
+					} else if (valueToken.isStructStart()) {
+						parser.skipChildren();
+					}
+				}
+			}
+		}
+		return new QuoteCbRates(new Date(), rates);
+	}
+
+	private QuoteBf checkBfTimestamp(QuoteBf res) {
+		QuoteBf result = res;
+		try {
+			BigDecimal timestamp = new BigDecimal(res.getTimestamp());
+			LOG.debug(timestamp.toString());
+		} catch (Exception e) {
+			LOG.warn(String.format("Failed to parse the timestamp: %s", res.getTimestamp()), e);
+			result = new QuoteBf(res.getMid(), res.getBid(), res.getAsk(), res.getLast_price(), res.getLow(),
+					res.getHigh(), res.getVolume(), "0.0");
+			result.setPair(res.getPair());
+		}
+		return result;
+	}
+}
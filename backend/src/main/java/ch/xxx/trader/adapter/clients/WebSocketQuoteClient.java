@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.clients;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.xxx.trader.domain.model.entity.QuoteBf;
+import ch.xxx.trader.usecase.services.MyQuoteStreamClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+@Service
+public class WebSocketQuoteClient implements MyQuoteStreamClient {
+	private static final Logger LOG = LoggerFactory.getLogger(WebSocketQuoteClient.class);
+	private static final Duration HEARTBEAT_TIMEOUT = Duration.ofSeconds(45L);
+	private static final Duration RECONNECT_DELAY = Duration.ofSeconds(1L);
+	private static final Duration MAX_RECONNECT_DELAY = Duration.ofSeconds(30L);
+	private final WebSocketClient wsClient = new ReactorNettyWebSocketClient();
+	private final ObjectMapper objectMapper;
+	private final URI bitfinexUri;
+
+	public WebSocketQuoteClient(ObjectMapper objectMapper,
+			@Value("${ingestion.bitfinex.ws-url:wss://api-pub.bitfinex.com/ws/2}") String bitfinexUrl) {
+		this.objectMapper = objectMapper;
+		this.bitfinexUri = URI.create(bitfinexUrl);
+	}
+
+	@Override
+	public Flux<QuoteBf> streamQuotesBitfinex(List<String> pairs) {
+		Map<String, String> pairsBySymbol = pairs.stream()
+				.collect(Collectors.toMap(pair -> pair.toUpperCase(), Function.identity(), (a, b) -> a));
+		return Flux.defer(() -> this.connectBitfinex(pairsBySymbol))
+				.repeatWhen(completed -> completed.doOnNext(
+						value -> LOG.info("Bitfinex websocket closed, reconnecting to {}", this.bitfinexUri))
+						.delayElements(RECONNECT_DELAY))
+				.doOnError(ex -> LOG.warn(String.format("Bitfinex websocket failed, reconnecting to %s",
+						this.bitfinexUri), ex))
+				.retryWhen(Retry.backoff(Long.MAX_VALUE, RECONNECT_DELAY).maxBackoff(MAX_RECONNECT_DELAY)
+						.transientErrors(true));
+	}
+
+	private Flux<QuoteBf> connectBitfinex(Map<String, String> pairsBySymbol) {
+		return Flux.create(emitter -> {
+			Map<Long, String> pairsByChannel = new ConcurrentHashMap<>();
+			Disposable disposable = this.wsClient.execute(this.bitfinexUri,
+					session -> this.subscribeBitfinex(session, pairsBySymbol.keySet())
+							.and(session.receive().map(WebSocketMessage::getPayloadAsText).timeout(HEARTBEAT_TIMEOUT)
+									.flatMap(msg -> Mono
+											.justOrEmpty(this.parseBitfinex(msg, pairsByChannel, pairsBySymbol)))
+									.doOnNext(emitter::next)))
+					.subscribe(null, emitter::error, emitter::complete);
+			emitter.onDispose(disposable);
+		});
+	}
+
+	private Mono<Void> subscribeBitfinex(WebSocketSession session, Iterable<String> symbols) {
+		return session.send(Flux.fromIterable(symbols).map(symbol -> session.textMessage(
+				String.format("{\"event\":\"subscribe\",\"channel\":\"ticker\",\"symbol\":\"t%s\"}", symbol))));
+	}
+
+	private Optional<QuoteBf> parseBitfinex(String msg, Map<Long, String> pairsByChannel,
+			Map<String, String> pairsBySymbol) {
+		Optional<QuoteBf> result = Optional.empty();
+		try {
+			JsonNode node = this.objectMapper.readTree(msg);
+			if (node.isObject() && "subscribed".equals(node.path("event").asText())) {
+				String pair = pairsBySymbol.get(node.path("pair").asText().toUpperCase());
+				if (pair != null) {
+					pairsByChannel.put(node.path("chanId").asLong(), pair);
+				}
+			} else if (node.isArray() && node.size() > 1 && node.get(1).isArray() && node.get(1).size() > 9) {
+				String pair = pairsByChannel.get(node.get(0).asLong());
+				if (pair != null) {
+					JsonNode ticker = node.get(1);
+					BigDecimal bid = new BigDecimal(ticker.get(0).asText());
+					BigDecimal ask = new BigDecimal(ticker.get(2).asText());
+					BigDecimal mid = bid.add(ask).divide(BigDecimal.valueOf(2));
+					QuoteBf quote = new QuoteBf(mid, bid, ask, new BigDecimal(ticker.get(6).asText()),
+							new BigDecimal(ticker.get(9).asText()), new BigDecimal(ticker.get(8).asText()),
+							new BigDecimal(ticker.get(7).asText()),
+							BigDecimal.valueOf(System.currentTimeMillis()).movePointLeft(3).toPlainString());
+					quote.setPair(pair);
+					result = Optional.of(quote);
+				}
+			}
+		} catch (Exception e) {
+			LOG.warn(String.format("Failed to parse the Bitfinex message: %s", msg), e);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.config;
+
+import java.math.BigDecimal;
+
+import org.bson.types.Decimal128;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.WritingConverter;
+
+/**
+ * Stores BigDecimals as Decimal128 instead of strings. Reading Decimal128 and
+ * legacy string values is supported by the default conversions.
+ */
+public final class BigDecimalConverters {
+	private BigDecimalConverters() {
+	}
+
+	@WritingConverter
+	public static class BigDecimalToDecimal128Converter implements Converter<BigDecimal, Decimal128> {
+		@Override
+		public Decimal128 convert(BigDecimal source) {
+			return new Decimal128(source);
+		}
+	}
+}
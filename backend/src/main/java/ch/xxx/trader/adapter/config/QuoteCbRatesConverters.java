@@ -0,0 +1,179 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.config;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import ch.xxx.trader.domain.common.MongoUtils;
+import ch.xxx.trader.domain.common.QuoteCbCodec;
+import ch.xxx.trader.domain.model.entity.QuoteCb;
+import ch.xxx.trader.domain.model.entity.QuoteCbAccessors;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import ch.xxx.trader.usecase.services.QuoteCbStorageService;
+
+/**
+ * Maps the compact QuoteCbRates to the QuoteCb document layout with string
+ * or double rates or to the
+ * packed layout with the dictionary version and one binary rate vector. Both
+ * layouts are read, legacy documents stay readable during the migration.
+ * Packed delta frames are read with their keyAt and prevAt, the repository
+ * decodes them with their predecessor.
+ */
+public final class QuoteCbRatesConverters {
+	private static final Logger LOG = LoggerFactory.getLogger(QuoteCbRatesConverters.class);
+	private static final String ID = "_id";
+	private static final String CREATED_AT = "createdAt";
+	private static final String COUNT = "count";
+	private static final String MINUTE = MongoUtils.MINUTE;
+	private static final String CLASS = "_class";
+	private static final String DICTIONARY = QuoteCbStorageService.DICTIONARY_FIELD;
+	private static final String KEY_AT = QuoteCbStorageService.KEY_AT_FIELD;
+	private static final String PREV_AT = QuoteCbStorageService.PREV_AT_FIELD;
+
+	private QuoteCbRatesConverters() {
+	}
+
+	public static List<Converter<?, ?>> getConverters(QuoteCbCodec quoteCbCodec, boolean packed,
+			boolean numeric) {
+		return List.of(new QuoteCbRatesWriteConverter(quoteCbCodec, packed, numeric),
+				new QuoteCbRatesReadConverter(quoteCbCodec));
+	}
+
+	@WritingConverter
+	public static class QuoteCbRatesWriteConverter implements Converter<QuoteCbRates, Document> {
+		private final QuoteCbCodec quoteCbCodec;
+		private final boolean packed;
+		private final boolean numeric;
+
+		public QuoteCbRatesWriteConverter(QuoteCbCodec quoteCbCodec, boolean packed, boolean numeric) {
+			this.quoteCbCodec = quoteCbCodec;
+			this.packed = packed;
+			this.numeric = numeric;
+		}
+
+		@Override
+		public Document convert(QuoteCbRates source) {
+			Document document = new Document();
+			if (source.get_id() != null) {
+				document.put(ID, source.get_id());
+			}
+			document.put(CREATED_AT, source.getCreatedAt());
+			if (source.getCount() != null) {
+				document.put(COUNT, source.getCount());
+			}
+			if (source.getMinute() != null) {
+				document.put(MINUTE, source.getMinute());
+			}
+			if (this.packed) {
+				this.writePacked(source, document);
+			} else {
+				double[] rates = source.values();
+				for (int i = 0; i < rates.length; i++) {
+					if (!Double.isNaN(rates[i])) {
+						document.put(QuoteCbAccessors.FIELDS[i],
+								this.numeric ? rates[i] : BigDecimal.valueOf(rates[i]).toPlainString());
+					}
+				}
+			}
+			document.put(CLASS, QuoteCb.class.getName());
+			return document;
+		}
+
+		private void writePacked(QuoteCbRates source, Document document) {
+			Optional<QuoteCbRates> previous = Optional.ofNullable(source.getPrevious())
+					.filter(myPrevious -> !myPrevious.isBrokenChain());
+			document.put(DICTIONARY, this.quoteCbCodec.getVersion());
+			if (source.getKeyAt() != null) {
+				document.put(KEY_AT, source.getKeyAt());
+			}
+			previous.ifPresent(myPrevious -> document.put(PREV_AT, myPrevious.getCreatedAt()));
+			document.put(QuoteCbStorageService.PACKED_FIELD, new Binary(this.quoteCbCodec.encode(source.values(),
+					previous.map(QuoteCbRates::values).orElse(null))));
+		}
+	}
+
+	@ReadingConverter
+	public static class QuoteCbRatesReadConverter implements Converter<Document, QuoteCbRates> {
+		private final QuoteCbCodec quoteCbCodec;
+
+		public QuoteCbRatesReadConverter(QuoteCbCodec quoteCbCodec) {
+			this.quoteCbCodec = quoteCbCodec;
+		}
+
+		@Override
+		public QuoteCbRates convert(Document source) {
+			QuoteCbRates quoteCbRates = source.get(QuoteCbStorageService.PACKED_FIELD) instanceof Binary binary
+					? this.readPacked(source, binary.getData())
+					: this.readFields(source);
+			if (source.get(ID) instanceof ObjectId objectId) {
+				quoteCbRates.set_id(objectId);
+			}
+			if (source.get(COUNT) instanceof Number count) {
+				quoteCbRates.setCount(count.longValue());
+			}
+			if (source.get(MINUTE) instanceof Number minute) {
+				quoteCbRates.setMinute(minute.intValue());
+			}
+			return quoteCbRates;
+		}
+
+		private QuoteCbRates readPacked(Document source, byte[] data) {
+			Date createdAt = source.get(CREATED_AT, Date.class);
+			Integer version = source.getInteger(DICTIONARY);
+			int[] storedIndexes = Optional.ofNullable(version).flatMap(this.quoteCbCodec::storedIndexes)
+					.orElse(null);
+			if (storedIndexes == null) {
+				LOG.warn(String.format("Unknown Coinbase dictionary version %d at %s", version, createdAt));
+				return new QuoteCbRates(createdAt, QuoteCbRates.createEmptyRates());
+			}
+			return QuoteCbRates.packed(createdAt, data, storedIndexes, source.get(KEY_AT, Date.class),
+					source.get(PREV_AT, Date.class));
+		}
+
+		private QuoteCbRates readFields(Document source) {
+			double[] rates = QuoteCbRates.createEmptyRates();
+			for (int i = 0; i < rates.length; i++) {
+				rates[i] = toDouble(source.get(QuoteCbAccessors.FIELDS[i]));
+			}
+			return new QuoteCbRates(source.get(CREATED_AT, Date.class), rates);
+		}
+
+		private static double toDouble(Object value) {
+			double result = Double.NaN;
+			if (value instanceof Decimal128 decimal128) {
+				result = decimal128.doubleValue();
+			} else if (value instanceof Number number) {
+				result = number.doubleValue();
+			} else if (value instanceof String string && !string.isBlank()) {
+				result = Double.parseDouble(string);
+			}
+			return result;
+		}
+	}
+}
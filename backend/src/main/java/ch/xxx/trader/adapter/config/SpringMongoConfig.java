@@ -15,10 +15,16 @@
  */
 package ch.xxx.trader.adapter.config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
 import org.springframework.http.codec.ServerCodecConfigurer;
 import org.springframework.http.codec.support.DefaultServerCodecConfigurer;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -26,6 +32,9 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 
 import com.mongodb.reactivestreams.client.MongoClient;
 
+import ch.xxx.trader.adapter.config.BigDecimalConverters.BigDecimalToDecimal128Converter;
+import ch.xxx.trader.domain.common.QuoteCbCodec;
+import ch.xxx.trader.domain.model.entity.QuoteCbAccessors;
 import net.javacrumbs.shedlock.core.LockProvider;
 import net.javacrumbs.shedlock.provider.mongo.reactivestreams.ReactiveStreamsMongoLockProvider;
 
@@ -44,6 +53,23 @@ public class SpringMongoConfig {
 		return new DefaultServerCodecConfigurer();
 	}
 
+	@Bean
+	public QuoteCbCodec quoteCbCodec() {
+		return new QuoteCbCodec(List.of(QuoteCbAccessors.FIELDS));
+	}
+
+	@Bean
+	public MongoCustomConversions mongoCustomConversions(QuoteCbCodec quoteCbCodec,
+			@Value("${coinbase.storage.packed:false}") boolean packed,
+			@Value("${mongo.decimal.numeric:false}") boolean numericDecimals) {
+		List<Converter<?, ?>> converters = new ArrayList<>(
+				QuoteCbRatesConverters.getConverters(quoteCbCodec, packed, numericDecimals));
+		if (numericDecimals) {
+			converters.add(new BigDecimalToDecimal128Converter());
+		}
+		return new MongoCustomConversions(converters);
+	}
+
 	@Bean
 	public LockProvider lockProvider(MongoClient mongo) {
 		return new ReactiveStreamsMongoLockProvider(mongo.getDatabase(SCHED_LOCK_DB));
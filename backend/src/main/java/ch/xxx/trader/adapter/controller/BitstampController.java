@@ -15,13 +15,22 @@
  */
 package ch.xxx.trader.adapter.controller;
 
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import ch.xxx.trader.domain.model.entity.Candle;
 import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.usecase.common.QuoteResponses;
 import ch.xxx.trader.usecase.services.BitstampService;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -41,17 +50,25 @@ public class BitstampController {
 	}
 
 	@GetMapping("/{pair}/current")
-	public Mono<QuoteBs> currentQuoteBtc(@PathVariable String pair) {
-		return this.bitstampService.currentQuoteBtc(pair);
+	public Mono<ResponseEntity<QuoteBs>> currentQuoteBtc(@PathVariable String pair) {
+		return this.bitstampService.currentQuoteBtc(pair).map(QuoteResponses::createCurrentResponse);
 	}
 	
 	@GetMapping("/{pair}/{timeFrame}")
-	public Flux<QuoteBs> tfQuotesBtc(@PathVariable String timeFrame, @PathVariable String pair) {
-		return this.bitstampService.tfQuotesBtc(timeFrame, pair);
+	public Mono<ResponseEntity<List<QuoteBs>>> tfQuotesBtc(@PathVariable String timeFrame, @PathVariable String pair,
+			@RequestHeader HttpHeaders headers) {
+		return QuoteResponses.createTimeFrameResponse(headers, this.bitstampService.tfQuotesBtcVersion(timeFrame, pair),
+				() -> this.bitstampService.tfQuotesBtc(timeFrame, pair));
 	}
 	
 	@GetMapping(path="/{pair}/{timeFrame}/pdf", produces=MediaType.APPLICATION_PDF_VALUE)
 	public Mono<byte[]> pdfReport(@PathVariable String timeFrame, @PathVariable String pair) {
 		return this.bitstampService.pdfReport(timeFrame, pair);		
 	}
+
+	@GetMapping("/{pair}/candles/{resolution}")
+	public Flux<Candle> candles(@PathVariable String pair, @PathVariable String resolution,
+			@RequestParam Optional<String> timeFrame) {
+		return this.bitstampService.candles(pair, resolution, timeFrame);
+	}
 }
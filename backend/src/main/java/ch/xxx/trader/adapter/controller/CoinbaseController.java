@@ -15,12 +15,23 @@
  */
 package ch.xxx.trader.adapter.controller;
 
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import ch.xxx.trader.domain.model.entity.Candle;
 import ch.xxx.trader.domain.model.entity.QuoteCb;
+import ch.xxx.trader.domain.model.entity.QuoteCbCurrency;
 import ch.xxx.trader.domain.model.entity.QuoteCbSmall;
+import ch.xxx.trader.usecase.common.QuoteResponses;
 import ch.xxx.trader.usecase.services.CoinbaseService;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -65,7 +76,20 @@ public class CoinbaseController {
 	}
 	
 	@GetMapping("/current")
-	public Mono<QuoteCb> currentQuoteBc() {
-		return this.coinbaseService.currentQuoteBc();
+	public Mono<ResponseEntity<QuoteCb>> currentQuoteBc() {
+		return this.coinbaseService.currentQuoteBc().map(QuoteResponses::createCurrentResponse);
 	}	
+
+	@GetMapping("/{currency}/{timeFrame}")
+	public Mono<ResponseEntity<List<QuoteCbCurrency>>> currencyQuotes(@PathVariable String currency,
+			@PathVariable String timeFrame, @RequestHeader HttpHeaders headers) {
+		return QuoteResponses.createTimeFrameResponse(headers, this.coinbaseService.currencyQuotesVersion(timeFrame),
+				() -> this.coinbaseService.currencyQuotes(currency, timeFrame));
+	}
+
+	@GetMapping("/{currency}/candles/{resolution}")
+	public Flux<Candle> candles(@PathVariable String currency, @PathVariable String resolution,
+			@RequestParam Optional<String> timeFrame) {
+		return this.coinbaseService.candles(currency, resolution, timeFrame);
+	}
 }
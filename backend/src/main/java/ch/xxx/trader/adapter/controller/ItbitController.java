@@ -15,16 +15,24 @@
  */
 package ch.xxx.trader.adapter.controller;
 
-import jakarta.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.Optional;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import ch.xxx.trader.domain.model.entity.Candle;
 import ch.xxx.trader.domain.model.entity.QuoteIb;
+import ch.xxx.trader.usecase.common.QuoteResponses;
 import ch.xxx.trader.usecase.services.ItbitService;
+import jakarta.servlet.http.HttpServletRequest;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -43,17 +51,25 @@ public class ItbitController {
 	}
 
 	@GetMapping("/{pair}/current")
-	public Mono<QuoteIb> currentQuote(@PathVariable String pair) {
-		return this.itbitService.currentQuote(pair);
+	public Mono<ResponseEntity<QuoteIb>> currentQuote(@PathVariable String pair) {
+		return this.itbitService.currentQuote(pair).map(QuoteResponses::createCurrentResponse);
 	}
 
 	@GetMapping("/{pair}/{timeFrame}")
-	public Flux<QuoteIb> tfQuotes(@PathVariable String timeFrame, @PathVariable String pair) {
-		return this.itbitService.tfQuotes(timeFrame, pair);
+	public Mono<ResponseEntity<List<QuoteIb>>> tfQuotes(@PathVariable String timeFrame, @PathVariable String pair,
+			@RequestHeader HttpHeaders headers) {
+		return QuoteResponses.createTimeFrameResponse(headers, this.itbitService.tfQuotesVersion(timeFrame, pair),
+				() -> this.itbitService.tfQuotes(timeFrame, pair));
 	}		
 	
 	@GetMapping(path="/{pair}/{timeFrame}/pdf", produces=MediaType.APPLICATION_PDF_VALUE)
 	public Mono<byte[]> pdfReport(@PathVariable String timeFrame, @PathVariable String pair) {
 		return this.itbitService.pdfReport(timeFrame, pair);
 	}	
+
+	@GetMapping("/{pair}/candles/{resolution}")
+	public Flux<Candle> candles(@PathVariable String pair, @PathVariable String resolution,
+			@RequestParam Optional<String> timeFrame) {
+		return this.itbitService.candles(pair, resolution, timeFrame);
+	}
 }
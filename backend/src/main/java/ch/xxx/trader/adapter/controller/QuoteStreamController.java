@@ -0,0 +1,51 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.controller;
+
+import java.util.Optional;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import ch.xxx.trader.usecase.services.QuoteStreamService;
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("/stream")
+public class QuoteStreamController {
+	private final QuoteStreamService quoteStreamService;
+
+	public QuoteStreamController(QuoteStreamService quoteStreamService) {
+		this.quoteStreamService = quoteStreamService;
+	}
+
+	@GetMapping(path = "/quotes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public Flux<ServerSentEvent<Object>> streamQuotes(@RequestParam Optional<String> exchange,
+			@RequestParam Optional<String> pair) {
+		// an empty stream would make the EventSource reconnect right away
+		if (exchange.isPresent() && this.quoteStreamService.findExchange(exchange.get()).isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					String.format("Unknown exchange: %s", exchange.get()));
+		}
+		return this.quoteStreamService.streamQuotes(exchange, pair);
+	}
+}
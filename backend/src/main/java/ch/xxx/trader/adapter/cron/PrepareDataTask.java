@@ -25,8 +25,12 @@ import org.springframework.stereotype.Component;
 
 import ch.xxx.trader.usecase.services.BitfinexService;
 import ch.xxx.trader.usecase.services.BitstampService;
+import ch.xxx.trader.usecase.services.CandleService;
 import ch.xxx.trader.usecase.services.CoinbaseService;
+import ch.xxx.trader.usecase.services.DecimalMigrationService;
 import ch.xxx.trader.usecase.services.ItbitService;
+import ch.xxx.trader.usecase.services.QuoteArchiveService;
+import ch.xxx.trader.usecase.services.QuoteBucketService;
 import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
 import reactor.core.Disposable;
 
@@ -37,22 +41,37 @@ public class PrepareDataTask {
 	private final BitfinexService bitfinexService;
 	private final ItbitService itbitService;
 	private final CoinbaseService coinbaseService;
+	private final CandleService candleService;
+	private final DecimalMigrationService decimalMigrationService;
+	private final QuoteArchiveService quoteArchiveService;
+	private final QuoteBucketService quoteBucketService;
 	private Optional<Disposable> bitstampDisposableOpt = Optional.empty();
 	private Optional<Disposable> bitfinexDisposableOpt = Optional.empty();
 	private Optional<Disposable> itbitDisposableOpt = Optional.empty();
 	private Optional<Disposable> coinbaseDisposableOpt = Optional.empty();
+	private Optional<Disposable> candleDisposableOpt = Optional.empty();
+	private Optional<Disposable> coinbaseStorageDisposableOpt = Optional.empty();
+	private Optional<Disposable> decimalMigrationDisposableOpt = Optional.empty();
+	private Optional<Disposable> archiveDisposableOpt = Optional.empty();
+	private Optional<Disposable> bucketMigrationDisposableOpt = Optional.empty();
 
 	public PrepareDataTask(BitstampService bitstampService, BitfinexService bitfinexService, ItbitService itbitService,
-			CoinbaseService coinbaseService) {
+			CoinbaseService coinbaseService, CandleService candleService,
+			DecimalMigrationService decimalMigrationService, QuoteArchiveService quoteArchiveService,
+			QuoteBucketService quoteBucketService) {
 		this.bitstampService = bitstampService;
 		this.bitfinexService = bitfinexService;
 		this.itbitService = itbitService;
 		this.coinbaseService = coinbaseService;
+		this.candleService = candleService;
+		this.decimalMigrationService = decimalMigrationService;
+		this.quoteArchiveService = quoteArchiveService;
+		this.quoteBucketService = quoteBucketService;
 	}
 	
 	@Async("futureTaskExecutor")
 	@Scheduled(cron = "0 5 0,12 ? * ?")
-	@SchedulerLock(name = "bitstamp_avg_scheduledTask", lockAtLeastFor = "PT10H", lockAtMostFor = "PT11H")
+	@SchedulerLock(name = "bitstamp_avg_scheduledTask", lockAtLeastFor = "PT1H", lockAtMostFor = "PT2H")
 	public void createBsAvg() {
 		this.bitstampDisposableOpt.ifPresent(myDisposable -> myDisposable.dispose());
 		this.bitstampDisposableOpt = Optional.of(this.bitstampService.createBsAvg().subscribe());		
@@ -60,7 +79,7 @@ public class PrepareDataTask {
 
 	@Async("futureTaskExecutor")
 	@Scheduled(cron = "0 45 0,12 ? * ?")
-	@SchedulerLock(name = "bitfinex_avg_scheduledTask", lockAtLeastFor = "PT10H", lockAtMostFor = "PT11H")
+	@SchedulerLock(name = "bitfinex_avg_scheduledTask", lockAtLeastFor = "PT1H", lockAtMostFor = "PT2H")
 	public void createBfAvg() {
 		this.bitfinexDisposableOpt.ifPresent(myDisposable -> myDisposable.dispose());
 		this.bitfinexDisposableOpt = Optional.of(this.bitfinexService.createBfAvg().subscribe());
@@ -68,7 +87,7 @@ public class PrepareDataTask {
 	
 	@Async("futureTaskExecutor")
 	@Scheduled(cron = "0 25 1,13 ? * ?")
-	@SchedulerLock(name = "itbit_avg_scheduledTask", lockAtLeastFor = "PT10H", lockAtMostFor = "PT11H")
+	@SchedulerLock(name = "itbit_avg_scheduledTask", lockAtLeastFor = "PT1H", lockAtMostFor = "PT2H")
 	public void createIbAvg() {
 		this.itbitDisposableOpt.ifPresent(myDisposable -> myDisposable.dispose());
 		this.itbitDisposableOpt = Optional.of(this.itbitService.createIbAvg().subscribe());
@@ -76,9 +95,49 @@ public class PrepareDataTask {
 
 	@Async("futureTaskExecutor")
 	@Scheduled(cron = "0 10 2,14 ? * ?")
-	@SchedulerLock(name = "coinbase_avg_scheduledTask", lockAtLeastFor = "PT10H", lockAtMostFor = "PT11H")
+	@SchedulerLock(name = "coinbase_avg_scheduledTask", lockAtLeastFor = "PT1H", lockAtMostFor = "PT2H")
 	public void createCbAvg() {
 		this.coinbaseDisposableOpt.ifPresent(myDisposable -> myDisposable.dispose());
 		this.coinbaseDisposableOpt = Optional.of(this.coinbaseService.createCbAvg().subscribe());
 	}
+
+	@Async("futureTaskExecutor")
+	@Scheduled(cron = "0 */5 * * * ?")
+	@SchedulerLock(name = "candles_scheduledTask", lockAtLeastFor = "PT4M", lockAtMostFor = "PT1H")
+	public void createCandles() {
+		this.candleDisposableOpt.ifPresent(myDisposable -> myDisposable.dispose());
+		this.candleDisposableOpt = Optional.of(this.candleService.createCandles().subscribe());
+	}
+
+	@Async("futureTaskExecutor")
+	@Scheduled(cron = "0 20 * * * ?")
+	@SchedulerLock(name = "coinbase_storage_scheduledTask", lockAtLeastFor = "PT10M", lockAtMostFor = "PT1H")
+	public void migrateCbStorage() {
+		this.coinbaseStorageDisposableOpt.ifPresent(myDisposable -> myDisposable.dispose());
+		this.coinbaseStorageDisposableOpt = Optional.of(this.coinbaseService.migrateStorage().subscribe());
+	}
+
+	@Async("futureTaskExecutor")
+	@Scheduled(cron = "0 40 * * * ?")
+	@SchedulerLock(name = "decimal_migration_scheduledTask", lockAtLeastFor = "PT10M", lockAtMostFor = "PT1H")
+	public void migrateDecimals() {
+		this.decimalMigrationDisposableOpt.ifPresent(myDisposable -> myDisposable.dispose());
+		this.decimalMigrationDisposableOpt = Optional.of(this.decimalMigrationService.migrateAll().subscribe());
+	}
+
+	@Async("futureTaskExecutor")
+	@Scheduled(cron = "0 50 * * * ?")
+	@SchedulerLock(name = "quote_bucket_migration_scheduledTask", lockAtLeastFor = "PT10M", lockAtMostFor = "PT1H")
+	public void migrateBuckets() {
+		this.bucketMigrationDisposableOpt.ifPresent(myDisposable -> myDisposable.dispose());
+		this.bucketMigrationDisposableOpt = Optional.of(this.quoteBucketService.migrateAll().subscribe());
+	}
+
+	@Async("futureTaskExecutor")
+	@Scheduled(cron = "0 30 3 ? * ?")
+	@SchedulerLock(name = "quote_archive_scheduledTask", lockAtLeastFor = "PT30M", lockAtMostFor = "PT2H")
+	public void archiveQuotes() {
+		this.archiveDisposableOpt.ifPresent(myDisposable -> myDisposable.dispose());
+		this.archiveDisposableOpt = Optional.of(this.quoteArchiveService.archiveAll().subscribe());
+	}
 }
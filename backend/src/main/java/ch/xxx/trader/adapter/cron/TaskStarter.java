@@ -23,9 +23,15 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import ch.xxx.trader.usecase.services.BitfinexService;
+import ch.xxx.trader.usecase.services.BitfinexStreamService;
 import ch.xxx.trader.usecase.services.BitstampService;
 import ch.xxx.trader.usecase.services.CoinbaseService;
 import ch.xxx.trader.usecase.services.ItbitService;
+import ch.xxx.trader.usecase.services.LatestQuoteService;
+import ch.xxx.trader.usecase.services.MongoIndexService;
+import ch.xxx.trader.usecase.services.QuoteBucketService;
+import ch.xxx.trader.usecase.services.QuoteCacheService;
+import ch.xxx.trader.usecase.services.QuoteCbStorageService;
 
 @Component
 public class TaskStarter {
@@ -34,14 +40,48 @@ public class TaskStarter {
 	private final BitfinexService bitfinexService;
 	private final ItbitService itbitService;
 	private final CoinbaseService coinbaseService;
+	private final BitfinexStreamService bitfinexStreamService;
+	private final QuoteCbStorageService quoteCbStorageService;
+	private final MongoIndexService mongoIndexService;
+	private final QuoteBucketService quoteBucketService;
+	private final QuoteCacheService quoteCacheService;
+	private final LatestQuoteService latestQuoteService;
 	
-	public TaskStarter(BitstampService bitstampService, BitfinexService bitfinexService, ItbitService itbitService, CoinbaseService coinbaseService) {
+	public TaskStarter(BitstampService bitstampService, BitfinexService bitfinexService, ItbitService itbitService, CoinbaseService coinbaseService, BitfinexStreamService bitfinexStreamService, QuoteCbStorageService quoteCbStorageService,
+			MongoIndexService mongoIndexService, QuoteBucketService quoteBucketService,
+			QuoteCacheService quoteCacheService, LatestQuoteService latestQuoteService) {
 		this.bitstampService = bitstampService;
 		this.bitfinexService = bitfinexService;
 		this.itbitService = itbitService;
 		this.coinbaseService = coinbaseService;
+		this.bitfinexStreamService = bitfinexStreamService;
+		this.quoteCbStorageService = quoteCbStorageService;
+		this.mongoIndexService = mongoIndexService;
+		this.quoteBucketService = quoteBucketService;
+		this.quoteCacheService = quoteCacheService;
+		this.latestQuoteService = latestQuoteService;
 	}
 	
+	@EventListener(ApplicationReadyEvent.class)
+	public void startQuoteStreams() {
+		this.quoteCbStorageService.initDictionaries().block();
+		this.quoteBucketService.ensureIndexes().block();
+		this.bitfinexStreamService.startStream();
+	}
+	
+	@Async("futureTaskExecutor")
+	@EventListener(ApplicationReadyEvent.class)
+	public void ensureIndexes() {
+		this.mongoIndexService.ensureIndexes().block();
+	}
+
+	@Async("futureTaskExecutor")
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUpQuoteCaches() {
+		this.latestQuoteService.refresh().block();
+		this.quoteCacheService.warmUp().block();
+	}
+
 	@Async("futureTaskExecutor")
 	@EventListener(ApplicationReadyEvent.class)
 	public void initAvgs() {
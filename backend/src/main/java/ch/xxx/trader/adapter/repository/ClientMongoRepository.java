@@ -16,29 +16,43 @@
 package ch.xxx.trader.adapter.repository;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 
 import jakarta.validation.Valid;
 
 import org.bson.Document;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
 import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.reactivestreams.client.FindPublisher;
 import com.mongodb.reactivestreams.client.MongoCollection;
 
+import ch.xxx.trader.usecase.common.DtoUtils;
 import ch.xxx.trader.usecase.services.MyMongoRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Service
 public class ClientMongoRepository implements MyMongoRepository {
+	private static final String ID = "_id";
 	private final ReactiveMongoOperations operations;
+	private final QuoteCbChainReader quoteCbChainReader;
 
 	public ClientMongoRepository(ReactiveMongoOperations operations) {
 		this.operations = operations;
+		this.quoteCbChainReader = new QuoteCbChainReader(operations);
 	}
 
 	@Override
@@ -46,24 +60,36 @@ public class ClientMongoRepository implements MyMongoRepository {
 		return this.operations.save(objectToSave);
 	}
 
+	@Override
+	public <T> Mono<T> save(@Valid T objectToSave, String collectionName) {
+		return this.operations.save(objectToSave, collectionName);
+	}
+
 	@Override
 	public <T> Mono<T> findOne(Query query, Class<T> entityClass) {
-		return this.operations.findOne(query, entityClass);
+		return this.findOne(query, entityClass, this.operations.getCollectionName(entityClass));
 	}
 
 	@Override
 	public <T> Mono<T> findOne(Query query, Class<T> entityClass, String name) {
-		return this.operations.findOne(query, entityClass, name);
+		return this.quoteCbChainReader.decode(this.operations.findOne(query, entityClass, name).flux(), entityClass,
+				name).next();
 	}
 
 	@Override
 	public <T> Flux<T> find(Query query, Class<T> entityClass) {
-		return this.operations.find(query, entityClass);
+		return this.find(query, entityClass, this.operations.getCollectionName(entityClass));
 	}
 
 	@Override
 	public <T> Flux<T> find(Query query, Class<T> entityClass, String collectionName) {
-		return this.operations.find(query, entityClass, collectionName);
+		return this.quoteCbChainReader.decode(this.operations.find(query, entityClass, collectionName),
+				entityClass, collectionName);
+	}
+
+	@Override
+	public <T> Flux<T> findDistinct(Query query, String field, String collectionName, Class<T> resultClass) {
+		return this.operations.findDistinct(query, field, collectionName, resultClass);
 	}
 
 	@Override
@@ -78,6 +104,36 @@ public class ClientMongoRepository implements MyMongoRepository {
 		return this.operations.indexOps(collectionName).ensureIndex(myIndex);
 	}
 
+	@Override
+	public Mono<String> ensureIndex(String collectionName, List<String> propertyNames) {
+		Index myIndex = new Index();
+		propertyNames.forEach(propertyName -> myIndex.on(propertyName, Direction.ASC));
+		myIndex.named(collectionName + "-" + String.join("-", propertyNames));
+		return this.operations.indexOps(collectionName).ensureIndex(myIndex);
+	}
+
+	@Override
+	public Mono<Document> explain(Query query, String collectionName) {
+		return this.operations.getCollection(collectionName).flatMap(collection -> {
+			FindPublisher<Document> findPublisher = collection.find(query.getQueryObject())
+					.sort(query.getSortObject()).projection(query.getFieldsObject()).limit(query.getLimit());
+			return Mono.from(findPublisher.explain());
+		});
+	}
+
+	@Override
+	public Mono<String> ensureUniqueIndex(String collectionName, List<String> propertyNames) {
+		Index myIndex = new Index();
+		propertyNames.forEach(propertyName -> myIndex.on(propertyName, Direction.ASC));
+		myIndex.unique().named(collectionName + "-" + String.join("-", propertyNames) + "-unique");
+		return this.operations.indexOps(collectionName).ensureIndex(myIndex);
+	}
+
+	@Override
+	public <O> Flux<O> aggregate(Aggregation aggregation, String collectionName, Class<O> outputType) {
+		return this.operations.aggregate(aggregation, collectionName, outputType);
+	}
+
 	@Override
 	public Mono<Boolean> collectionExists(String collectionName) {
 		return this.operations.collectionExists(collectionName);
@@ -97,4 +153,44 @@ public class ClientMongoRepository implements MyMongoRepository {
 	public <T> Mono<DeleteResult> remove(Mono<T> quote) {
 		return this.operations.remove(quote);
 	}
+
+	@Override
+	public Mono<UpdateResult> upsert(Query query, Update update, String collectionName) {
+		return this.operations.upsert(query, update, collectionName);
+	}
+
+	@Override
+	public Mono<DeleteResult> remove(Query query, String collectionName) {
+		return this.operations.remove(query, collectionName);
+	}
+
+	@Override
+	public <T> T convert(Document document, Class<T> entityClass) {
+		return this.operations.getConverter().read(entityClass, document);
+	}
+
+	@Override
+	public <T> Flux<T> convert(Flux<Document> documents, Class<T> entityClass, String collectionName) {
+		return this.quoteCbChainReader.decode(documents.map(document -> this.convert(document, entityClass)),
+				entityClass, collectionName);
+	}
+
+	@Override
+	public <T> Mono<BulkWriteResult> bulkUpsert(Collection<? extends T> objectsToSave, List<String> keyFields,
+			String collectionName) {
+		Date updatedAt = new Date();
+		List<ReplaceOneModel<Document>> replacements = objectsToSave.stream().map(objectToSave -> {
+			Document document = new Document();
+			this.operations.getConverter().write(objectToSave, document);
+			// a replacement keeps the _id of the matched document
+			document.remove(ID);
+			document.append(DtoUtils.UPDATEDAT, updatedAt);
+			Document filter = new Document();
+			keyFields.forEach(keyField -> filter.append(keyField, document.get(keyField)));
+			return new ReplaceOneModel<>(filter, document, new ReplaceOptions().upsert(true));
+		}).toList();
+		return replacements.isEmpty() ? Mono.empty()
+				: this.operations.getCollection(collectionName).flatMap(collection -> Mono
+						.from(collection.bulkWrite(replacements, new BulkWriteOptions().ordered(false))));
+	}
 }
@@ -0,0 +1,169 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.repository;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.usecase.common.DtoUtils;
+import ch.xxx.trader.usecase.services.MyQuoteArchive;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Stores the archived raw quotes as one gzip compressed segment of extended
+ * json lines per collection and day: {dir}/{colName}/{yyyy-MM-dd}.jsonl.gz.
+ * The lines are sorted by pair and createdAt. A segment is replaced
+ * atomically, writing the same day again merges the documents. The segment
+ * and its directory are forced to the disk before the write completes, so the
+ * archived quotes can be deleted from Mongo.
+ */
+@Service
+public class FileQuoteArchive implements MyQuoteArchive {
+	private static final Logger LOG = LoggerFactory.getLogger(FileQuoteArchive.class);
+	private static final String SEGMENT_SUFFIX = ".jsonl.gz";
+	private static final String PAIR = "pair";
+	private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED)
+			.build();
+	private static final Comparator<Document> SEGMENT_ORDER = Comparator
+			.comparing((Document document) -> document.getString(PAIR),
+					Comparator.nullsFirst(Comparator.naturalOrder()))
+			.thenComparing(document -> document.getDate(DtoUtils.CREATEDAT),
+					Comparator.nullsFirst(Comparator.naturalOrder()));
+	private final Path archiveDir;
+	private final Scheduler archiveScheduler = Schedulers.newBoundedElastic(2, 100, "quoteArchive", 10);
+
+	public FileQuoteArchive(@Value("${retention.archive.dir:./archive}") String archiveDir) {
+		this.archiveDir = Path.of(archiveDir);
+	}
+
+	@Override
+	public Mono<Long> write(String colName, LocalDate day, List<Document> documents) {
+		return Mono.fromCallable(() -> this.writeSegment(colName, day, documents)).subscribeOn(this.archiveScheduler);
+	}
+
+	@Override
+	public Flux<Document> read(String colName, LocalDate day) {
+		return Mono.fromCallable(() -> this.readSegment(this.segmentPath(colName, day)))
+				.subscribeOn(this.archiveScheduler).flatMapIterable(documents -> documents);
+	}
+
+	@Override
+	public Flux<LocalDate> days(String colName) {
+		return Mono.fromCallable(() -> {
+			Path colDir = this.archiveDir.resolve(colName);
+			if (!Files.isDirectory(colDir)) {
+				return List.<LocalDate>of();
+			}
+			try (Stream<Path> segments = Files.list(colDir)) {
+				return segments.map(segment -> segment.getFileName().toString())
+						.filter(fileName -> fileName.endsWith(SEGMENT_SUFFIX))
+						.map(fileName -> LocalDate
+								.parse(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length())))
+						.sorted().toList();
+			}
+		}).subscribeOn(this.archiveScheduler).flatMapIterable(days -> days);
+	}
+
+	private long writeSegment(String colName, LocalDate day, List<Document> documents) throws IOException {
+		Path segment = this.segmentPath(colName, day);
+		Files.createDirectories(segment.getParent());
+		Map<String, Document> merged = new LinkedHashMap<>();
+		Stream.concat(this.readSegment(segment).stream(), documents.stream())
+				.forEach(document -> merged.put(this.createKey(document), document));
+		List<Document> sorted = new ArrayList<>(merged.values());
+		sorted.sort(SEGMENT_ORDER);
+		Path tempSegment = segment.resolveSibling(segment.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tempSegment, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			GZIPOutputStream gzipStream = new GZIPOutputStream(Channels.newOutputStream(channel));
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(gzipStream, StandardCharsets.UTF_8));
+			for (Document document : sorted) {
+				writer.write(document.toJson(JSON_SETTINGS));
+				writer.newLine();
+			}
+			writer.flush();
+			gzipStream.finish();
+			channel.force(true);
+		}
+		Files.move(tempSegment, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.forceDirectory(segment.getParent());
+		LOG.info("Archived {} documents of {} in {}", documents.size(), colName, segment);
+		return documents.size();
+	}
+
+	private void forceDirectory(Path dir) {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// directories can not be opened as channels on windows
+			LOG.debug(String.format("Forcing the directory %s failed", dir), e);
+		}
+	}
+
+	private List<Document> readSegment(Path segment) {
+		List<Document> result = new ArrayList<>();
+		if (Files.exists(segment)) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new GZIPInputStream(Files.newInputStream(segment)), StandardCharsets.UTF_8))) {
+				reader.lines().filter(line -> !line.isBlank()).map(Document::parse).forEach(result::add);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return result;
+	}
+
+	private String createKey(Document document) {
+		Date createdAt = document.getDate(DtoUtils.CREATEDAT);
+		return String.format("%s-%d", document.getString(PAIR), createdAt == null ? 0L : createdAt.getTime());
+	}
+
+	private Path segmentPath(String colName, LocalDate day) {
+		return this.archiveDir.resolve(colName).resolve(day.toString() + SEGMENT_SUFFIX);
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.repository;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import ch.xxx.trader.usecase.services.QuoteCbStorageService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Decodes the packed Coinbase delta frames of a read. A delta frame is decoded
+ * with the frame its prevAt points to. The last decoded frame of every chain
+ * is kept for the read, a predecessor that is not part of the read is decoded
+ * from the stored frames of its hour. Frames of an incomplete chain stay
+ * broken.
+ */
+class QuoteCbChainReader {
+	private final ReactiveMongoOperations operations;
+
+	QuoteCbChainReader(ReactiveMongoOperations operations) {
+		this.operations = operations;
+	}
+
+	<T> Flux<T> decode(Flux<T> quotes, Class<T> entityClass, String collectionName) {
+		if (!QuoteCbRates.class.equals(entityClass)) {
+			return quotes;
+		}
+		return Flux.defer(() -> {
+			Map<Date, QuoteCbRates> chains = new HashMap<>();
+			return quotes.concatMap(quote -> this.decode((QuoteCbRates) quote, chains, collectionName))
+					.map(entityClass::cast);
+		});
+	}
+
+	private Mono<QuoteCbRates> decode(QuoteCbRates quote, Map<Date, QuoteCbRates> chains, String collectionName) {
+		Mono<QuoteCbRates> result = Mono.just(quote);
+		if (!quote.isDecoded()) {
+			QuoteCbRates previous = quote.getKeyAt() == null ? null : chains.get(quote.getKeyAt());
+			result = (previous != null && previous.getCreatedAt().equals(quote.getPrevAt()) ? Mono.just(previous)
+					: this.readChain(quote, collectionName)).map(quote::decode)
+					.switchIfEmpty(Mono.fromSupplier(() -> quote.decode(null)));
+		}
+		return result.doOnNext(myQuote -> Optional.ofNullable(myQuote.getKeyAt())
+				.ifPresent(keyAt -> chains.put(keyAt, myQuote)));
+	}
+
+	private Mono<QuoteCbRates> readChain(QuoteCbRates quote, String collectionName) {
+		if (quote.getKeyAt() == null) {
+			return Mono.empty();
+		}
+		Query query = new Query(Criteria.where(DtoUtils.CREATEDAT).gte(quote.getKeyAt()).lt(quote.getCreatedAt())
+				.and(QuoteCbStorageService.KEY_AT_FIELD).is(quote.getKeyAt()));
+		query.with(Sort.by(DtoUtils.CREATEDAT).ascending());
+		return this.operations.find(query, QuoteCbRates.class, collectionName).collectList().flatMap(chain -> {
+			QuoteCbRates previous = null;
+			for (QuoteCbRates frame : chain) {
+				previous = frame.decode(previous);
+			}
+			return Mono.justOrEmpty(previous);
+		});
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.domain.common;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import ch.xxx.trader.domain.common.MongoUtils.TimeFrame;
+
+public enum CandleResolution {
+	MINUTE1("1m", 1, TimeFrame.TODAY), MINUTE5("5m", 5, TimeFrame.SEVENDAYS),
+	MINUTE15("15m", 15, TimeFrame.THIRTYDAYS), HOUR1("1h", 60, TimeFrame.NINTYDAYS),
+	HOUR4("4h", 240, TimeFrame.Year1), DAY1("1d", 1440, TimeFrame.Year5);
+
+	private CandleResolution(String value, int minutes, TimeFrame defaultTimeFrame) {
+		this.value = value;
+		this.minutes = minutes;
+		this.defaultTimeFrame = defaultTimeFrame;
+	}
+
+	private final String value;
+	private final int minutes;
+	private final TimeFrame defaultTimeFrame;
+
+	public String getValue() {
+		return this.value;
+	}
+
+	public int getMinutes() {
+		return this.minutes;
+	}
+
+	public TimeFrame getDefaultTimeFrame() {
+		return this.defaultTimeFrame;
+	}
+
+	public static Optional<CandleResolution> fromValue(String value) {
+		return Stream.of(CandleResolution.values()).filter(resolution -> resolution.getValue().equals(value))
+				.findFirst();
+	}
+
+	public Date bucketBegin(Date date) {
+		LocalDateTime dateTime = LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault())
+				.truncatedTo(ChronoUnit.MINUTES);
+		int minuteOfDay = dateTime.getHour() * 60 + dateTime.getMinute();
+		return Date.from(dateTime.toLocalDate().atStartOfDay().plusMinutes(minuteOfDay - minuteOfDay % this.minutes)
+				.atZone(ZoneId.systemDefault()).toInstant());
+	}
+
+	public Date bucketEnd(Date bucketBegin) {
+		return Date.from(LocalDateTime.ofInstant(bucketBegin.toInstant(), ZoneId.systemDefault())
+				.plusMinutes(this.minutes).atZone(ZoneId.systemDefault()).toInstant());
+	}
+}
@@ -15,18 +15,21 @@
  */
 package ch.xxx.trader.domain.common;
 
-import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
+import org.bson.Document;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 
 public class MongoUtils {
+	public static final String MINUTE = "minute";
 
 	public enum TimeFrame {
 		CURRENT("current"), TODAY("today"), SEVENDAYS("7days"), THIRTYDAYS("30days"), NINTYDAYS("90days"),
@@ -133,15 +136,33 @@ public class MongoUtils {
 		return buildQuery(pair, true, Optional.empty());
 	}
 
-	public static final Query buildCurrentQuery(Optional<String> pair) {
-		return buildQuery(pair, false, Optional.empty());
+	/**
+	 * Only the quotes of every minuteStep minute match, the limit applies after
+	 * the downsampling.
+	 */
+	public static final Query buildTodayQuery(Optional<String> pair, int minuteStep) {
+		return addMinuteStep(buildTodayQuery(pair), minuteStep);
 	}
 
-	public static final boolean filterEvenMinutes(Date date) {
-		return LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()).getMinute() % 2 == 0;
+	/**
+	 * Matches the stored minute with the minute index. Quotes stored without a
+	 * minute are matched on their createdAt, that needs a fetch per quote.
+	 */
+	public static final Query addMinuteStep(Query query, int minuteStep) {
+		List<Integer> minutes = IntStream.range(0, 60).filter(minute -> minute % minuteStep == 0).boxed().toList();
+		Document minute = new Document("$minute",
+				new Document("date", "$createdAt").append("timezone", ZoneId.systemDefault().getId()));
+		query.addCriteria(new Criteria().orOperator(Criteria.where(MINUTE).in(minutes),
+				Criteria.where(MINUTE).is(null).and("$expr")
+						.is(new Document("$eq", List.of(new Document("$mod", List.of(minute, minuteStep)), 0)))));
+		return query;
 	}
 
-	public static final boolean filter10Minutes(Date date) {
-		return LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()).getMinute() % 10 == 0;
+	public static final Integer minuteOf(Date createdAt) {
+		return createdAt.toInstant().atZone(ZoneId.systemDefault()).getMinute();
+	}
+
+	public static final Query buildCurrentQuery(Optional<String> pair) {
+		return buildQuery(pair, false, Optional.empty());
 	}
 }
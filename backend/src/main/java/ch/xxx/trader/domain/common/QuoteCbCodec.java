@@ -0,0 +1,171 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.domain.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Packs a rate vector into one binary value. The layout is a format byte, the
+ * varint dictionary size, a presence bitmap and the present values. A full
+ * frame stores the raw IEEE 754 bits, a delta frame stores the varint of the
+ * bits xor the bits of the previous snapshot. Unchanged rates take one byte.
+ * <p>
+ * The stored indexes follow a currency dictionary identified by the CRC32 of
+ * its currency list. Known dictionaries are mapped to the indexes of the
+ * current dictionary so old snapshots stay readable.
+ */
+public class QuoteCbCodec {
+	public static final byte FULL = 0;
+	public static final byte DELTA = 1;
+	private final List<String> currencies;
+	private final int version;
+	private final Map<Integer, int[]> storedIndexes = new ConcurrentHashMap<>();
+
+	public QuoteCbCodec(List<String> currencies) {
+		this.currencies = List.copyOf(currencies);
+		this.version = dictionaryVersion(this.currencies);
+		this.register(this.version, this.currencies);
+	}
+
+	public static int dictionaryVersion(List<String> currencies) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(String.join(",", currencies).getBytes(StandardCharsets.UTF_8));
+		return (int) crc32.getValue();
+	}
+
+	public int register(int version, List<String> dictionary) {
+		int[] indexes = new int[this.currencies.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = dictionary.indexOf(this.currencies.get(i));
+		}
+		this.storedIndexes.put(version, indexes);
+		return version;
+	}
+
+	public List<String> getCurrencies() {
+		return this.currencies;
+	}
+
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Maps the indexes of the current dictionary to the stored indexes of the
+	 * given dictionary version, -1 marks a currency that version does not have.
+	 */
+	public Optional<int[]> storedIndexes(int version) {
+		return Optional.ofNullable(this.storedIndexes.get(version));
+	}
+
+	public byte[] encode(double[] rates, double[] previous) {
+		int bitmapSize = (rates.length + 7) / 8;
+		ByteBuffer buffer = ByteBuffer.allocate(1 + 5 + bitmapSize + rates.length * 10);
+		buffer.put(previous == null ? FULL : DELTA);
+		putVarint(buffer, rates.length);
+		int bitmapStart = buffer.position();
+		buffer.position(bitmapStart + bitmapSize);
+		for (int i = 0; i < rates.length; i++) {
+			if (!Double.isNaN(rates[i])) {
+				buffer.put(bitmapStart + i / 8, (byte) (buffer.get(bitmapStart + i / 8) | (1 << (i % 8))));
+				long bits = Double.doubleToRawLongBits(rates[i]);
+				if (previous == null) {
+					buffer.putLong(bits);
+				} else {
+					putVarint(buffer, bits ^ previousBits(previous[i]));
+				}
+			}
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	public static boolean isDelta(byte[] data) {
+		return data.length > 0 && data[0] == DELTA;
+	}
+
+	/**
+	 * Decodes all stored rates into the indexes of the current dictionary.
+	 */
+	public static double[] decode(byte[] data, int[] storedIndexes, double[] previous) {
+		double[] stored = decodeStored(data, storedIndexes, previous);
+		double[] result = new double[storedIndexes.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = storedIndexes[i] < 0 ? Double.NaN : stored[storedIndexes[i]];
+		}
+		return result;
+	}
+
+	private static double[] decodeStored(byte[] data, int[] storedIndexes, double[] previous) {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		boolean delta = buffer.get() == DELTA;
+		int size = (int) getVarint(buffer);
+		int bitmapStart = buffer.position();
+		buffer.position(bitmapStart + (size + 7) / 8);
+		double[] previousStored = null;
+		if (delta) {
+			previousStored = new double[size];
+			Arrays.fill(previousStored, Double.NaN);
+			for (int i = 0; i < storedIndexes.length; i++) {
+				if (storedIndexes[i] >= 0 && storedIndexes[i] < size) {
+					previousStored[storedIndexes[i]] = previous[i];
+				}
+			}
+		}
+		double[] result = new double[size];
+		for (int i = 0; i < size; i++) {
+			if ((data[bitmapStart + i / 8] & (1 << (i % 8))) == 0) {
+				result[i] = Double.NaN;
+			} else if (delta) {
+				result[i] = Double.longBitsToDouble(getVarint(buffer) ^ previousBits(previousStored[i]));
+			} else {
+				result[i] = buffer.getDouble();
+			}
+		}
+		return result;
+	}
+
+	private static long previousBits(double previous) {
+		return Double.isNaN(previous) ? 0L : Double.doubleToRawLongBits(previous);
+	}
+
+	private static void putVarint(ByteBuffer buffer, long value) {
+		long myValue = value;
+		while ((myValue & ~0x7FL) != 0) {
+			buffer.put((byte) ((myValue & 0x7F) | 0x80));
+			myValue >>>= 7;
+		}
+		buffer.put((byte) myValue);
+	}
+
+	private static long getVarint(ByteBuffer buffer) {
+		long result = 0;
+		int shift = 0;
+		byte current;
+		do {
+			current = buffer.get();
+			result |= (long) (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+		return result;
+	}
+}
@@ -26,10 +26,13 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Document
-public class QuoteBf implements Quote {
+public class QuoteBf implements RollupQuote, MinuteQuote {
 
 	@Id
 	private ObjectId _id;
@@ -41,6 +44,10 @@ public class QuoteBf implements Quote {
 	@Indexed(name = "QuoteBf-createdAt")
 	@JsonProperty
 	private Date createdAt = new Date();
+	@JsonInclude(Include.NON_NULL)
+	private Long count;
+	@JsonIgnore
+	private Integer minute;
 
 	private final BigDecimal mid;
 	private final BigDecimal bid;
@@ -72,6 +79,26 @@ public class QuoteBf implements Quote {
 		this._id = _id;
 	}
 
+	@Override
+	public Long getCount() {
+		return count;
+	}
+
+	@Override
+	public void setCount(Long count) {
+		this.count = count;
+	}
+
+	@Override
+	public Integer getMinute() {
+		return minute;
+	}
+
+	@Override
+	public void setMinute(Integer minute) {
+		this.minute = minute;
+	}
+
 	public String getPair() {
 		return pair;
 	}
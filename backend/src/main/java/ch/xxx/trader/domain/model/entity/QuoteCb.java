@@ -28,6 +28,9 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import ch.xxx.trader.domain.common.AccessorTable;
+
+@AccessorTable
 @JsonIgnoreProperties(ignoreUnknown = true)
 @Document
 public class QuoteCb implements Quote {
@@ -0,0 +1,47 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.domain.model.entity;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class QuoteCbCurrency implements Quote {
+	private final Date createdAt;
+	private final String currency;
+	private final BigDecimal rate;
+
+	public QuoteCbCurrency(@JsonProperty("createdAt") Date createdAt, @JsonProperty("currency") String currency,
+			@JsonProperty("rate") BigDecimal rate) {
+		super();
+		this.createdAt = createdAt;
+		this.currency = currency;
+		this.rate = rate;
+	}
+
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	public String getCurrency() {
+		return currency;
+	}
+
+	public BigDecimal getRate() {
+		return rate;
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.domain.model.entity;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import ch.xxx.trader.domain.common.QuoteCbCodec;
+
+/**
+ * Compact Coinbase rate snapshot. The rates are indexed by the symbol
+ * dictionary of QuoteCbAccessors and stored in the QuoteCb document layout or
+ * packed by the {@link QuoteCbCodec}. Full frames are decoded when they are
+ * read. A delta frame stays packed until it is decoded with the snapshot its
+ * prevAt points to. Decoded snapshots are not changed anymore.
+ */
+@Document(collection = "quoteCb")
+public class QuoteCbRates implements VectorQuote, RollupQuote, MinuteQuote {
+	@Id
+	private ObjectId _id;
+	private Date createdAt;
+	private double[] rates;
+	private Long count;
+	private Integer minute;
+	@Transient
+	private byte[] packed;
+	@Transient
+	private int[] storedIndexes;
+	@Transient
+	private boolean brokenChain = false;
+	@Transient
+	private QuoteCbRates previous;
+	@Transient
+	private Date keyAt;
+	@Transient
+	private Date prevAt;
+
+	public QuoteCbRates() {
+		this(new Date(), createEmptyRates());
+	}
+
+	public QuoteCbRates(Date createdAt, double[] rates) {
+		this.createdAt = createdAt;
+		this.rates = rates;
+	}
+
+	public static QuoteCbRates packed(Date createdAt, byte[] packed, int[] storedIndexes, Date keyAt,
+			Date prevAt) {
+		QuoteCbRates quoteCbRates;
+		if (QuoteCbCodec.isDelta(packed)) {
+			quoteCbRates = new QuoteCbRates(createdAt, createEmptyRates());
+			quoteCbRates.packed = packed;
+			quoteCbRates.storedIndexes = storedIndexes;
+			quoteCbRates.prevAt = prevAt;
+		} else {
+			quoteCbRates = new QuoteCbRates(createdAt, QuoteCbCodec.decode(packed, storedIndexes, null));
+		}
+		quoteCbRates.keyAt = keyAt;
+		return quoteCbRates;
+	}
+
+	public QuoteCbRates decode(QuoteCbRates myPrevious) {
+		if (this.isDecoded()) {
+			return this;
+		}
+		boolean chained = myPrevious != null && !myPrevious.isBrokenChain()
+				&& myPrevious.getCreatedAt().equals(this.prevAt);
+		QuoteCbRates quoteCbRates = new QuoteCbRates(this.createdAt,
+				chained ? QuoteCbCodec.decode(this.packed, this.storedIndexes, myPrevious.values())
+						: createEmptyRates());
+		quoteCbRates._id = this._id;
+		quoteCbRates.count = this.count;
+		quoteCbRates.minute = this.minute;
+		quoteCbRates.keyAt = this.keyAt;
+		quoteCbRates.brokenChain = !chained;
+		return quoteCbRates;
+	}
+
+	public static double[] createEmptyRates() {
+		double[] rates = new double[QuoteCbAccessors.size()];
+		Arrays.fill(rates, Double.NaN);
+		return rates;
+	}
+
+	public static QuoteCbRates of(QuoteCb quoteCb) {
+		double[] rates = createEmptyRates();
+		for (int i = 0; i < rates.length; i++) {
+			BigDecimal rate = QuoteCbAccessors.get(quoteCb, i);
+			rates[i] = rate == null ? Double.NaN : rate.doubleValue();
+		}
+		QuoteCbRates quoteCbRates = new QuoteCbRates(quoteCb.getCreatedAt(), rates);
+		quoteCbRates.set_id(quoteCb.get_id());
+		return quoteCbRates;
+	}
+
+	public QuoteCb toQuoteCb() {
+		QuoteCb quoteCb = new QuoteCb();
+		double[] myRates = this.values();
+		for (int i = 0; i < myRates.length; i++) {
+			if (!Double.isNaN(myRates[i])) {
+				QuoteCbAccessors.set(quoteCb, i, BigDecimal.valueOf(myRates[i]));
+			}
+		}
+		quoteCb.set_id(this._id);
+		quoteCb.setCreatedAt(this.createdAt);
+		return quoteCb;
+	}
+
+	public double getRate(String currency) {
+		int index = QuoteCbAccessors.indexOf(currency);
+		return index < 0 ? Double.NaN : this.getRate(index);
+	}
+
+	public double getRate(int index) {
+		return this.rates[index];
+	}
+
+	public BigDecimal getRateValue(String currency) {
+		double rate = this.getRate(currency);
+		return Double.isNaN(rate) ? null : BigDecimal.valueOf(rate);
+	}
+
+	@Override
+	public double[] values() {
+		return this.rates;
+	}
+
+	public boolean isDecoded() {
+		return this.packed == null;
+	}
+
+	public boolean isBrokenChain() {
+		return this.brokenChain || !this.isDecoded();
+	}
+
+	public QuoteCbRates getPrevious() {
+		return previous;
+	}
+
+	public void setPrevious(QuoteCbRates previous) {
+		this.previous = previous;
+	}
+
+	public Date getKeyAt() {
+		return keyAt;
+	}
+
+	public void setKeyAt(Date keyAt) {
+		this.keyAt = keyAt;
+	}
+
+	public Date getPrevAt() {
+		return prevAt;
+	}
+
+	@Override
+	public Long getCount() {
+		return this.count;
+	}
+
+	@Override
+	public void setCount(Long count) {
+		this.count = count;
+	}
+
+	@Override
+	public Integer getMinute() {
+		return this.minute;
+	}
+
+	@Override
+	public void setMinute(Integer minute) {
+		this.minute = minute;
+	}
+
+	public ObjectId get_id() {
+		return _id;
+	}
+
+	public void set_id(ObjectId _id) {
+		this._id = _id;
+	}
+
+	@Override
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(Date createdAt) {
+		this.createdAt = createdAt;
+	}
+}
@@ -26,10 +26,13 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Document
-public class QuoteIb implements Quote {
+public class QuoteIb implements RollupQuote, MinuteQuote {
 	
 	@Id
 	private ObjectId _id;
@@ -37,6 +40,10 @@ public class QuoteIb implements Quote {
 	@Indexed(name = "QuoteIb-createdAt")
 	@JsonProperty
 	private Date createdAt = new Date();
+	@JsonInclude(Include.NON_NULL)
+	private Long count;
+	@JsonIgnore
+	private Integer minute;
 	@NotBlank
 	private final String pair;
 	private final BigDecimal bid;
@@ -86,6 +93,26 @@ public class QuoteIb implements Quote {
 	public BigDecimal getLowToday() {
 		return lowToday;
 	}
+	@Override
+	public Long getCount() {
+		return count;
+	}
+
+	@Override
+	public void setCount(Long count) {
+		this.count = count;
+	}
+
+	@Override
+	public Integer getMinute() {
+		return minute;
+	}
+
+	@Override
+	public void setMinute(Integer minute) {
+		this.minute = minute;
+	}
+
 	public String getPair() {
 		return pair;
 	}
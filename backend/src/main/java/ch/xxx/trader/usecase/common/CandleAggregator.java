@@ -0,0 +1,80 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import ch.xxx.trader.domain.common.CandleResolution;
+import ch.xxx.trader.domain.model.entity.Candle;
+import reactor.core.publisher.Flux;
+
+/**
+ * Merges a createdAt sorted stream of candles into per pair candles of a
+ * coarser resolution. Raw quotes enter as single tick candles, so the same
+ * merge builds the 1m candles from quotes and the higher resolutions from the
+ * 1m candles. Open is the first open, close the last close, high and low are
+ * the extremes and volume is the last reported volume of the bucket. Candles
+ * older than the open bucket of their pair are ignored.
+ */
+public class CandleAggregator {
+	private final CandleResolution resolution;
+	private final Map<String, Candle> openCandles = new LinkedHashMap<>();
+
+	public CandleAggregator(CandleResolution resolution) {
+		this.resolution = resolution;
+	}
+
+	public Flux<Candle> aggregate(Flux<Candle> sortedCandles) {
+		return sortedCandles.concatMapIterable(this::add)
+				.concatWith(Flux.defer(() -> Flux.fromIterable(this.finish())));
+	}
+
+	public List<Candle> add(Candle candle) {
+		List<Candle> result = new LinkedList<>();
+		Date bucketBegin = this.resolution.bucketBegin(candle.getCreatedAt());
+		Candle openCandle = this.openCandles.get(candle.getPair());
+		if (openCandle != null && bucketBegin.before(openCandle.getCreatedAt())) {
+			return result;
+		}
+		if (openCandle != null && bucketBegin.after(openCandle.getCreatedAt())) {
+			result.add(openCandle);
+			openCandle = null;
+		}
+		if (openCandle == null) {
+			this.openCandles.put(candle.getPair(),
+					new Candle(candle.getPair(), this.resolution.getValue(), bucketBegin, candle.getOpen(),
+							candle.getHigh(), candle.getLow(), candle.getClose(), candle.getVolume(),
+							candle.getCount()));
+		} else {
+			openCandle.setHigh(openCandle.getHigh().max(candle.getHigh()));
+			openCandle.setLow(openCandle.getLow().min(candle.getLow()));
+			openCandle.setClose(candle.getClose());
+			openCandle.setVolume(candle.getVolume() == null ? openCandle.getVolume() : candle.getVolume());
+			openCandle.setCount(openCandle.getCount() + candle.getCount());
+		}
+		return result;
+	}
+
+	public List<Candle> finish() {
+		List<Candle> result = new LinkedList<>(this.openCandles.values());
+		this.openCandles.clear();
+		return result;
+	}
+}
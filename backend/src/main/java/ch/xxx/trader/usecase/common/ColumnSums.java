@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+import java.lang.reflect.Constructor;
+import java.util.function.IntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Neumaier compensated sums of the value columns of a rollup bucket. A row of
+ * a vector quote is added column wise, NaN marks a missing value and is
+ * skipped. The vector implementation is only compiled with the vector profile
+ * and needs the jdk.incubator.vector module at runtime, without them the
+ * scalar implementation is used.
+ */
+public interface ColumnSums {
+	String VECTOR_MODULE = "jdk.incubator.vector";
+	String VECTOR_CLASS = "ch.xxx.trader.usecase.common.VectorColumnSums";
+
+	void add(int column, double value);
+
+	void addRow(double[] row, long weight);
+
+	double sum(int column);
+
+	static boolean isVectorized() {
+		if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+			return false;
+		}
+		try {
+			Class.forName(VECTOR_CLASS, false, ColumnSums.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	static IntFunction<ColumnSums> factory() {
+		if (isVectorized()) {
+			try {
+				Constructor<? extends ColumnSums> constructor = Class.forName(VECTOR_CLASS)
+						.asSubclass(ColumnSums.class).getConstructor(int.class);
+				return size -> {
+					try {
+						return constructor.newInstance(size);
+					} catch (ReflectiveOperationException e) {
+						throw new IllegalStateException(e);
+					}
+				};
+			} catch (ReflectiveOperationException | LinkageError e) {
+				Logger log = LoggerFactory.getLogger(ColumnSums.class);
+				log.warn("Vector column sums not available, using the scalar fallback", e);
+			}
+		}
+		return ScalarColumnSums::new;
+	}
+}
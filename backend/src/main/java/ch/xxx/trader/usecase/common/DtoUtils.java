@@ -29,6 +29,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 public class DtoUtils {
 	public static final String CREATEDAT = "createdAt";
+	public static final String UPDATEDAT = "updatedAt";
 	
 	public static ObjectMapper produceObjectMapper() {
 		ObjectMapper objectMapper = new ObjectMapper();
@@ -0,0 +1,76 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import ch.xxx.trader.domain.model.entity.Quote;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Conditional responses of the quote endpoints, Spring answers requests with
+ * a matching If-None-Match with 304. The time frame responses are checked
+ * against their version before the quotes are read.
+ */
+public final class QuoteResponses {
+
+	private QuoteResponses() {
+	}
+
+	public static <T extends Quote> ResponseEntity<T> createCurrentResponse(T quote) {
+		return ResponseEntity.ok().eTag(createETag(quote.getCreatedAt())).body(quote);
+	}
+
+	public static <T> Mono<ResponseEntity<List<T>>> createTimeFrameResponse(HttpHeaders requestHeaders,
+			Mono<QuoteVersion> quoteVersion, Supplier<Flux<T>> quotes) {
+		return quoteVersion.flatMap(version -> isNotModified(requestHeaders, version)
+				? Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(createHeaders(version))
+						.<List<T>>build())
+				: quotes.get().collectList()
+						.map(myQuotes -> ResponseEntity.ok().headers(createHeaders(version)).body(myQuotes)))
+				.switchIfEmpty(Mono.defer(() -> quotes.get().collectList().map(ResponseEntity::ok)));
+	}
+
+	public static boolean isNotModified(HttpHeaders requestHeaders, QuoteVersion quoteVersion) {
+		List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+		if (!ifNoneMatch.isEmpty()) {
+			return ifNoneMatch.stream().map(eTag -> eTag.startsWith("W/") ? eTag.substring(2) : eTag)
+					.anyMatch(eTag -> "*".equals(eTag) || quoteVersion.eTag().equals(eTag));
+		}
+		long ifModifiedSince = requestHeaders.getIfModifiedSince();
+		return ifModifiedSince >= 0L && quoteVersion.lastModified().getTime() / 1000L <= ifModifiedSince / 1000L;
+	}
+
+	private static HttpHeaders createHeaders(QuoteVersion quoteVersion) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setETag(quoteVersion.eTag());
+		headers.setLastModified(quoteVersion.lastModified().getTime());
+		headers.setCacheControl(CacheControl.maxAge(quoteVersion.maxAge()).cachePublic());
+		return headers;
+	}
+
+	public static String createETag(Date createdAt) {
+		return "\"" + Long.toHexString(createdAt.getTime()) + "\"";
+	}
+}
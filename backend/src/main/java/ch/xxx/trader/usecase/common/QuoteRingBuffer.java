@@ -0,0 +1,133 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+/**
+ * A fixed size ring of quote rows in primitive columns, ordered by createdAt.
+ * Newer rows are appended and overwrite the oldest row once the ring is full,
+ * older rows are merged into their position and rows with a createdAt that is
+ * already present are ignored. NaN marks a missing value.
+ */
+public class QuoteRingBuffer {
+	private final long[] createdAt;
+	private final double[][] columns;
+	private int start = 0;
+	private int size = 0;
+
+	public record Rows(long[] createdAt, double[][] columns) {
+		public int size() {
+			return this.createdAt.length;
+		}
+
+		public double[] row(int index) {
+			double[] row = new double[this.columns.length];
+			for (int column = 0; column < row.length; column++) {
+				row[column] = this.columns[column][index];
+			}
+			return row;
+		}
+	}
+
+	public QuoteRingBuffer(int capacity, int width) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+		}
+		this.createdAt = new long[capacity];
+		this.columns = new double[width][capacity];
+	}
+
+	public synchronized boolean add(long myCreatedAt, double[] row) {
+		if (row.length != this.columns.length) {
+			throw new IllegalArgumentException(
+					String.format("Row width %d does not match %d columns", row.length, this.columns.length));
+		}
+		int position = this.size == 0 || myCreatedAt > this.createdAt[this.slot(this.size - 1)] ? this.size
+				: this.lowerBound(myCreatedAt);
+		if (position < this.size && this.createdAt[this.slot(position)] == myCreatedAt) {
+			return false;
+		}
+		if (this.size == this.createdAt.length) {
+			if (position == 0) {
+				return false;
+			}
+			this.start = this.slot(1);
+			this.size--;
+			position--;
+		}
+		for (int index = this.size; index > position; index--) {
+			this.copy(this.slot(index - 1), this.slot(index));
+		}
+		int slot = this.slot(position);
+		this.createdAt[slot] = myCreatedAt;
+		for (int column = 0; column < this.columns.length; column++) {
+			this.columns[column][slot] = row[column];
+		}
+		this.size++;
+		return true;
+	}
+
+	public synchronized long newest() {
+		return this.size == 0 ? Long.MIN_VALUE : this.createdAt[this.slot(this.size - 1)];
+	}
+
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Copies the rows created after from in ascending order.
+	 */
+	public synchronized Rows copySince(long from) {
+		int first = this.lowerBound(from + 1);
+		int count = this.size - first;
+		long[] myCreatedAt = new long[count];
+		double[][] myColumns = new double[this.columns.length][count];
+		int begin = this.slot(first);
+		int head = Math.min(count, this.createdAt.length - begin);
+		System.arraycopy(this.createdAt, begin, myCreatedAt, 0, head);
+		System.arraycopy(this.createdAt, 0, myCreatedAt, head, count - head);
+		for (int column = 0; column < this.columns.length; column++) {
+			System.arraycopy(this.columns[column], begin, myColumns[column], 0, head);
+			System.arraycopy(this.columns[column], 0, myColumns[column], head, count - head);
+		}
+		return new Rows(myCreatedAt, myColumns);
+	}
+
+	private int lowerBound(long myCreatedAt) {
+		int low = 0;
+		int high = this.size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.createdAt[this.slot(middle)] < myCreatedAt) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private void copy(int fromSlot, int toSlot) {
+		this.createdAt[toSlot] = this.createdAt[fromSlot];
+		for (double[] column : this.columns) {
+			column[toSlot] = column[fromSlot];
+		}
+	}
+
+	private int slot(int index) {
+		return (this.start + index) % this.createdAt.length;
+	}
+}
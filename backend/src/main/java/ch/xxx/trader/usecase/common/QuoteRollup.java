@@ -0,0 +1,299 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.domain.model.entity.RollupQuote;
+import ch.xxx.trader.domain.model.entity.VectorQuote;
+import reactor.core.publisher.Flux;
+
+/**
+ * Folds a createdAt sorted quote stream in one pass into per pair bucket
+ * averages. Only the accumulator of the open bucket of each pair is kept in
+ * memory, a pair's bucket is emitted when a quote of the same pair opens a
+ * newer bucket. Quotes of different pairs may therefore interleave across a
+ * bucket boundary. A quote belongs to a bucket if it was created strictly
+ * after the bucket begin and strictly before the bucket end. Buckets with less
+ * than 3 quotes are dropped and quotes older than the open bucket of their
+ * pair are ignored.
+ * <p>
+ * The default COMPENSATED accumulation sums each field into a primitive double
+ * with Neumaier compensation and converts to BigDecimal once per bucket. Its
+ * averages match the EXACT BigDecimal accumulation within 1e-12 relative to
+ * the average or one unit of the 10 digit scale, whichever is larger.
+ * Quotes that implement {@link VectorQuote} are read from their value vector
+ * by the double based accumulations without boxing each value.
+ * <p>
+ * The COLUMNAR accumulation adds the value vector of a quote row wise into the
+ * compensated {@link ColumnSums}. With the vector profile and the
+ * jdk.incubator.vector module the columns are summed with the JDK Vector API,
+ * otherwise it falls back to the scalar sums of the COMPENSATED accumulation.
+ * <p>
+ * Emitted buckets carry their quote count if they are {@link RollupQuote}s. A
+ * rollup created with fromBuckets folds such buckets into coarser buckets: a
+ * bucket belongs to the coarser bucket that begins at or before it and is
+ * weighted with its count.
+ */
+public class QuoteRollup<T extends Quote> {
+	private static final int MIN_COUNT = 3;
+	private static final int SCALE = 10;
+	private final Function<Date, Optional<Date>> bucketFunction;
+	private final Function<T, String> pairFunction;
+	private final List<Function<T, BigDecimal>> valueFunctions;
+	private final QuoteFactory<T> quoteFactory;
+	private final Accumulation accumulation;
+	private final IntFunction<ColumnSums> columnSumsFactory;
+	private final Map<String, OpenBucket> openBuckets = new LinkedHashMap<>();
+	private final boolean fromBuckets;
+
+	@FunctionalInterface
+	public interface QuoteFactory<T> {
+		T create(String pair, Date bucketBegin, BigDecimal[] averages);
+	}
+
+	public enum Accumulation {
+		EXACT, COMPENSATED, COLUMNAR
+	}
+
+	private record OpenBucket(Date bucketBegin, Accumulator accumulator) {
+	}
+
+	private interface Accumulator {
+		void add(int index, BigDecimal value);
+
+		void addRow(double[] values, long weight);
+
+		void increment(long weight);
+
+		long count();
+
+		BigDecimal[] averages();
+	}
+
+	private static class ExactAccumulator implements Accumulator {
+		private long count = 0;
+		private final BigDecimal[] sums;
+
+		private ExactAccumulator(int size) {
+			this.sums = new BigDecimal[size];
+			Arrays.fill(this.sums, BigDecimal.ZERO);
+		}
+
+		@Override
+		public void add(int index, BigDecimal value) {
+			this.sums[index] = this.sums[index].add(value);
+		}
+
+		@Override
+		public void addRow(double[] values, long weight) {
+			for (int i = 0; i < Math.min(values.length, this.sums.length); i++) {
+				if (!Double.isNaN(values[i])) {
+					this.add(i, BigDecimal.valueOf(values[i] * weight));
+				}
+			}
+		}
+
+		@Override
+		public void increment(long weight) {
+			this.count += weight;
+		}
+
+		@Override
+		public long count() {
+			return this.count;
+		}
+
+		@Override
+		public BigDecimal[] averages() {
+			BigDecimal myCount = BigDecimal.valueOf(this.count);
+			return Arrays.stream(this.sums).map(sum -> sum.divide(myCount, SCALE, RoundingMode.HALF_UP))
+					.toArray(BigDecimal[]::new);
+		}
+	}
+
+	private static class ColumnSumsAccumulator implements Accumulator {
+		private long count = 0;
+		private final ColumnSums columnSums;
+		private final int size;
+
+		private ColumnSumsAccumulator(ColumnSums columnSums, int size) {
+			this.columnSums = columnSums;
+			this.size = size;
+		}
+
+		@Override
+		public void add(int index, BigDecimal value) {
+			this.columnSums.add(index, value.doubleValue());
+		}
+
+		@Override
+		public void addRow(double[] values, long weight) {
+			this.columnSums.addRow(values, weight);
+		}
+
+		@Override
+		public void increment(long weight) {
+			this.count += weight;
+		}
+
+		@Override
+		public long count() {
+			return this.count;
+		}
+
+		@Override
+		public BigDecimal[] averages() {
+			BigDecimal[] result = new BigDecimal[this.size];
+			for (int i = 0; i < this.size; i++) {
+				result[i] = BigDecimal.valueOf(this.columnSums.sum(i) / this.count).setScale(SCALE,
+						RoundingMode.HALF_UP);
+			}
+			return result;
+		}
+	}
+
+	public QuoteRollup(List<Date> boundaries, Function<T, String> pairFunction,
+			List<Function<T, BigDecimal>> valueFunctions, QuoteFactory<T> quoteFactory) {
+		this(boundaries, pairFunction, valueFunctions, quoteFactory, Accumulation.COMPENSATED);
+	}
+
+	public QuoteRollup(List<Date> boundaries, Function<T, String> pairFunction,
+			List<Function<T, BigDecimal>> valueFunctions, QuoteFactory<T> quoteFactory, Accumulation accumulation) {
+		this(createBucketFunction(List.copyOf(boundaries)), pairFunction, valueFunctions, quoteFactory,
+				accumulation);
+	}
+
+	public QuoteRollup(Function<Date, Optional<Date>> bucketFunction, Function<T, String> pairFunction,
+			List<Function<T, BigDecimal>> valueFunctions, QuoteFactory<T> quoteFactory) {
+		this(bucketFunction, pairFunction, valueFunctions, quoteFactory, Accumulation.COMPENSATED);
+	}
+
+	public QuoteRollup(Function<Date, Optional<Date>> bucketFunction, Function<T, String> pairFunction,
+			List<Function<T, BigDecimal>> valueFunctions, QuoteFactory<T> quoteFactory, Accumulation accumulation) {
+		this(bucketFunction, pairFunction, valueFunctions, quoteFactory, accumulation, false);
+	}
+
+	private QuoteRollup(Function<Date, Optional<Date>> bucketFunction, Function<T, String> pairFunction,
+			List<Function<T, BigDecimal>> valueFunctions, QuoteFactory<T> quoteFactory, Accumulation accumulation,
+			boolean fromBuckets) {
+		this.fromBuckets = fromBuckets;
+		this.bucketFunction = bucketFunction;
+		this.pairFunction = pairFunction;
+		this.valueFunctions = List.copyOf(valueFunctions);
+		this.quoteFactory = quoteFactory;
+		this.accumulation = accumulation;
+		this.columnSumsFactory = Accumulation.COLUMNAR.equals(accumulation) ? ColumnSums.factory()
+				: ScalarColumnSums::new;
+	}
+
+	public static <T extends Quote> QuoteRollup<T> fromBuckets(Function<Date, Optional<Date>> bucketFunction,
+			Function<T, String> pairFunction, List<Function<T, BigDecimal>> valueFunctions,
+			QuoteFactory<T> quoteFactory, Accumulation accumulation) {
+		return new QuoteRollup<>(bucketFunction, pairFunction, valueFunctions, quoteFactory, accumulation, true);
+	}
+
+	public Flux<T> rollup(Flux<T> sortedQuotes) {
+		return sortedQuotes.concatMapIterable(this::add).concatWith(Flux.defer(() -> Flux.fromIterable(this.finish())));
+	}
+
+	public List<T> add(T quote) {
+		List<T> result = new LinkedList<>();
+		Optional<Date> quoteBucket = this.bucketFunction.apply(quote.getCreatedAt())
+				.filter(myBucket -> this.fromBuckets ? !myBucket.after(quote.getCreatedAt())
+						: myBucket.before(quote.getCreatedAt()));
+		if (quoteBucket.isEmpty()) {
+			return result;
+		}
+		String pair = this.pairFunction.apply(quote);
+		OpenBucket openBucket = this.openBuckets.get(pair);
+		if (openBucket != null && quoteBucket.get().before(openBucket.bucketBegin())) {
+			return result;
+		}
+		if (openBucket == null || quoteBucket.get().after(openBucket.bucketBegin())) {
+			if (openBucket != null) {
+				this.emitBucket(pair, openBucket).ifPresent(result::add);
+			}
+			openBucket = new OpenBucket(quoteBucket.get(), this.createAccumulator());
+			this.openBuckets.put(pair, openBucket);
+		}
+		Accumulator accumulator = openBucket.accumulator();
+		long weight = quote instanceof RollupQuote rollupQuote && rollupQuote.getCount() != null
+				? rollupQuote.getCount()
+				: 1L;
+		accumulator.increment(weight);
+		if (quote instanceof VectorQuote vectorQuote && !Accumulation.EXACT.equals(this.accumulation)) {
+			accumulator.addRow(vectorQuote.values(), weight);
+		} else {
+			BigDecimal myWeight = BigDecimal.valueOf(weight);
+			for (int i = 0; i < this.valueFunctions.size(); i++) {
+				BigDecimal value = this.valueFunctions.get(i).apply(quote);
+				if (value != null) {
+					accumulator.add(i, weight == 1L ? value : value.multiply(myWeight));
+				}
+			}
+		}
+		return result;
+	}
+
+	public List<T> finish() {
+		List<T> result = new LinkedList<>();
+		this.openBuckets.forEach((pair, openBucket) -> this.emitBucket(pair, openBucket).ifPresent(result::add));
+		this.openBuckets.clear();
+		return result;
+	}
+
+	private Optional<T> emitBucket(String pair, OpenBucket openBucket) {
+		Accumulator accumulator = openBucket.accumulator();
+		if (accumulator.count() < MIN_COUNT) {
+			return Optional.empty();
+		}
+		T quote = this.quoteFactory.create(pair, openBucket.bucketBegin(), accumulator.averages());
+		if (quote instanceof RollupQuote rollupQuote) {
+			rollupQuote.setCount(accumulator.count());
+		}
+		return Optional.of(quote);
+	}
+
+	private Accumulator createAccumulator() {
+		return switch (this.accumulation) {
+		case EXACT -> new ExactAccumulator(this.valueFunctions.size());
+		default -> new ColumnSumsAccumulator(this.columnSumsFactory.apply(this.valueFunctions.size()),
+				this.valueFunctions.size());
+		};
+	}
+
+	private static Function<Date, Optional<Date>> createBucketFunction(List<Date> boundaries) {
+		return createdAt -> {
+			int index = Collections.binarySearch(boundaries, createdAt);
+			int bucket = index < 0 ? -index - 2 : -1;
+			return bucket >= 0 && bucket < boundaries.size() - 1 ? Optional.of(boundaries.get(bucket))
+					: Optional.empty();
+		};
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+public class ScalarColumnSums implements ColumnSums {
+	protected final double[] sums;
+	protected final double[] compensations;
+
+	public ScalarColumnSums(int size) {
+		this.sums = new double[size];
+		this.compensations = new double[size];
+	}
+
+	@Override
+	public void add(int column, double value) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		double sum = this.sums[column];
+		double total = sum + value;
+		this.compensations[column] += Math.abs(sum) >= Math.abs(value) ? (sum - total) + value
+				: (value - total) + sum;
+		this.sums[column] = total;
+	}
+
+	@Override
+	public void addRow(double[] row, long weight) {
+		int length = Math.min(row.length, this.sums.length);
+		for (int i = 0; i < length; i++) {
+			this.add(i, row[i] * weight);
+		}
+	}
+
+	@Override
+	public double sum(int column) {
+		return this.sums[column] + this.compensations[column];
+	}
+}
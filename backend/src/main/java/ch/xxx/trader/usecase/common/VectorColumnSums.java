@@ -0,0 +1,55 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Adds a row lane wise into the column sums with the same Neumaier
+ * compensation as the scalar implementation, a missing value adds zero.
+ */
+public class VectorColumnSums extends ScalarColumnSums {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	public VectorColumnSums(int size) {
+		super(size);
+	}
+
+	@Override
+	public void addRow(double[] row, long weight) {
+		int length = Math.min(row.length, this.sums.length);
+		int upperBound = SPECIES.loopBound(length);
+		DoubleVector myWeight = DoubleVector.broadcast(SPECIES, (double) weight);
+		int i = 0;
+		for (; i < upperBound; i += SPECIES.length()) {
+			DoubleVector value = DoubleVector.fromArray(SPECIES, row, i);
+			value = value.mul(myWeight).blend(0.0, value.test(VectorOperators.IS_NAN));
+			DoubleVector sum = DoubleVector.fromArray(SPECIES, this.sums, i);
+			DoubleVector total = sum.add(value);
+			VectorMask<Double> sumLarger = sum.abs().compare(VectorOperators.GE, value.abs());
+			DoubleVector compensation = value.sub(total).add(sum).blend(sum.sub(total).add(value), sumLarger);
+			DoubleVector.fromArray(SPECIES, this.compensations, i).add(compensation).intoArray(this.compensations,
+					i);
+			total.intoArray(this.sums, i);
+		}
+		for (; i < length; i++) {
+			this.add(i, row[i] * weight);
+		}
+	}
+}
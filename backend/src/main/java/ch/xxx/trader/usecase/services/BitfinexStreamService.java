@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.QuoteExchange;
+import ch.xxx.trader.domain.model.dto.QuotePair;
+import ch.xxx.trader.domain.model.entity.QuoteBf;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+
+@Service
+public class BitfinexStreamService {
+	private static final Logger LOG = LoggerFactory.getLogger(BitfinexStreamService.class);
+	private static final String WEBSOCKET_MODE = "websocket";
+	private final MyQuoteStreamClient quoteStreamClient;
+	private final PairRegistry pairRegistry;
+	private final boolean streaming;
+	private final Map<String, QuoteBf> latestQuotes = new ConcurrentHashMap<>();
+	private final Map<String, QuoteBf> conflatedQuotes = new ConcurrentHashMap<>();
+	private Disposable streamDisposable;
+
+	public BitfinexStreamService(MyQuoteStreamClient quoteStreamClient, PairRegistry pairRegistry,
+			@Value("${ingestion.bitfinex.mode:rest}") String mode) {
+		this.quoteStreamClient = quoteStreamClient;
+		this.pairRegistry = pairRegistry;
+		this.streaming = WEBSOCKET_MODE.equalsIgnoreCase(mode.trim());
+	}
+
+	public boolean isStreaming() {
+		return this.streaming;
+	}
+
+	public synchronized void startStream() {
+		List<String> pairs = this.pairRegistry.getQuotePairs(QuoteExchange.BITFINEX).stream()
+				.map(QuotePair::pair).toList();
+		if (!this.streaming || this.streamDisposable != null || pairs.isEmpty()) {
+			return;
+		}
+		LOG.info("Starting the Bitfinex websocket stream for {}", pairs);
+		this.streamDisposable = this.quoteStreamClient.streamQuotesBitfinex(pairs).subscribe(this::onQuote,
+				ex -> LOG.error("Bitfinex websocket stream terminated", ex));
+	}
+
+	private void onQuote(QuoteBf quote) {
+		this.latestQuotes.put(quote.getPair(), quote);
+		this.conflatedQuotes.put(quote.getPair(), quote);
+	}
+
+	public Optional<QuoteBf> getLatestQuote(String pair) {
+		return Optional.ofNullable(this.latestQuotes.get(pair));
+	}
+
+	public List<QuoteBf> drainConflatedQuotes() {
+		List<QuoteBf> result = new LinkedList<>();
+		for (String pair : this.conflatedQuotes.keySet()) {
+			Optional.ofNullable(this.conflatedQuotes.remove(pair)).ifPresent(result::add);
+		}
+		return result;
+	}
+
+	@PreDestroy
+	public synchronized void stopStream() {
+		if (this.streamDisposable != null) {
+			this.streamDisposable.dispose();
+			this.streamDisposable = null;
+		}
+	}
+}
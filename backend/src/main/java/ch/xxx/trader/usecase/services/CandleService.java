@@ -0,0 +1,187 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.CandleResolution;
+import ch.xxx.trader.domain.common.MongoUtils;
+import ch.xxx.trader.domain.common.MongoUtils.TimeFrame;
+import ch.xxx.trader.domain.model.entity.Candle;
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.usecase.common.CandleAggregator;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+public class CandleService {
+	public record CandleDefinition<T extends Quote>(String exchange, String colName, Class<T> colType,
+			String candleColName, Function<T, List<Candle>> tickFunction) {
+	}
+
+	private static final Logger LOG = LoggerFactory.getLogger(CandleService.class);
+	private static final String RESOLUTION = "resolution";
+	private static final int CANDLE_INSERT_SIZE = 500;
+	private static final int CANDLE_LIMIT = 10000;
+	private static final long MINUTE = 60000L;
+	private static final long RAW_WINDOW = 24 * 60 * MINUTE;
+	private static final long CANDLE_WINDOW = 7 * RAW_WINDOW;
+	private final MyMongoRepository myMongoRepository;
+	private final QuoteBucketService quoteBucketService;
+	private final List<CandleDefinition<? extends Quote>> candleDefinitions = new CopyOnWriteArrayList<>();
+	private final Scheduler mongoScheduler = Schedulers.newBoundedElastic(4, 10, "mongoCandle", 10);
+
+	public CandleService(MyMongoRepository myMongoRepository, QuoteBucketService quoteBucketService) {
+		this.myMongoRepository = myMongoRepository;
+		this.quoteBucketService = quoteBucketService;
+	}
+
+	public <T extends Quote> void register(CandleDefinition<T> candleDefinition) {
+		this.candleDefinitions.add(candleDefinition);
+	}
+
+	public static List<Candle> createTicks(String pair, Date createdAt, BigDecimal price, BigDecimal volume) {
+		return price == null ? List.of()
+				: List.of(new Candle(pair, null, createdAt, price, price, price, price, volume, 1L));
+	}
+
+	public Flux<Candle> findCandles(String candleColName, String pair, String resolution,
+			Optional<String> timeFrame) {
+		return CandleResolution.fromValue(resolution).map(myResolution -> {
+			TimeFrame myTimeFrame = timeFrame
+					.flatMap(value -> Stream.of(TimeFrame.values())
+							.filter(myValue -> myValue.getValue().equals(value)).findFirst())
+					.orElse(myResolution.getDefaultTimeFrame());
+			Query query = MongoUtils.buildTimeFrameQuery(Optional.of(pair), myTimeFrame, CANDLE_LIMIT);
+			query.addCriteria(Criteria.where(RESOLUTION).is(myResolution.getValue()));
+			return this.myMongoRepository.find(query, Candle.class, candleColName);
+		}).orElse(Flux.empty());
+	}
+
+	public Mono<Long> createCandles() {
+		return Flux.fromIterable(this.candleDefinitions).concatMap(this::createCandles).reduce(0L, Long::sum)
+				.subscribeOn(this.mongoScheduler);
+	}
+
+	private <T extends Quote> Mono<Long> createCandles(CandleDefinition<T> candleDefinition) {
+		// the last minute stays open for the quotes still waiting in the batch sink
+		Date end = CandleResolution.MINUTE1.bucketBegin(new Date(System.currentTimeMillis() - MINUTE));
+		return this.myMongoRepository
+				.ensureUniqueIndex(candleDefinition.candleColName(),
+						List.of("pair", RESOLUTION, DtoUtils.CREATEDAT))
+				.doOnError(ex -> LOG.warn(String.format("Unique candle index on %s failed",
+						candleDefinition.candleColName()), ex))
+				.onErrorResume(ex -> Mono.just(candleDefinition.candleColName()))
+				.then(this.createMinuteCandles(candleDefinition, end))
+				.flatMap(minuteCount -> Flux.fromArray(CandleResolution.values())
+						.filter(resolution -> !CandleResolution.MINUTE1.equals(resolution))
+						.concatMap(resolution -> this.createCandles(candleDefinition, resolution, end))
+						.reduce(minuteCount, Long::sum))
+				.timeout(Duration.ofHours(1L))
+				.doOnSuccess(count -> LOG.info("Stored {} {} candles", count, candleDefinition.exchange()))
+				.doOnError(ex -> LOG.warn(String.format("%s candles failed", candleDefinition.exchange()), ex))
+				.onErrorResume(ex -> Mono.just(0L));
+	}
+
+	private <T extends Quote> Mono<Long> createMinuteCandles(CandleDefinition<T> candleDefinition, Date end) {
+		Query firstQuery = new Query();
+		firstQuery.with(Sort.by(DtoUtils.CREATEDAT).ascending());
+		Mono<Date> firstQuote = this.quoteBucketService
+				.findOne(firstQuery, candleDefinition.colType(), candleDefinition.colName())
+				.map(quote -> CandleResolution.MINUTE1.bucketBegin(quote.getCreatedAt()));
+		return this.findBegin(candleDefinition, CandleResolution.MINUTE1, firstQuote)
+				.flatMapMany(begin -> Flux.fromIterable(this.createWindows(CandleResolution.MINUTE1, begin, end,
+						RAW_WINDOW)))
+				.concatMap(window -> {
+					Query query = new Query();
+					query.addCriteria(Criteria.where(DtoUtils.CREATEDAT).gte(window[0]).lt(window[1]));
+					query.with(Sort.by(DtoUtils.CREATEDAT).ascending());
+					return this.storeCandles(candleDefinition, CandleResolution.MINUTE1,
+							this.quoteBucketService.find(query, candleDefinition.colType(), candleDefinition.colName())
+									.concatMapIterable(candleDefinition.tickFunction()));
+				}).reduce(0L, Long::sum);
+	}
+
+	private <T extends Quote> Mono<Long> createCandles(CandleDefinition<T> candleDefinition,
+			CandleResolution resolution, Date end) {
+		Query firstQuery = new Query();
+		firstQuery.addCriteria(Criteria.where(RESOLUTION).is(CandleResolution.MINUTE1.getValue()));
+		firstQuery.with(Sort.by(DtoUtils.CREATEDAT).ascending());
+		Mono<Date> firstCandle = this.myMongoRepository
+				.findOne(firstQuery, Candle.class, candleDefinition.candleColName())
+				.map(candle -> resolution.bucketBegin(candle.getCreatedAt()));
+		return this.findBegin(candleDefinition, resolution, firstCandle)
+				.flatMapMany(begin -> Flux.fromIterable(
+						this.createWindows(resolution, begin, resolution.bucketBegin(end), CANDLE_WINDOW)))
+				.concatMap(window -> {
+					Query query = new Query();
+					query.addCriteria(Criteria.where(RESOLUTION).is(CandleResolution.MINUTE1.getValue())
+							.and(DtoUtils.CREATEDAT).gte(window[0]).lt(window[1]));
+					query.with(Sort.by(DtoUtils.CREATEDAT).ascending());
+					return this.storeCandles(candleDefinition, resolution,
+							this.myMongoRepository.find(query, Candle.class, candleDefinition.candleColName()));
+				}).reduce(0L, Long::sum);
+	}
+
+	private <T extends Quote> Mono<Date> findBegin(CandleDefinition<T> candleDefinition,
+			CandleResolution resolution, Mono<Date> firstBegin) {
+		Query lastQuery = new Query();
+		lastQuery.addCriteria(Criteria.where(RESOLUTION).is(resolution.getValue()));
+		lastQuery.with(Sort.by(DtoUtils.CREATEDAT).descending());
+		return this.myMongoRepository.findOne(lastQuery, Candle.class, candleDefinition.candleColName())
+				.map(candle -> resolution.bucketEnd(candle.getCreatedAt())).switchIfEmpty(firstBegin);
+	}
+
+	private <T extends Quote> Mono<Long> storeCandles(CandleDefinition<T> candleDefinition,
+			CandleResolution resolution, Flux<Candle> sortedCandles) {
+		return new CandleAggregator(resolution).aggregate(sortedCandles.timeout(Duration.ofMinutes(1L)))
+				.buffer(CANDLE_INSERT_SIZE)
+				.concatMap(myCandles -> this.myMongoRepository
+						.insertAll(Mono.just(myCandles), candleDefinition.candleColName())
+						.timeout(Duration.ofSeconds(30L)))
+				.count();
+	}
+
+	private List<Date[]> createWindows(CandleResolution resolution, Date begin, Date end, long windowSize) {
+		List<Date[]> windows = new LinkedList<>();
+		Date windowBegin = begin;
+		while (windowBegin.before(end)) {
+			Date windowEnd = resolution.bucketBegin(new Date(windowBegin.getTime() + windowSize));
+			windowEnd = windowEnd.after(end) ? end : windowEnd;
+			windows.add(new Date[] { windowBegin, windowEnd });
+			windowBegin = windowEnd;
+		}
+		return windows;
+	}
+}
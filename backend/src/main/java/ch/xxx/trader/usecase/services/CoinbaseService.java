@@ -15,48 +15,50 @@
  */
 package ch.xxx.trader.usecase.services;
 
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.invoke.MethodHandles;
-import java.lang.reflect.Method;
 import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
 import java.time.Duration;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.Calendar;
-import java.util.Collection;
+import java.time.temporal.ChronoUnit;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.function.BiConsumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import ch.xxx.trader.domain.common.MongoUtils;
 import ch.xxx.trader.domain.common.MongoUtils.TimeFrame;
+import ch.xxx.trader.domain.common.QuoteExchange;
+import ch.xxx.trader.domain.model.entity.Candle;
 import ch.xxx.trader.domain.model.entity.QuoteCb;
+import ch.xxx.trader.domain.model.entity.QuoteCbAccessors;
+import ch.xxx.trader.domain.model.entity.QuoteCbCurrency;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
 import ch.xxx.trader.domain.model.entity.QuoteCbSmall;
+import ch.xxx.trader.usecase.common.ColumnSums;
 import ch.xxx.trader.usecase.common.DtoUtils;
-import ch.xxx.trader.usecase.services.ServiceUtils.MyTimeFrame;
+import ch.xxx.trader.usecase.common.QuoteRollup.Accumulation;
+import ch.xxx.trader.usecase.common.QuoteVersion;
+import ch.xxx.trader.usecase.services.CandleService.CandleDefinition;
+import ch.xxx.trader.usecase.services.LatestQuoteService.LatestDefinition;
+import ch.xxx.trader.usecase.services.QuoteCacheService.CacheDefinition;
+import ch.xxx.trader.usecase.services.QuoteStreamService.StreamDefinition;
+import ch.xxx.trader.usecase.services.QuoteVersionService.VersionDefinition;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyRollupDefinition;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
@@ -65,86 +67,170 @@ import reactor.core.scheduler.Schedulers;
 @Service
 public class CoinbaseService {
 	private static final Logger LOG = LoggerFactory.getLogger(CoinbaseService.class);
-	private static final Map<String, GetSetMethodFunctions> cbFunctionCache = new ConcurrentHashMap<>();
-
-	private record GetSetMethodFunctions(Function<QuoteCb, BigDecimal> getter, BiConsumer<QuoteCb, BigDecimal> setter,
-			String propertyName, PropertyDescriptor propertyDescriptor) {
-	}
+	private static final List<Function<QuoteCbRates, BigDecimal>> CB_VALUES = IntStream
+			.range(0, QuoteCbAccessors.size()).<Function<QuoteCbRates, BigDecimal>>mapToObj(index -> quote -> {
+				double rate = quote.values()[index];
+				return Double.isNaN(rate) ? null : BigDecimal.valueOf(rate);
+			}).toList();
 
+	public static final String CB_COL = "quoteCb";
 	public static final String CB_HOUR_COL = "quoteCbHour";
 	public static final String CB_DAY_COL = "quoteCbDay";
+	public static final String CB_WEEK_COL = "quoteCbWeek";
+	public static final String CB_MONTH_COL = "quoteCbMonth";
+	public static final String CB_CANDLE_COL = "candleCb";
+	private static final List<String> SMALL_CURRENCIES = List.of("usd", "eur", "eth", "ltc");
 	private final MyMongoRepository myMongoRepository;
 	private final ServiceUtils serviceUtils;
 	@Value("${kubernetes.pod.cpu.constraint}")
 	private boolean cpuConstraint;
-	private final List<String> nonValueFieldNames = List.of("_id", "createdAt", "class");
-	private final List<PropertyDescriptor> propertyDescriptors;
 	private final Scheduler mongoScheduler = Schedulers.newBoundedElastic(10, 10, "mongoImport", 10);
 	private final Executor futureExecutor;
+	private final CandleService candleService;
+	private final Optional<Accumulation> cbAccumulation;
+	private final QuoteCbStorageService quoteCbStorageService;
+	private final QuoteCacheService quoteCacheService;
+	private final LatestQuoteService latestQuoteService;
+	private final QuoteVersionService quoteVersionService;
 
 	public CoinbaseService(MyMongoRepository myMongoRepository, ServiceUtils serviceUtils,
-			@Qualifier("futureTaskExecutor") Executor futureExecutor) {
+			@Qualifier("futureTaskExecutor") Executor futureExecutor,
+			IncrementalRollupService incrementalRollupService, CandleService candleService,
+			QuoteCbStorageService quoteCbStorageService,
+			@Value("${candles.coinbase.currencies:usd,eur,eth,ltc}") List<String> candleCurrencies,
+			@Value("${rollup.coinbase.columnar:false}") boolean columnar, QuoteCacheService quoteCacheService,
+			LatestQuoteService latestQuoteService, QuoteVersionService quoteVersionService,
+			QuoteStreamService quoteStreamService) {
 		this.myMongoRepository = myMongoRepository;
 		this.serviceUtils = serviceUtils;
 		this.futureExecutor = futureExecutor;
-		try {
-			BeanInfo beanInfo = Introspector.getBeanInfo(QuoteCb.class);
-			this.propertyDescriptors = Stream.of(beanInfo.getPropertyDescriptors())
-					.filter(myDescriptor -> !this.nonValueFieldNames.contains(myDescriptor.getName())).toList();
-		} catch (IntrospectionException e) {
-			throw new RuntimeException(e);
+		this.candleService = candleService;
+		this.quoteCbStorageService = quoteCbStorageService;
+		this.cbAccumulation = columnar ? Optional.of(Accumulation.COLUMNAR) : Optional.empty();
+		if (columnar) {
+			LOG.info(String.format("Coinbase rollups use the columnar accumulation, vectorized: %b",
+					ColumnSums.isVectorized()));
 		}
-	}
-
-	public Mono<QuoteCb> insertQuote(Mono<QuoteCb> quote) {
-		return this.myMongoRepository.insert(quote);
+		incrementalRollupService.register(this.createCbRollupDefinition(), CB_HOUR_COL, CB_DAY_COL);
+		candleService.register(this.createCbCandleDefinition(candleCurrencies));
+		this.quoteCacheService = quoteCacheService;
+		quoteCacheService.register(new CacheDefinition<>("Coinbase", CB_COL, QuoteCbRates.class, quote -> CB_COL,
+				QuoteCbAccessors.size(), (quote, row) -> System.arraycopy(quote.values(), 0, row, 0, row.length),
+				(pair, createdAt, row) -> new QuoteCbRates(createdAt, row), quoteCbStorageService.isDelta()));
+		this.latestQuoteService = latestQuoteService;
+		// the latest quote is stored as a full frame without its delta chain
+		latestQuoteService.register(new LatestDefinition<>(QuoteExchange.COINBASE, QuoteCbRates.class,
+				quote -> CB_COL, quote -> new QuoteCbRates(quote.getCreatedAt(), quote.values().clone())));
+		quoteStreamService.register(new StreamDefinition<>(QuoteExchange.COINBASE, QuoteCbRates.class,
+				pair -> CB_COL, QuoteCbRates::toQuoteCb));
+		this.quoteVersionService = quoteVersionService;
+		quoteVersionService.register(new VersionDefinition<>(QuoteCbRates.class,
+				Map.of(TimeFrame.TODAY, CB_COL, TimeFrame.SEVENDAYS, CB_HOUR_COL, TimeFrame.THIRTYDAYS, CB_DAY_COL,
+						TimeFrame.NINTYDAYS, CB_DAY_COL, TimeFrame.Month6, CB_DAY_COL, TimeFrame.Year1, CB_WEEK_COL)));
 	}
 
 	public Flux<QuoteCbSmall> todayQuotesBc() {
-		Query query = MongoUtils.buildTodayQuery(Optional.empty());
-		return this.myMongoRepository.find(query, QuoteCb.class).filter(q -> filterEvenMinutes(q))
-				.map(quote -> new QuoteCbSmall(quote.getCreatedAt(), quote.getUsd(), quote.getEur(), quote.getEth(),
-						quote.getLtc()));
+		return this.findRates(TimeFrame.TODAY, SMALL_CURRENCIES).map(this::createCbSmall);
 	}
 
 	public Flux<QuoteCbSmall> sevenDaysQuotesBc() {
-		Query query = MongoUtils.build7DayQuery(Optional.empty());
-		return this.myMongoRepository.find(query, QuoteCb.class, CB_HOUR_COL).filter(q -> filterEvenMinutes(q))
-				.map(quote -> new QuoteCbSmall(quote.getCreatedAt(), quote.getUsd(), quote.getEur(), quote.getEth(),
-						quote.getLtc()));
+		return this.findRates(TimeFrame.SEVENDAYS, SMALL_CURRENCIES).map(this::createCbSmall);
 	}
 
 	public Flux<QuoteCbSmall> thirtyDaysQuotesBc() {
-		Query query = MongoUtils.build30DayQuery(Optional.empty());
-		return this.myMongoRepository.find(query, QuoteCb.class, CB_DAY_COL).filter(q -> filterEvenMinutes(q))
-				.map(quote -> new QuoteCbSmall(quote.getCreatedAt(), quote.getUsd(), quote.getEur(), quote.getEth(),
-						quote.getLtc()));
+		return this.findRates(TimeFrame.THIRTYDAYS, SMALL_CURRENCIES).map(this::createCbSmall);
 	}
 
 	public Flux<QuoteCbSmall> nintyDaysQuotesBc() {
-		Query query = MongoUtils.build90DayQuery(Optional.empty());
-		return this.myMongoRepository.find(query, QuoteCb.class, CB_DAY_COL).filter(q -> filterEvenMinutes(q))
-				.map(quote -> new QuoteCbSmall(quote.getCreatedAt(), quote.getUsd(), quote.getEur(), quote.getEth(),
-						quote.getLtc()));
+		return this.findRates(TimeFrame.NINTYDAYS, SMALL_CURRENCIES).map(this::createCbSmall);
 	}
 
 	public Flux<QuoteCbSmall> sixMonthsQuotesBc() {
-		Query query = MongoUtils.buildTimeFrameQuery(Optional.empty(), TimeFrame.Month6);
-		return this.myMongoRepository.find(query, QuoteCb.class, CB_DAY_COL).filter(q -> filterEvenMinutes(q))
-				.map(quote -> new QuoteCbSmall(quote.getCreatedAt(), quote.getUsd(), quote.getEur(), quote.getEth(),
-						quote.getLtc()));
+		return this.findRates(TimeFrame.Month6, SMALL_CURRENCIES).map(this::createCbSmall);
 	}
 
 	public Flux<QuoteCbSmall> oneYearQuotesBc() {
-		Query query = MongoUtils.buildTimeFrameQuery(Optional.empty(), TimeFrame.Year1);
-		return this.myMongoRepository.find(query, QuoteCb.class, CB_DAY_COL).filter(q -> filterEvenMinutes(q))
-				.map(quote -> new QuoteCbSmall(quote.getCreatedAt(), quote.getUsd(), quote.getEur(), quote.getEth(),
-						quote.getLtc()));
+		return this.findRates(TimeFrame.Year1, SMALL_CURRENCIES).map(this::createCbSmall);
+	}
+
+	public Mono<QuoteVersion> currencyQuotesVersion(String timeFrame) {
+		return this.quoteVersionService.findVersion(QuoteCbRates.class, timeFrame, Optional.empty());
+	}
+
+	public Flux<QuoteCbCurrency> currencyQuotes(String currency, String timeFrame) {
+		String myCurrency = currency.toLowerCase();
+		Optional<TimeFrame> myTimeFrame = Stream.of(TimeFrame.TODAY, TimeFrame.SEVENDAYS, TimeFrame.THIRTYDAYS,
+				TimeFrame.NINTYDAYS, TimeFrame.Month6, TimeFrame.Year1)
+				.filter(value -> value.getValue().equals(timeFrame)).findFirst();
+		if (QuoteCbAccessors.indexOf(myCurrency) < 0 || myTimeFrame.isEmpty()) {
+			return Flux.empty();
+		}
+		return this.findRates(myTimeFrame.get(), List.of(myCurrency))
+				.map(quote -> new QuoteCbCurrency(quote.getCreatedAt(), myCurrency, quote.getRateValue(myCurrency)));
+	}
+
+	private Flux<QuoteCbRates> findRates(TimeFrame timeFrame, List<String> currencies) {
+		if (TimeFrame.TODAY.equals(timeFrame)) {
+			Optional<Flux<QuoteCbRates>> cached = this.quoteCacheService.findToday(QuoteCbRates.class, CB_COL, 2);
+			if (cached.isPresent()) {
+				return cached.get();
+			}
+		}
+		Query query = switch (timeFrame) {
+		case TODAY -> this.quoteCbStorageService.isDelta() ? MongoUtils.buildTodayQuery(Optional.empty())
+				: MongoUtils.buildTodayQuery(Optional.empty(), 2);
+		case SEVENDAYS -> MongoUtils.build7DayQuery(Optional.empty());
+		case THIRTYDAYS -> MongoUtils.build30DayQuery(Optional.empty());
+		case NINTYDAYS -> MongoUtils.build90DayQuery(Optional.empty());
+		default -> MongoUtils.buildTimeFrameQuery(Optional.empty(), timeFrame);
+		};
+		String colName = switch (timeFrame) {
+		case TODAY -> CB_COL;
+		case SEVENDAYS -> CB_HOUR_COL;
+		case Year1 -> CB_WEEK_COL;
+		default -> CB_DAY_COL;
+		};
+		boolean decodeChain = TimeFrame.TODAY.equals(timeFrame) && this.quoteCbStorageService.isDelta();
+		int limit = query.getLimit();
+		if (decodeChain) {
+			// delta frames need their predecessors, the whole chain is read and the limit applies after downsampling
+			query.limit(0);
+		}
+		// only createdAt and the requested rates are sent by mongo
+		query.fields().include(DtoUtils.CREATEDAT);
+		currencies.forEach(currency -> query.fields()
+				.include(QuoteCbAccessors.FIELDS[QuoteCbAccessors.indexOf(currency)]));
+		QuoteCbStorageService.PACKED_FIELDS.forEach(field -> query.fields().include(field));
+		Flux<QuoteCbRates> result = this.myMongoRepository.find(query, QuoteCbRates.class, colName);
+		if (decodeChain) {
+			result = result.filter(quote -> LocalDateTime
+					.ofInstant(quote.getCreatedAt().toInstant(), ZoneId.systemDefault()).getMinute() % 2 == 0)
+					.take(limit);
+		}
+		return result;
+	}
+
+	public Flux<Candle> candles(String currency, String resolution, Optional<String> timeFrame) {
+		return this.candleService.findCandles(CB_CANDLE_COL, currency.toLowerCase(), resolution, timeFrame);
 	}
 
 	public Mono<QuoteCb> currentQuoteBc() {
 		Query query = MongoUtils.buildCurrentQuery(Optional.empty());
-		return this.myMongoRepository.findOne(query, QuoteCb.class);
+		Mono<QuoteCbRates> current = this.myMongoRepository.findOne(query, QuoteCbRates.class);
+		if (this.quoteCbStorageService.isDelta()) {
+			// read the delta chain of the current hour to decode its latest snapshot
+			Query hourQuery = new Query(Criteria.where(DtoUtils.CREATEDAT).gte(Date.from(LocalDateTime.now()
+					.truncatedTo(ChronoUnit.HOURS).atZone(ZoneId.systemDefault()).toInstant())));
+			hourQuery.with(Sort.by(DtoUtils.CREATEDAT).ascending());
+			current = this.myMongoRepository.find(hourQuery, QuoteCbRates.class).last().switchIfEmpty(current);
+		}
+		return this.latestQuoteService.findLatest(QuoteCbRates.class, CB_COL).switchIfEmpty(current)
+				.map(QuoteCbRates::toQuoteCb);
+	}
+
+	public Flux<Long> migrateStorage() {
+		return this.quoteCbStorageService.migrateAll(List.of(CB_COL),
+				List.of(CB_HOUR_COL, CB_DAY_COL, CB_WEEK_COL, CB_MONTH_COL));
 	}
 
 	public Mono<String> createCbAvg() {
@@ -168,198 +254,59 @@ public class CoinbaseService {
 			this.createCbDailyAvg();
 			LOG.info(this.serviceUtils.createAvgLogStatement(start, "Prepared Coinbase Data Time:"));
 		} else {
-			// This can only be used on machines without cpu constraints.
-			CompletableFuture<String> future7 = CompletableFuture.supplyAsync(() -> {
+			// the day buckets are derived from the hour buckets
+			CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> {
 				this.createCbHourlyAvg();
-				return "createCbHourlyAvg() Done.";
-			}, CompletableFuture.delayedExecutor(10, TimeUnit.SECONDS, this.futureExecutor));
-			CompletableFuture<String> future8 = CompletableFuture.supplyAsync(() -> {
 				this.createCbDailyAvg();
-				return "createCbDailyAvg() Done.";
+				return "createCbHourlyAvg() createCbDailyAvg() Done.";
 			}, CompletableFuture.delayedExecutor(10, TimeUnit.SECONDS, this.futureExecutor));
-			String combined = Stream.of(future7, future8).map(CompletableFuture::join).collect(Collectors.joining(" "));
-			LOG.info(combined);
+			LOG.info(future.join());
 		}
 		return "done.";
 	}
 
 	private void createCbHourlyAvg() {
 		LOG.info("createCbHourlyAvg()");
-		LocalDateTime startAll = LocalDateTime.now();
-		MyTimeFrame timeFrame = this.serviceUtils.createTimeFrame(CB_HOUR_COL, QuoteCb.class, true);
-		SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy");
-		Calendar now = Calendar.getInstance();
-		now.setTime(Date.from(LocalDate.now().atStartOfDay().atZone(ZoneId.systemDefault()).toInstant()));
-		while (timeFrame.end().before(now)) {
-			Date start = new Date();
-			Query query = new Query();
-			query.addCriteria(
-					Criteria.where(DtoUtils.CREATEDAT).gt(timeFrame.begin().getTime()).lt(timeFrame.end().getTime()));
-			// Coinbase
-			Mono<Collection<QuoteCb>> collectCb = this.myMongoRepository.find(query, QuoteCb.class)
-					.timeout(Duration.ofSeconds(5L)).doOnError(ex -> LOG.warn("Coinbase prepare hour data failed", ex))
-					.onErrorResume(ex -> Mono.empty()).subscribeOn(this.mongoScheduler).collectList()
-					.map(quotes -> makeCbQuoteHour(quotes, timeFrame.begin(), timeFrame.end()));
-			collectCb.filter(myColl -> !myColl.isEmpty())
-					.flatMap(myColl -> this.myMongoRepository.insertAll(Mono.just(myColl), CB_HOUR_COL)
-							.timeout(Duration.ofSeconds(5L))
-							.doOnError(ex -> LOG.warn("Coinbase prepare hour data failed", ex))
-							.onErrorResume(ex -> Mono.empty()).subscribeOn(this.mongoScheduler).collectList())
-					.subscribeOn(this.mongoScheduler).block();
-
-			timeFrame.begin().add(Calendar.DAY_OF_YEAR, 1);
-			timeFrame.end().add(Calendar.DAY_OF_YEAR, 1);
-			LOG.info("Prepared Coinbase Hour Data for: " + sdf.format(timeFrame.begin().getTime()) + " Time: "
-					+ (new Date().getTime() - start.getTime()) + "ms");
-		}
-		LOG.info(this.serviceUtils.createAvgLogStatement(startAll, "Prepared Coinbase Hourly Data Time:"));
+		this.serviceUtils.rollupQuotes(this.createCbRollupDefinition(), CB_HOUR_COL, true);
 	}
 
 	private void createCbDailyAvg() {
 		LOG.info("createCbDailyAvg()");
-		LocalDateTime startAll = LocalDateTime.now();
-		MyTimeFrame timeFrame = this.serviceUtils.createTimeFrame(CB_DAY_COL, QuoteCb.class, false);
-		SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy");
-		Calendar now = Calendar.getInstance();
-		now.setTime(Date.from(LocalDate.now().atStartOfDay().atZone(ZoneId.systemDefault()).toInstant()));
-		while (timeFrame.end().before(now)) {
-			Date start = new Date();
-			Query query = new Query();
-			query.addCriteria(
-					Criteria.where(DtoUtils.CREATEDAT).gt(timeFrame.begin().getTime()).lt(timeFrame.end().getTime()));
-			// Coinbase
-			Mono<Collection<QuoteCb>> collectCb = this.myMongoRepository.find(query, QuoteCb.class)
-					.timeout(Duration.ofSeconds(5L)).doOnError(ex -> LOG.warn("Coinbase prepare day data failed", ex))
-					.onErrorResume(ex -> Mono.empty()).subscribeOn(this.mongoScheduler).collectList()
-					.map(quotes -> makeCbQuoteDay(quotes, timeFrame.begin(), timeFrame.end()));
-			collectCb.filter(myColl -> !myColl.isEmpty())
-					.flatMap(myColl -> this.myMongoRepository.insertAll(Mono.just(myColl), CB_DAY_COL)
-							.timeout(Duration.ofSeconds(5L))
-							.doOnError(ex -> LOG.warn("Coinbase prepare day data failed", ex))
-							.onErrorResume(ex -> Mono.empty()).subscribeOn(this.mongoScheduler).collectList())
-					.subscribeOn(this.mongoScheduler).block();
-
-			timeFrame.begin().add(Calendar.DAY_OF_YEAR, 1);
-			timeFrame.end().add(Calendar.DAY_OF_YEAR, 1);
-			LOG.info("Prepared Coinbase Day Data for: " + sdf.format(timeFrame.begin().getTime()) + " Time: "
-					+ (new Date().getTime() - start.getTime()) + "ms");
-		}
-		LOG.info(this.serviceUtils.createAvgLogStatement(startAll, "Prepared Coinbase Daily Data Time:"));
-	}
-
-	private Collection<QuoteCb> makeCbQuoteDay(List<QuoteCb> quotes, Calendar begin, Calendar end) {
-		List<QuoteCb> hourQuotes = new LinkedList<QuoteCb>();
-		QuoteCb quoteCb = new QuoteCb();
-		quoteCb.setCreatedAt(begin.getTime());
-		long count = quotes.stream().filter(quote -> {
-			return quote.getCreatedAt().after(begin.getTime()) && quote.getCreatedAt().before(end.getTime());
-		}).count();
-		if (count > 2) {
-			quoteCb = quotes.stream().filter(quote -> {
-				return quote.getCreatedAt().after(begin.getTime()) && quote.getCreatedAt().before(end.getTime());
-			}).reduce(quoteCb, (q1, q2) -> avgCbQuotePeriod(q1, q2, count));
-			hourQuotes.add(quoteCb);
-		}
-		return hourQuotes;
+		MyRollupDefinition<QuoteCbRates> rollupDefinition = this.createCbRollupDefinition();
+		this.serviceUtils.rollupBuckets(rollupDefinition, CB_HOUR_COL, CB_DAY_COL, ChronoUnit.DAYS);
+		this.serviceUtils.rollupBuckets(rollupDefinition, CB_DAY_COL, CB_WEEK_COL, ChronoUnit.WEEKS);
+		this.serviceUtils.rollupBuckets(rollupDefinition, CB_DAY_COL, CB_MONTH_COL, ChronoUnit.MONTHS);
 	}
 
-	private Collection<QuoteCb> makeCbQuoteHour(List<QuoteCb> quotes, Calendar begin, Calendar end) {
-		List<Calendar> hours = this.serviceUtils.createDayHours(begin);
-		List<QuoteCb> hourQuotes = new LinkedList<QuoteCb>();
-		for (int i = 0; i < 24; i++) {
-			QuoteCb quoteCb = new QuoteCb();
-			quoteCb.setCreatedAt(hours.get(i).getTime());
-			final int x = i;
-			long count = quotes.stream().filter(quote -> {
-				return quote.getCreatedAt().after(hours.get(x).getTime())
-						&& quote.getCreatedAt().before(hours.get(x + 1).getTime());
-			}).count();
-			if (count > 2) {
-				quoteCb = quotes.stream().filter(quote -> {
-					return quote.getCreatedAt().after(hours.get(x).getTime())
-							&& quote.getCreatedAt().before(hours.get(x + 1).getTime());
-				}).reduce(quoteCb, (q1, q2) -> avgCbQuotePeriod(q1, q2, count));
-				hourQuotes.add(quoteCb);
-			}
-		}
-		return hourQuotes;
+	private MyRollupDefinition<QuoteCbRates> createCbRollupDefinition() {
+		// packed documents have no fields the mongo aggregation could average
+		List<String> valueFields = this.quoteCbStorageService.isPacked() ? List.of()
+				: List.of(QuoteCbAccessors.FIELDS);
+		return new MyRollupDefinition<>("Coinbase", CB_COL, QuoteCbRates.class, Optional.empty(), quote -> CB_COL,
+				valueFields, CB_VALUES, List.of(),
+				(pair, bucketBegin, avgs) -> this.createCbQuote(bucketBegin, avgs), this.cbAccumulation);
 	}
 
-	private QuoteCb avgCbQuotePeriod(QuoteCb q1, QuoteCb q2, long count) {
-		QuoteCb result = avgCbQuotePeriodMF(q1, q2, count);
-		return result;
+	private CandleDefinition<QuoteCbRates> createCbCandleDefinition(List<String> currencies) {
+		List<String> myCurrencies = currencies.stream().map(String::toLowerCase)
+				.filter(currency -> QuoteCbAccessors.indexOf(currency) >= 0).toList();
+		return new CandleDefinition<>("Coinbase", CB_COL, QuoteCbRates.class, CB_CANDLE_COL,
+				quote -> myCurrencies.stream()
+						.map(currency -> CandleService.createTicks(currency, quote.getCreatedAt(),
+								quote.getRateValue(currency), null))
+						.flatMap(List::stream).toList());
 	}
 
-	private QuoteCb avgCbQuotePeriodMF(QuoteCb q1, QuoteCb q2, long count) {
-		QuoteCb result = new QuoteCb();
-		this.propertyDescriptors.forEach(myPropertyDescriptor -> {
-			GetSetMethodFunctions gsmf;
-			try {
-				gsmf = this.createGetMethodFunction(myPropertyDescriptor);
-				BigDecimal num1 = gsmf.getter.apply(q1);
-				BigDecimal num2 = gsmf.getter.apply(q2);
-				BigDecimal resultValue = this.serviceUtils.avgHourValue(num1, num2, count);
-				gsmf.setter.accept(result, resultValue);
-				result.setCreatedAt(q1.getCreatedAt());
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-		});
-		return result;
+	private QuoteCbSmall createCbSmall(QuoteCbRates quote) {
+		return new QuoteCbSmall(quote.getCreatedAt(), quote.getRateValue("usd"), quote.getRateValue("eur"),
+				quote.getRateValue("eth"), quote.getRateValue("ltc"));
 	}
 
-	private GetSetMethodFunctions createGetMethodFunction(PropertyDescriptor propertyDescriptor) throws Exception {
-		GetSetMethodFunctions gsmf = cbFunctionCache.get(propertyDescriptor.getName());
-		// log.info(propertyDescriptor.getName());
-		if (gsmf == null) {
-			synchronized (this) {
-				gsmf = cbFunctionCache.get(propertyDescriptor.getName());
-				if (gsmf == null) {
-					final MethodHandles.Lookup lookupGetter = MethodHandles.lookup();
-					final MethodHandles.Lookup lookupSetter = MethodHandles.lookup();
-					Method getterMethod = null;
-					Method setterMethod = null;
-					if ("1Inch".equalsIgnoreCase(propertyDescriptor.getName())) {
-						getterMethod = Stream.of(QuoteCb.class.getMethods())
-								.filter(myMethod -> myMethod.getName().equalsIgnoreCase("get1Inch")).findFirst()
-								.orElseThrow();
-						setterMethod = Stream.of(QuoteCb.class.getMethods())
-								.filter(myMethod -> myMethod.getName().equalsIgnoreCase("set1Inch")).findFirst()
-								.orElseThrow();
-					} else if ("super".equalsIgnoreCase(propertyDescriptor.getName())) {
-						getterMethod = Stream.of(QuoteCb.class.getMethods())
-								.filter(myMethod -> myMethod.getName().equalsIgnoreCase("getSuper")).findFirst()
-								.orElseThrow();
-						setterMethod = Stream.of(QuoteCb.class.getMethods())
-								.filter(myMethod -> myMethod.getName().equalsIgnoreCase("setSuper")).findFirst()
-								.orElseThrow();
-					} else if ("try".equalsIgnoreCase(propertyDescriptor.getName())) {
-						getterMethod = Stream.of(QuoteCb.class.getMethods())
-								.filter(myMethod -> myMethod.getName().equalsIgnoreCase("getTry1")).findFirst()
-								.orElseThrow();
-						setterMethod = Stream.of(QuoteCb.class.getMethods())
-								.filter(myMethod -> myMethod.getName().equalsIgnoreCase("setTry1")).findFirst()
-								.orElseThrow();
-					} else {
-						getterMethod = propertyDescriptor.getReadMethod();
-						setterMethod = propertyDescriptor.getWriteMethod();
-					}
-					@SuppressWarnings("unchecked")
-					Function<QuoteCb, BigDecimal> getterFunction = (Function<QuoteCb, BigDecimal>) DtoUtils
-							.createGetter(lookupGetter, lookupGetter.unreflect(getterMethod));
-					@SuppressWarnings("unchecked")
-					BiConsumer<QuoteCb, BigDecimal> setterFunction = DtoUtils.createSetter(lookupSetter,
-							lookupSetter.unreflect(setterMethod));
-					cbFunctionCache.put(propertyDescriptor.getName(), new GetSetMethodFunctions(getterFunction,
-							setterFunction, propertyDescriptor.getName(), propertyDescriptor));
-					gsmf = cbFunctionCache.get(propertyDescriptor.getName());
-				}
-			}
+	private QuoteCbRates createCbQuote(Date bucketBegin, BigDecimal[] avgs) {
+		double[] rates = QuoteCbRates.createEmptyRates();
+		for (int i = 0; i < avgs.length; i++) {
+			rates[i] = avgs[i] == null ? Double.NaN : avgs[i].doubleValue();
 		}
-		return gsmf;
-	}
-
-	private boolean filterEvenMinutes(QuoteCb quote) {
-		return MongoUtils.filterEvenMinutes(quote.getCreatedAt());
+		return new QuoteCbRates(bucketBegin, rates);
 	}
 }
@@ -0,0 +1,125 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject.Type;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.model.entity.Candle;
+import ch.xxx.trader.domain.model.entity.QuoteBf;
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import ch.xxx.trader.domain.model.entity.QuoteIb;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Rewrites documents with prices stored as strings in batches once the numeric
+ * storage is enabled. The documents are read with the legacy string values and
+ * saved again with the numeric converters, so a migrated document no longer
+ * matches the string probe of its collection. Every batch resumes at the
+ * createdAt of the last migrated document.
+ */
+@Service
+public class DecimalMigrationService {
+	private static final Logger LOG = LoggerFactory.getLogger(DecimalMigrationService.class);
+	private final MyMongoRepository myMongoRepository;
+	private final boolean numericDecimals;
+	private final int batchSize;
+	private final List<MigrationDefinition<?>> migrationDefinitions;
+
+	public record MigrationDefinition<T extends Quote>(String colName, Class<T> colType, String probeField) {
+	}
+
+	public DecimalMigrationService(MyMongoRepository myMongoRepository,
+			@Value("${mongo.decimal.numeric:false}") boolean numericDecimals,
+			@Value("${mongo.decimal.migration.batch-size:500}") int batchSize,
+			@Value("${coinbase.storage.packed:false}") boolean packed) {
+		this.myMongoRepository = myMongoRepository;
+		this.numericDecimals = numericDecimals;
+		this.batchSize = batchSize;
+		this.migrationDefinitions = createMigrationDefinitions(packed);
+	}
+
+	static List<MigrationDefinition<?>> createMigrationDefinitions(boolean packed) {
+		Stream<MigrationDefinition<?>> quotes = Stream.of(
+				Stream.of(BitstampService.BS_COL, BitstampService.BS_HOUR_COL, BitstampService.BS_DAY_COL,
+						BitstampService.BS_WEEK_COL, BitstampService.BS_MONTH_COL)
+						.map(colName -> new MigrationDefinition<>(colName, QuoteBs.class, "last")),
+				Stream.of(BitfinexService.BF_COL, BitfinexService.BF_HOUR_COL, BitfinexService.BF_DAY_COL,
+						BitfinexService.BF_WEEK_COL, BitfinexService.BF_MONTH_COL)
+						.map(colName -> new MigrationDefinition<>(colName, QuoteBf.class, "last_price")),
+				Stream.of(ItbitService.IB_COL, ItbitService.IB_HOUR_COL, ItbitService.IB_DAY_COL,
+						ItbitService.IB_WEEK_COL, ItbitService.IB_MONTH_COL)
+						.map(colName -> new MigrationDefinition<>(colName, QuoteIb.class, "lastPrice")),
+				// packed Coinbase documents are migrated by the QuoteCbStorageService
+				Stream.of(CoinbaseService.CB_COL, CoinbaseService.CB_HOUR_COL, CoinbaseService.CB_DAY_COL,
+						CoinbaseService.CB_WEEK_COL, CoinbaseService.CB_MONTH_COL)
+						.filter(colName -> !packed)
+						.map(colName -> new MigrationDefinition<>(colName, QuoteCbRates.class, "usd")),
+				Stream.of(BitstampService.BS_CANDLE_COL, BitfinexService.BF_CANDLE_COL, ItbitService.IB_CANDLE_COL,
+						CoinbaseService.CB_CANDLE_COL)
+						.map(colName -> new MigrationDefinition<>(colName, Candle.class, "close")))
+				.flatMap(definitions -> definitions);
+		return quotes.toList();
+	}
+
+	public List<MigrationDefinition<?>> getMigrationDefinitions() {
+		return this.migrationDefinitions;
+	}
+
+	public Flux<Long> migrateAll() {
+		if (!this.numericDecimals) {
+			return Flux.empty();
+		}
+		return Flux.fromIterable(this.migrationDefinitions).concatMap(this::migrate);
+	}
+
+	public <T extends Quote> Mono<Long> migrate(MigrationDefinition<T> migrationDefinition) {
+		Date[] migratedUntil = new Date[1];
+		return this.migrateBatch(migrationDefinition, migratedUntil)
+				.expand(count -> count < this.batchSize ? Mono.empty()
+						: this.migrateBatch(migrationDefinition, migratedUntil))
+				.reduce(0L, Long::sum)
+				.doOnNext(count -> LOG.info(String.format("Migrated %d %s documents to numeric prices", count,
+						migrationDefinition.colName())));
+	}
+
+	private <T extends Quote> Mono<Long> migrateBatch(MigrationDefinition<T> migrationDefinition,
+			Date[] migratedUntil) {
+		Criteria criteria = Criteria.where(migrationDefinition.probeField()).type(Type.stringType());
+		// migrated documents with the same createdAt no longer match the string probe
+		Optional.ofNullable(migratedUntil[0]).ifPresent(myDate -> criteria.and(DtoUtils.CREATEDAT).gte(myDate));
+		Query query = new Query(criteria);
+		query.with(Sort.by(DtoUtils.CREATEDAT).ascending()).limit(this.batchSize);
+		return this.myMongoRepository.find(query, migrationDefinition.colType(), migrationDefinition.colName())
+				.concatMap(quote -> this.myMongoRepository.save(quote, migrationDefinition.colName()))
+				.doOnNext(quote -> migratedUntil[0] = quote.getCreatedAt()).count();
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.usecase.common.QuoteRollup;
+import ch.xxx.trader.usecase.common.QuoteRollup.Accumulation;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyRollupDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+public class IncrementalRollupService {
+	private static final Logger LOG = LoggerFactory.getLogger(IncrementalRollupService.class);
+	private final MyMongoRepository myMongoRepository;
+	private final boolean enabled;
+	private final Accumulation accumulation;
+	private final long maxGapMs;
+	private final Map<Class<? extends Quote>, IncrementalRollup<? extends Quote>> incrementalRollups =
+			new ConcurrentHashMap<>();
+	private final Scheduler mongoScheduler = Schedulers.newBoundedElastic(4, 100, "mongoRollup", 10);
+
+	private static class IncrementalRollup<T extends Quote> {
+		private final MyRollupDefinition<T> rollupDefinition;
+		private final String hourColName;
+		private final String dayColName;
+		private final QuoteRollup<T> hourRollup;
+		private final QuoteRollup<T> dayRollup;
+		private Date coveredSince = null;
+		private Date lastQuoteAt = null;
+
+		private IncrementalRollup(MyRollupDefinition<T> rollupDefinition, String hourColName, String dayColName,
+				Accumulation accumulation) {
+			ZoneId zoneId = ZoneId.systemDefault();
+			this.rollupDefinition = rollupDefinition;
+			this.hourColName = hourColName;
+			this.dayColName = dayColName;
+			Function<Date, Optional<Date>> hourFunction = createdAt -> Optional
+					.of(Date.from(createdAt.toInstant().atZone(zoneId).truncatedTo(ChronoUnit.HOURS).toInstant()));
+			Function<Date, Optional<Date>> dayFunction = createdAt -> Optional
+					.of(Date.from(createdAt.toInstant().atZone(zoneId).toLocalDate().atStartOfDay(zoneId).toInstant()));
+			this.hourRollup = new QuoteRollup<>(hourFunction, rollupDefinition.pairFunction(),
+					rollupDefinition.valueFunctions(), rollupDefinition.quoteFactory(), accumulation);
+			this.dayRollup = new QuoteRollup<>(dayFunction, rollupDefinition.pairFunction(),
+					rollupDefinition.valueFunctions(), rollupDefinition.quoteFactory(), accumulation);
+		}
+
+		/**
+		 * The closed buckets this instance has seen every quote of. A gap in the
+		 * quotes means another instance held the ingestion lock, the buckets
+		 * begun before the gap are left to the reconciliation.
+		 */
+		private synchronized Map<String, List<T>> add(Quote quote, long maxGapMs) {
+			T myQuote = this.rollupDefinition.colType().cast(quote);
+			Date createdAt = myQuote.getCreatedAt();
+			if (this.lastQuoteAt == null || createdAt.getTime() - this.lastQuoteAt.getTime() > maxGapMs) {
+				this.coveredSince = createdAt;
+			}
+			if (this.lastQuoteAt == null || createdAt.after(this.lastQuoteAt)) {
+				this.lastQuoteAt = createdAt;
+			}
+			return Map.of(this.hourColName, this.filterCovered(this.hourRollup.add(myQuote)), this.dayColName,
+					this.filterCovered(this.dayRollup.add(myQuote)));
+		}
+
+		private List<T> filterCovered(List<T> buckets) {
+			return buckets.stream().filter(bucket -> !bucket.getCreatedAt().before(this.coveredSince)).toList();
+		}
+	}
+
+	public IncrementalRollupService(MyMongoRepository myMongoRepository,
+			@Value("${rollup.incremental.enabled:true}") boolean enabled,
+			@Value("${rollup.accumulation:compensated}") String accumulation,
+			@Value("${rollup.incremental.max-gap-ms:150000}") long maxGapMs) {
+		this.myMongoRepository = myMongoRepository;
+		this.enabled = enabled;
+		this.accumulation = Accumulation.valueOf(accumulation.trim().toUpperCase());
+		this.maxGapMs = maxGapMs;
+	}
+
+	public <T extends Quote> void register(MyRollupDefinition<T> rollupDefinition, String hourColName,
+			String dayColName) {
+		this.incrementalRollups.put(rollupDefinition.colType(),
+				new IncrementalRollup<>(rollupDefinition, hourColName, dayColName,
+						rollupDefinition.accumulation().orElse(this.accumulation)));
+	}
+
+	public Mono<Long> addQuote(Quote quote) {
+		IncrementalRollup<? extends Quote> incrementalRollup = this.incrementalRollups.get(quote.getClass());
+		if (!this.enabled || incrementalRollup == null) {
+			return Mono.just(0L);
+		}
+		return Flux.fromIterable(incrementalRollup.add(quote, this.maxGapMs).entrySet())
+				.filter(entry -> !entry.getValue().isEmpty())
+				.flatMap(entry -> this.storeBuckets(entry.getKey(), entry.getValue(),
+						incrementalRollup.rollupDefinition.keyFields()))
+				.reduce(0L, Long::sum);
+	}
+
+	private Mono<Long> storeBuckets(String colName, List<? extends Quote> completeBuckets, List<String> keyFields) {
+		return this.myMongoRepository.bulkUpsert(completeBuckets, keyFields, colName)
+				.map(result -> (long) result.getUpserts().size() + result.getMatchedCount()).defaultIfEmpty(0L)
+				.timeout(Duration.ofSeconds(5L)).subscribeOn(this.mongoScheduler)
+				.doOnSuccess(count -> LOG.debug("Stored {} rollup buckets in {}", count, colName))
+				.doOnError(ex -> LOG.warn(String.format("Storing %d rollup buckets in %s failed",
+						completeBuckets.size(), colName), ex))
+				.onErrorResume(ex -> Mono.just(0L));
+	}
+}
@@ -16,38 +16,38 @@
 package ch.xxx.trader.usecase.services;
 
 import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
 import java.time.Duration;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.util.Calendar;
-import java.util.Collection;
+import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import ch.xxx.trader.domain.common.MongoUtils;
 import ch.xxx.trader.domain.common.MongoUtils.TimeFrame;
+import ch.xxx.trader.domain.common.QuoteExchange;
+import ch.xxx.trader.domain.model.entity.Candle;
 import ch.xxx.trader.domain.model.entity.QuoteIb;
 import ch.xxx.trader.usecase.common.DtoUtils;
+import ch.xxx.trader.usecase.common.QuoteVersion;
 import ch.xxx.trader.usecase.mappers.ReportMapper;
-import ch.xxx.trader.usecase.services.ServiceUtils.MyTimeFrame;
+import ch.xxx.trader.usecase.services.CandleService.CandleDefinition;
+import ch.xxx.trader.usecase.services.LatestQuoteService.LatestDefinition;
+import ch.xxx.trader.usecase.services.QuoteCacheService.CacheDefinition;
+import ch.xxx.trader.usecase.services.QuoteStreamService.StreamDefinition;
+import ch.xxx.trader.usecase.services.QuoteVersionService.VersionDefinition;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyRollupDefinition;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
@@ -56,20 +56,44 @@ import reactor.core.scheduler.Schedulers;
 @Service
 public class ItbitService {
 	private static final Logger LOG = LoggerFactory.getLogger(ItbitService.class);
+	public static final String IB_COL = "quoteIb";
 	public static final String IB_HOUR_COL = "quoteIbHour";
 	public static final String IB_DAY_COL = "quoteIbDay";
+	public static final String IB_WEEK_COL = "quoteIbWeek";
+	public static final String IB_MONTH_COL = "quoteIbMonth";
+	public static final String IB_CANDLE_COL = "candleIb";
+	private static final List<Function<QuoteIb, BigDecimal>> IB_VALUES = List.of(QuoteIb::getBid,
+			QuoteIb::getBidAmt, QuoteIb::getAsk, QuoteIb::getAskAmt, QuoteIb::getLastPrice, QuoteIb::getStAmt,
+			QuoteIb::getVolume24h, QuoteIb::getVolumeToday, QuoteIb::getHigh24h, QuoteIb::getLow24h,
+			QuoteIb::getOpenToday, QuoteIb::getHighToday, QuoteIb::getLowToday, QuoteIb::getVwapToday,
+			QuoteIb::getVwap24h);
 	private final Map<String, String> currpairs = new HashMap<String, String>();
 	private final ReportGenerator reportGenerator;
 	private final MyOrderBookClient orderBookClient;
 	private final ReportMapper reportMapper;
 	private final MyMongoRepository myMongoRepository;
 	private final ServiceUtils serviceUtils;
+	private final CandleService candleService;
+	private final QuoteBucketService quoteBucketService;
+	private final QuoteArchiveService quoteArchiveService;
+	private final QuoteCacheService quoteCacheService;
+	private final LatestQuoteService latestQuoteService;
+	private final QuoteVersionService quoteVersionService;
 	private final Scheduler mongoScheduler = Schedulers.newBoundedElastic(10, 10, "mongoImport", 10);
 	private final Executor futureExecutor;
+	private final MyRollupDefinition<QuoteIb> ibRollupDefinition = new MyRollupDefinition<>("Itbit", IB_COL,
+			QuoteIb.class, Optional.of("pair"), QuoteIb::getPair,
+			List.of("bid", "bidAmt", "ask", "askAmt", "lastPrice", "stAmt", "volume24h", "volumeToday", "high24h",
+					"low24h", "openToday", "highToday", "lowToday", "vwapToday", "vwap24h"),
+			IB_VALUES, List.of("serverTimeUTC"), this::createIbQuote);
 
 	public ItbitService(ReportGenerator reportGenerator, MyOrderBookClient orderBookClient, ReportMapper reportMapper,
 			@Qualifier("futureTaskExecutor") Executor futureExecutor, MyMongoRepository myMongoRepository,
-			ServiceUtils serviceUtils) {
+			ServiceUtils serviceUtils, IncrementalRollupService incrementalRollupService, CandleService candleService,
+			QuoteBucketService quoteBucketService, QuoteArchiveService quoteArchiveService,
+			QuoteCacheService quoteCacheService,
+			LatestQuoteService latestQuoteService, QuoteVersionService quoteVersionService,
+			QuoteStreamService quoteStreamService) {
 		this.reportGenerator = reportGenerator;
 		this.orderBookClient = orderBookClient;
 		this.reportMapper = reportMapper;
@@ -78,6 +102,23 @@ public class ItbitService {
 		this.futureExecutor = futureExecutor;
 		this.currpairs.put("btcusd", "XBTUSD");
 		this.currpairs.put("btceur", "XBTEUR");
+		incrementalRollupService.register(this.ibRollupDefinition, IB_HOUR_COL, IB_DAY_COL);
+		this.candleService = candleService;
+		this.quoteBucketService = quoteBucketService;
+		this.quoteArchiveService = quoteArchiveService;
+		this.quoteCacheService = quoteCacheService;
+		quoteCacheService.register(CacheDefinition.of(this.ibRollupDefinition));
+		this.latestQuoteService = latestQuoteService;
+		latestQuoteService.register(new LatestDefinition<>(QuoteExchange.ITBIT, QuoteIb.class, QuoteIb::getPair));
+		quoteStreamService.register(new StreamDefinition<>(QuoteExchange.ITBIT, QuoteIb.class,
+				pair -> this.currpairs.getOrDefault(pair, pair), Function.identity()));
+		this.quoteVersionService = quoteVersionService;
+		quoteVersionService.register(new VersionDefinition<>(QuoteIb.class,
+				Map.of(TimeFrame.TODAY, IB_COL, TimeFrame.SEVENDAYS, IB_HOUR_COL, TimeFrame.THIRTYDAYS, IB_DAY_COL,
+						TimeFrame.NINTYDAYS, IB_DAY_COL, TimeFrame.Month6, IB_DAY_COL, TimeFrame.Year1, IB_WEEK_COL)));
+		candleService.register(new CandleDefinition<>("Itbit", IB_COL, QuoteIb.class, IB_CANDLE_COL,
+				quote -> CandleService.createTicks(quote.getPair(), quote.getCreatedAt(),
+						quote.getLastPrice(), quote.getVolumeToday())));
 	}
 
 	public Mono<String> getOrderbook(String currpair) {
@@ -85,22 +126,25 @@ public class ItbitService {
 		return this.orderBookClient.getOrderbookItbit(newCurrpair);
 	}
 
-	public Mono<QuoteIb> insertQuote(Mono<QuoteIb> quote) {
-		return this.myMongoRepository.insert(quote);
-	}
-
 	public Mono<QuoteIb> currentQuote(String pair) {
 		final String newPair = this.currpairs.get(pair);
 		Query query = MongoUtils.buildCurrentQuery(Optional.of(newPair));
-		return this.myMongoRepository.findOne(query, QuoteIb.class);
+		return this.latestQuoteService.findLatest(QuoteIb.class, newPair)
+				.switchIfEmpty(Mono.defer(() -> this.quoteBucketService.findOne(query, QuoteIb.class, IB_COL)));
+	}
+
+	public Mono<QuoteVersion> tfQuotesVersion(String timeFrame, String pair) {
+		return Mono.justOrEmpty(this.currpairs.get(pair)).flatMap(
+				newPair -> this.quoteVersionService.findVersion(QuoteIb.class, timeFrame, Optional.of(newPair)));
 	}
 
 	public Flux<QuoteIb> tfQuotes(String timeFrame, String pair) {
 		Flux<QuoteIb> result = Flux.empty();
 		final String newPair = this.currpairs.get(pair);
 		if (MongoUtils.TimeFrame.TODAY.getValue().equals(timeFrame)) {
-			Query query = MongoUtils.buildTodayQuery(Optional.of(newPair));
-			result = this.myMongoRepository.find(query, QuoteIb.class).filter(q -> filterEvenMinutes(q));
+			Query query = MongoUtils.buildTodayQuery(Optional.of(newPair), 2);
+			result = this.quoteCacheService.findToday(QuoteIb.class, newPair, 2)
+					.orElseGet(() -> this.quoteBucketService.find(query, QuoteIb.class, IB_COL));
 		} else if (MongoUtils.TimeFrame.SEVENDAYS.getValue().equals(timeFrame)) {
 			Query query = MongoUtils.build7DayQuery(Optional.of(newPair));
 			result = this.myMongoRepository.find(query, QuoteIb.class, IB_HOUR_COL);
@@ -115,19 +159,25 @@ public class ItbitService {
 			result = this.myMongoRepository.find(query, QuoteIb.class, IB_DAY_COL);
 		} else if (MongoUtils.TimeFrame.Year1.getValue().equals(timeFrame)) {
 			Query query = MongoUtils.buildTimeFrameQuery(Optional.of(newPair), TimeFrame.Year1);
-			result = this.myMongoRepository.find(query, QuoteIb.class, IB_DAY_COL);
+			result = this.myMongoRepository.find(query, QuoteIb.class, IB_WEEK_COL);
 		}
 
 		return result;
 	}
 
+	public Flux<Candle> candles(String pair, String resolution, Optional<String> timeFrame) {
+		return Optional.ofNullable(this.currpairs.get(pair))
+				.map(newPair -> this.candleService.findCandles(IB_CANDLE_COL, newPair, resolution, timeFrame))
+				.orElse(Flux.empty());
+	}
+
 	public Mono<byte[]> pdfReport(String timeFrame, String pair) {
 		final String newPair = this.currpairs.get(pair);
 		Mono<byte[]> result = Mono.empty();
 		if (MongoUtils.TimeFrame.TODAY.getValue().equals(timeFrame)) {
-			Query query = MongoUtils.buildTodayQuery(Optional.of(newPair));
-			result = this.reportGenerator.generateReport(this.myMongoRepository.find(query, QuoteIb.class)
-					.filter(this::filter10Minutes).map(this.reportMapper::convert));
+			Query query = MongoUtils.buildTodayQuery(Optional.of(newPair), 10);
+			result = this.reportGenerator.generateReport(this.quoteArchiveService.find(query, QuoteIb.class, IB_COL)
+					.map(this.reportMapper::convert));
 		} else if (MongoUtils.TimeFrame.SEVENDAYS.getValue().equals(timeFrame)) {
 			Query query = MongoUtils.build7DayQuery(Optional.of(newPair));
 			result = this.reportGenerator.generateReport(
@@ -147,82 +197,21 @@ public class ItbitService {
 		} else if (MongoUtils.TimeFrame.Year1.getValue().equals(timeFrame)) {
 			Query query = MongoUtils.buildTimeFrameQuery(Optional.of(newPair), TimeFrame.Year1);
 			result = this.reportGenerator.generateReport(
-					this.myMongoRepository.find(query, QuoteIb.class, IB_DAY_COL).map(this.reportMapper::convert));
+					this.myMongoRepository.find(query, QuoteIb.class, IB_WEEK_COL).map(this.reportMapper::convert));
 		}
 
 		return result;
 	}
 
 	private void createIbHourlyAvg() {
-		LocalDateTime startAll = LocalDateTime.now();
-		MyTimeFrame timeFrame = this.serviceUtils.createTimeFrame(IB_HOUR_COL, QuoteIb.class, true);
-		SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy");
-		Calendar now = Calendar.getInstance();
-		now.setTime(Date.from(LocalDate.now().atStartOfDay().atZone(ZoneId.systemDefault()).toInstant()));
-		while (timeFrame.end().before(now)) {
-			Date start = new Date();
-			Query query = new Query();
-			query.addCriteria(
-					Criteria.where(DtoUtils.CREATEDAT).gt(timeFrame.begin().getTime()).lt(timeFrame.end().getTime()));
-			// Itbit
-			Mono<Collection<QuoteIb>> collectIb = this.myMongoRepository.find(query, QuoteIb.class)
-					.timeout(Duration.ofSeconds(5L)).doOnError(ex -> LOG.warn("Itbit prepare hour data failed", ex))
-					.onErrorResume(ex -> Mono.empty()).subscribeOn(this.mongoScheduler)
-					.collectMultimap(quote -> quote.getPair(), quote -> quote)
-					.map(multimap -> multimap.keySet().stream()
-							.map(key -> makeIbQuoteHour(key, multimap, timeFrame.begin(), timeFrame.end()))
-							.collect(Collectors.toList()))
-					.flatMap(myList -> Mono
-							.just(myList.stream().flatMap(Collection::stream).collect(Collectors.toList())));
-			collectIb.filter(myColl -> !myColl.isEmpty())
-					.flatMap(myColl -> this.myMongoRepository.insertAll(Mono.just(myColl), IB_HOUR_COL)
-							.timeout(Duration.ofSeconds(5L))
-							.doOnError(ex -> LOG.warn("Itbit prepare hour data failed", ex))
-							.onErrorResume(ex -> Mono.empty()).subscribeOn(this.mongoScheduler).collectList())
-					.subscribeOn(this.mongoScheduler).block();
-
-			timeFrame.begin().add(Calendar.DAY_OF_YEAR, 1);
-			timeFrame.end().add(Calendar.DAY_OF_YEAR, 1);
-			LOG.info("Prepared Itbit Hour Data for: " + sdf.format(timeFrame.begin().getTime()) + " Time: "
-					+ (new Date().getTime() - start.getTime()) + "ms");
-		}
-		LOG.info(this.serviceUtils.createAvgLogStatement(startAll, "Prepared Itbit Hourly Data Time:"));
+		this.serviceUtils.rollupQuotes(this.ibRollupDefinition, IB_HOUR_COL, true);
 	}
 
 	private void createIbDailyAvg() {
-		LocalDateTime startAll = LocalDateTime.now();
-		MyTimeFrame timeFrame = this.serviceUtils.createTimeFrame(IB_DAY_COL, QuoteIb.class, false);
-		SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy");
-		Calendar now = Calendar.getInstance();
-		now.setTime(Date.from(LocalDate.now().atStartOfDay().atZone(ZoneId.systemDefault()).toInstant()));
-		while (timeFrame.end().before(now)) {
-			Date start = new Date();
-			Query query = new Query();
-			query.addCriteria(
-					Criteria.where(DtoUtils.CREATEDAT).gt(timeFrame.begin().getTime()).lt(timeFrame.end().getTime()));
-			// Itbit
-			Mono<Collection<QuoteIb>> collectIb = this.myMongoRepository.find(query, QuoteIb.class)
-					.timeout(Duration.ofSeconds(5L)).doOnError(ex -> LOG.warn("Itbit prepare day data failed", ex))
-					.onErrorResume(ex -> Mono.empty()).subscribeOn(this.mongoScheduler)
-					.collectMultimap(quote -> quote.getPair(), quote -> quote)
-					.map(multimap -> multimap.keySet().stream()
-							.map(key -> makeIbQuoteDay(key, multimap, timeFrame.begin(), timeFrame.end()))
-							.collect(Collectors.toList()))
-					.flatMap(myList -> Mono
-							.just(myList.stream().flatMap(Collection::stream).collect(Collectors.toList())));
-			collectIb.filter(myColl -> !myColl.isEmpty())
-					.flatMap(myColl -> this.myMongoRepository.insertAll(Mono.just(myColl), IB_DAY_COL)
-							.timeout(Duration.ofSeconds(5L))
-							.doOnError(ex -> LOG.warn("Itbit prepare day data failed", ex))
-							.onErrorResume(ex -> Mono.empty()).subscribeOn(this.mongoScheduler).collectList())
-					.block();
-
-			timeFrame.begin().add(Calendar.DAY_OF_YEAR, 1);
-			timeFrame.end().add(Calendar.DAY_OF_YEAR, 1);
-			LOG.info("Prepared Itbit Day Data for: " + sdf.format(timeFrame.begin().getTime()) + " Time: "
-					+ (new Date().getTime() - start.getTime()) + "ms");
-		}
-		LOG.info(this.serviceUtils.createAvgLogStatement(startAll, "Prepared Itbit Daily Data Time:"));
+		this.serviceUtils.rollupBuckets(this.ibRollupDefinition, IB_HOUR_COL, IB_DAY_COL, ChronoUnit.DAYS);
+		this.serviceUtils.rollupBuckets(this.ibRollupDefinition, IB_DAY_COL, IB_WEEK_COL, ChronoUnit.WEEKS);
+		this.serviceUtils.rollupBuckets(this.ibRollupDefinition, IB_DAY_COL, IB_MONTH_COL,
+				ChronoUnit.MONTHS);
 	}
 
 	public Mono<String> createIbAvg() {
@@ -239,91 +228,19 @@ public class ItbitService {
 
 	private String createHourDayAvg() {
 		LOG.info("createHourDayAvg()");
-		CompletableFuture<String> future5 = CompletableFuture.supplyAsync(() -> {
+		CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> {
 			this.createIbHourlyAvg();
-			return "createIbHourlyAvg() Done.";
-		}, CompletableFuture.delayedExecutor(10, TimeUnit.SECONDS, this.futureExecutor));
-		CompletableFuture<String> future6 = CompletableFuture.supplyAsync(() -> {
 			this.createIbDailyAvg();
-			return "createIbDailyAvg() Done.";
+			return "createIbHourlyAvg() createIbDailyAvg() Done.";
 		}, CompletableFuture.delayedExecutor(10, TimeUnit.SECONDS, this.futureExecutor));
-		String combined = Stream.of(future5, future6).map(CompletableFuture::join).collect(Collectors.joining(" "));
-		LOG.info(combined);
+		LOG.info(future.join());
 		return "done";
 	}
 
-	private boolean filterEvenMinutes(QuoteIb quote) {
-		return MongoUtils.filterEvenMinutes(quote.getCreatedAt());
-	}
-
-	private boolean filter10Minutes(QuoteIb quote) {
-		return MongoUtils.filter10Minutes(quote.getCreatedAt());
-	}
-
-	private Collection<QuoteIb> makeIbQuoteHour(String key, Map<String, Collection<QuoteIb>> multimap, Calendar begin,
-			Calendar end) {
-		List<Calendar> hours = this.serviceUtils.createDayHours(begin);
-		List<QuoteIb> hourQuotes = new LinkedList<QuoteIb>();
-		for (int i = 0; i < 24; i++) {
-			QuoteIb quoteIb = new QuoteIb(key, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
-					BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
-					BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
-					BigDecimal.ZERO, new Date());
-			quoteIb.setCreatedAt(hours.get(i).getTime());
-			final int x = i;
-			long count = multimap.get(key).stream().filter(quote -> {
-				return quote.getCreatedAt().after(hours.get(x).getTime())
-						&& quote.getCreatedAt().before(hours.get(x + 1).getTime());
-			}).count();
-			if (count > 2) {
-				QuoteIb hourQuote = multimap.get(key).stream().filter(quote -> {
-					return quote.getCreatedAt().after(hours.get(x).getTime())
-							&& quote.getCreatedAt().before(hours.get(x + 1).getTime());
-				}).reduce(quoteIb, (q1, q2) -> avgIbQuote(q1, q2, count));
-				// hourQuote.setPair(key);
-				hourQuotes.add(hourQuote);
-			}
-		}
-		return hourQuotes;
-	}
-
-	private Collection<QuoteIb> makeIbQuoteDay(String key, Map<String, Collection<QuoteIb>> multimap, Calendar begin,
-			Calendar end) {
-		List<QuoteIb> hourQuotes = new LinkedList<QuoteIb>();
-		QuoteIb quoteIb = new QuoteIb(key, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
-				BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
-				BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, new Date());
-		quoteIb.setCreatedAt(begin.getTime());
-		long count = multimap.get(key).stream().filter(quote -> {
-			return quote.getCreatedAt().after(begin.getTime()) && quote.getCreatedAt().before(end.getTime());
-		}).count();
-		if (count > 2) {
-			QuoteIb hourQuote = multimap.get(key).stream().filter(quote -> {
-				return quote.getCreatedAt().after(begin.getTime()) && quote.getCreatedAt().before(end.getTime());
-			}).reduce(quoteIb, (q1, q2) -> avgIbQuote(q1, q2, count));
-			// hourQuote.setPair(key);
-			hourQuotes.add(hourQuote);
-		}
-		return hourQuotes;
-	}
-
-	private QuoteIb avgIbQuote(QuoteIb q1, QuoteIb q2, long count) {
-		QuoteIb myQuote = new QuoteIb(q1.getPair(), this.serviceUtils.avgHourValue(q1.getBid(), q2.getBid(), count),
-				this.serviceUtils.avgHourValue(q1.getBidAmt(), q2.getBidAmt(), count),
-				this.serviceUtils.avgHourValue(q1.getAsk(), q2.getAsk(), count),
-				this.serviceUtils.avgHourValue(q1.getAskAmt(), q2.getAskAmt(), count),
-				this.serviceUtils.avgHourValue(q1.getLastPrice(), q2.getLastPrice(), count),
-				this.serviceUtils.avgHourValue(q1.getStAmt(), q2.getStAmt(), count),
-				this.serviceUtils.avgHourValue(q1.getVolume24h(), q2.getVolume24h(), count),
-				this.serviceUtils.avgHourValue(q1.getVolumeToday(), q2.getVolumeToday(), count),
-				this.serviceUtils.avgHourValue(q1.getHigh24h(), q2.getHigh24h(), count),
-				this.serviceUtils.avgHourValue(q1.getLow24h(), q2.getLow24h(), count),
-				this.serviceUtils.avgHourValue(q1.getOpenToday(), q2.getOpenToday(), count),
-				this.serviceUtils.avgHourValue(q1.getHighToday(), q2.getHighToday(), count),
-				this.serviceUtils.avgHourValue(q1.getLowToday(), q2.getLowToday(), count),
-				this.serviceUtils.avgHourValue(q1.getVwapToday(), q2.getVwapToday(), count),
-				this.serviceUtils.avgHourValue(q1.getVwap24h(), q2.getVwap24h(), count), q1.getServerTimeUTC());
-		myQuote.setCreatedAt(q1.getCreatedAt());
-		return myQuote;
+	private QuoteIb createIbQuote(String pair, Date bucketBegin, BigDecimal[] avgs) {
+		QuoteIb quoteIb = new QuoteIb(pair, avgs[0], avgs[1], avgs[2], avgs[3], avgs[4], avgs[5], avgs[6], avgs[7],
+				avgs[8], avgs[9], avgs[10], avgs[11], avgs[12], avgs[13], avgs[14], new Date());
+		quoteIb.setCreatedAt(bucketBegin);
+		return quoteIb;
 	}
 }
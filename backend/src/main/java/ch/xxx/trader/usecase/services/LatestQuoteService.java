@@ -0,0 +1,204 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.QuoteExchange;
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Holds the latest ingested quote per exchange and pair in memory and in the
+ * latestQuote collection, one document per exchange and pair. Instances that
+ * do not ingest reload the collection once per refresh interval. Every newer
+ * quote is multicast to the stream subscribers without waiting for them.
+ */
+@Service
+public class LatestQuoteService {
+	private static final Logger LOG = LoggerFactory.getLogger(LatestQuoteService.class);
+	public static final String LATEST_QUOTE_COL = "latestQuote";
+	private static final String ID = "_id";
+	private static final String EXCHANGE = "exchange";
+	private static final String PAIR = "pair";
+	private static final String QUOTE = "quote";
+	private final MyMongoRepository myMongoRepository;
+	private final long refreshIntervalMs;
+	private final Map<Class<? extends Quote>, LatestDefinition<? extends Quote>> latestDefinitions =
+			new ConcurrentHashMap<>();
+	private final Map<String, Quote> latestQuotes = new ConcurrentHashMap<>();
+	private final AtomicBoolean refreshing = new AtomicBoolean(false);
+	private volatile long refreshedAt = 0L;
+	private final Sinks.Many<LatestQuote> latestSink = Sinks.many().multicast().directBestEffort();
+	private final Scheduler mongoScheduler = Schedulers.newBoundedElastic(4, 100, "mongoLatest", 10);
+
+	public record LatestDefinition<T extends Quote>(QuoteExchange exchange, Class<T> colType,
+			Function<T, String> pairFunction, UnaryOperator<T> detachFunction) {
+		public LatestDefinition(QuoteExchange exchange, Class<T> colType, Function<T, String> pairFunction) {
+			this(exchange, colType, pairFunction, UnaryOperator.identity());
+		}
+
+		private String createId(String pair) {
+			return this.exchange.getValue() + "/" + pair;
+		}
+	}
+
+	public record LatestQuote(QuoteExchange exchange, String pair, Quote quote) {
+	}
+
+	public LatestQuoteService(MyMongoRepository myMongoRepository,
+			@Value("${quote.latest.refresh-interval-ms:10000}") long refreshIntervalMs) {
+		this.myMongoRepository = myMongoRepository;
+		this.refreshIntervalMs = refreshIntervalMs;
+	}
+
+	public <T extends Quote> void register(LatestDefinition<T> latestDefinition) {
+		this.latestDefinitions.put(latestDefinition.colType(), latestDefinition);
+	}
+
+	public Mono<Quote> publish(Quote quote) {
+		LatestDefinition<? extends Quote> latestDefinition = this.latestDefinitions.get(quote.getClass());
+		return latestDefinition == null ? Mono.just(quote)
+				: this.publish(latestDefinition, quote).thenReturn(quote);
+	}
+
+	private <T extends Quote> Mono<Boolean> publish(LatestDefinition<T> latestDefinition, Quote quote) {
+		T myQuote = latestDefinition.detachFunction().apply(latestDefinition.colType().cast(quote));
+		String pair = latestDefinition.pairFunction().apply(myQuote);
+		String id = latestDefinition.createId(pair);
+		if (!this.update(id, myQuote)) {
+			return Mono.just(Boolean.FALSE);
+		}
+		Update update = new Update().set(EXCHANGE, latestDefinition.exchange().getValue()).set(PAIR, pair)
+				.set(DtoUtils.CREATEDAT, myQuote.getCreatedAt()).set(QUOTE, myQuote);
+		// a newer stored quote does not match, the upsert then fails on the existing id
+		Query query = new Query(Criteria.where(ID).is(id).and(DtoUtils.CREATEDAT).lt(myQuote.getCreatedAt()));
+		return this.myMongoRepository.upsert(query, update, LATEST_QUOTE_COL).timeout(Duration.ofSeconds(5L))
+				.thenReturn(Boolean.TRUE).onErrorResume(DuplicateKeyException.class, ex -> Mono.just(Boolean.FALSE))
+				.doOnError(ex -> LOG.warn(String.format("Storing the latest quote of %s failed", id), ex))
+				.onErrorReturn(Boolean.FALSE);
+	}
+
+	public <T extends Quote> Mono<T> findLatest(Class<T> colType, String pair) {
+		@SuppressWarnings("unchecked")
+		LatestDefinition<T> latestDefinition = (LatestDefinition<T>) this.latestDefinitions.get(colType);
+		if (latestDefinition == null) {
+			return Mono.empty();
+		}
+		this.refreshStale();
+		String id = latestDefinition.createId(pair);
+		return Mono.justOrEmpty(this.latestQuotes.get(id)).map(colType::cast)
+				.switchIfEmpty(Mono.defer(() -> this.myMongoRepository
+						.findOne(new Query(Criteria.where(ID).is(id)), Document.class, LATEST_QUOTE_COL)
+						.flatMap(document -> Mono.justOrEmpty(this.read(document)))
+						.map(quote -> this.latestQuotes.merge(id, quote, LatestQuoteService::newer))
+						.map(colType::cast).timeout(Duration.ofSeconds(5L))
+						.doOnError(ex -> LOG.warn(String.format("Reading the latest quote of %s failed", id), ex))
+						.onErrorResume(ex -> Mono.empty())));
+	}
+
+	public List<LatestQuote> findAllLatest() {
+		return this.latestQuotes.values().stream().flatMap(quote -> this.createLatestQuote(quote).stream()).toList();
+	}
+
+	public Flux<LatestQuote> streamLatest() {
+		return this.latestSink.asFlux();
+	}
+
+	public void refreshStale() {
+		if (System.currentTimeMillis() - this.refreshedAt >= this.refreshIntervalMs) {
+			this.refresh().subscribe();
+		}
+	}
+
+	public Mono<Long> refresh() {
+		return Mono.defer(() -> {
+			if (!this.refreshing.compareAndSet(false, true)) {
+				return Mono.just(0L);
+			}
+			long refreshStart = System.currentTimeMillis();
+			return this.myMongoRepository.find(new Query(), Document.class, LATEST_QUOTE_COL)
+					.flatMap(document -> Mono.justOrEmpty(this.read(document))
+							.doOnNext(quote -> this.update(document.getString(ID), quote)))
+					.count().timeout(Duration.ofSeconds(10L)).subscribeOn(this.mongoScheduler)
+					.doOnSuccess(count -> this.refreshedAt = refreshStart)
+					.doOnError(ex -> LOG.warn("Loading the latest quotes failed", ex)).onErrorReturn(0L)
+					.doFinally(signal -> this.refreshing.set(false));
+		});
+	}
+
+	private Optional<Quote> read(Document document) {
+		return this.latestDefinitions.values().stream()
+				.filter(latestDefinition -> latestDefinition.exchange().getValue()
+						.equals(document.getString(EXCHANGE)))
+				.findFirst().map(latestDefinition -> this.myMongoRepository
+						.convert(document.get(QUOTE, Document.class), latestDefinition.colType()));
+	}
+
+	private boolean update(String id, Quote quote) {
+		boolean[] updated = new boolean[1];
+		this.latestQuotes.compute(id, (myId, oldQuote) -> {
+			updated[0] = oldQuote == null || quote.getCreatedAt().after(oldQuote.getCreatedAt());
+			return updated[0] ? quote : oldQuote;
+		});
+		if (updated[0]) {
+			this.createLatestQuote(quote).ifPresent(this::emit);
+		}
+		return updated[0];
+	}
+
+	private synchronized void emit(LatestQuote latestQuote) {
+		// subscribers without demand miss the quote, the others are not held up
+		this.latestSink.tryEmitNext(latestQuote);
+	}
+
+	private Optional<LatestQuote> createLatestQuote(Quote quote) {
+		return Optional.ofNullable(this.latestDefinitions.get(quote.getClass()))
+				.map(latestDefinition -> createLatestQuote(latestDefinition, quote));
+	}
+
+	private static <T extends Quote> LatestQuote createLatestQuote(LatestDefinition<T> latestDefinition,
+			Quote quote) {
+		T myQuote = latestDefinition.colType().cast(quote);
+		return new LatestQuote(latestDefinition.exchange(), latestDefinition.pairFunction().apply(myQuote), myQuote);
+	}
+
+	private static Quote newer(Quote oldQuote, Quote newQuote) {
+		return newQuote.getCreatedAt().before(oldQuote.getCreatedAt()) ? oldQuote : newQuote;
+	}
+}
@@ -0,0 +1,192 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.MongoUtils;
+import ch.xxx.trader.domain.common.MongoUtils.TimeFrame;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Declares the indexes the hot queries need, creates them and checks the
+ * query plans with explain(). A collection scan is logged and, if configured,
+ * refuses readiness.
+ */
+@Service
+public class MongoIndexService {
+	private static final Logger LOG = LoggerFactory.getLogger(MongoIndexService.class);
+	private static final String PAIR = "pair";
+	private static final String COLLSCAN = "COLLSCAN";
+	private static final String USER_COL = "myUser";
+	private static final String REVOKED_TOKEN_COL = "revokedToken";
+	private final MyMongoRepository myMongoRepository;
+	private final ApplicationEventPublisher applicationEventPublisher;
+	private final boolean failReadiness;
+	private final Set<String> collectionScans = ConcurrentHashMap.newKeySet();
+
+	public record IndexDefinition(String collectionName, List<String> fields, Query probe, boolean unique) {
+		public IndexDefinition(String collectionName, List<String> fields, Query probe) {
+			this(collectionName, fields, probe, false);
+		}
+	}
+
+	public MongoIndexService(MyMongoRepository myMongoRepository,
+			ApplicationEventPublisher applicationEventPublisher,
+			@Value("${mongo.index.collscan.fail-readiness:false}") boolean failReadiness) {
+		this.myMongoRepository = myMongoRepository;
+		this.applicationEventPublisher = applicationEventPublisher;
+		this.failReadiness = failReadiness;
+	}
+
+	public List<IndexDefinition> createIndexDefinitions() {
+		// the rollup collections are keyed uniquely by their buckets and probed with the time frame they serve
+		Map<String, TimeFrame> rollupTimeFrames = new HashMap<>();
+		Stream.of(BitstampService.BS_HOUR_COL, BitfinexService.BF_HOUR_COL, ItbitService.IB_HOUR_COL,
+				CoinbaseService.CB_HOUR_COL).forEach(colName -> rollupTimeFrames.put(colName, TimeFrame.SEVENDAYS));
+		Stream.of(BitstampService.BS_DAY_COL, BitfinexService.BF_DAY_COL, ItbitService.IB_DAY_COL,
+				CoinbaseService.CB_DAY_COL).forEach(colName -> rollupTimeFrames.put(colName, TimeFrame.THIRTYDAYS));
+		Stream.of(BitstampService.BS_WEEK_COL, BitfinexService.BF_WEEK_COL, ItbitService.IB_WEEK_COL,
+				CoinbaseService.CB_WEEK_COL).forEach(colName -> rollupTimeFrames.put(colName, TimeFrame.Year1));
+		Stream.of(BitstampService.BS_MONTH_COL, BitfinexService.BF_MONTH_COL, ItbitService.IB_MONTH_COL,
+				CoinbaseService.CB_MONTH_COL).forEach(colName -> rollupTimeFrames.put(colName, TimeFrame.Year5));
+		Set<String> rollupColNames = rollupTimeFrames.keySet();
+		Stream<IndexDefinition> quoteIndexes = Stream
+				.of(BitstampService.BS_COL, BitstampService.BS_HOUR_COL, BitstampService.BS_DAY_COL,
+						BitstampService.BS_WEEK_COL, BitstampService.BS_MONTH_COL, BitfinexService.BF_COL,
+						BitfinexService.BF_HOUR_COL, BitfinexService.BF_DAY_COL, BitfinexService.BF_WEEK_COL,
+						BitfinexService.BF_MONTH_COL, ItbitService.IB_COL, ItbitService.IB_HOUR_COL,
+						ItbitService.IB_DAY_COL, ItbitService.IB_WEEK_COL, ItbitService.IB_MONTH_COL)
+				.map(colName -> new IndexDefinition(colName, List.of(PAIR, DtoUtils.CREATEDAT),
+						this.createProbe(Optional.of("btcusd"), rollupTimeFrames.get(colName)),
+						rollupColNames.contains(colName)));
+		Stream<IndexDefinition> cbIndexes = Stream
+				.of(CoinbaseService.CB_COL, CoinbaseService.CB_HOUR_COL, CoinbaseService.CB_DAY_COL,
+						CoinbaseService.CB_WEEK_COL, CoinbaseService.CB_MONTH_COL)
+				.map(colName -> new IndexDefinition(colName, List.of(DtoUtils.CREATEDAT),
+						this.createProbe(Optional.empty(), rollupTimeFrames.get(colName)),
+						rollupColNames.contains(colName)));
+		// the downsampled today queries match the stored minute of the raw quotes
+		Stream<IndexDefinition> minuteIndexes = Stream.of(
+				new IndexDefinition(BitstampService.BS_COL, List.of(PAIR, MongoUtils.MINUTE, DtoUtils.CREATEDAT),
+						MongoUtils.buildTodayQuery(Optional.of("btcusd"), 2)),
+				new IndexDefinition(BitfinexService.BF_COL, List.of(PAIR, MongoUtils.MINUTE, DtoUtils.CREATEDAT),
+						MongoUtils.buildTodayQuery(Optional.of("btcusd"), 2)),
+				new IndexDefinition(ItbitService.IB_COL, List.of(PAIR, MongoUtils.MINUTE, DtoUtils.CREATEDAT),
+						MongoUtils.buildTodayQuery(Optional.of("btcusd"), 2)),
+				new IndexDefinition(CoinbaseService.CB_COL, List.of(MongoUtils.MINUTE, DtoUtils.CREATEDAT),
+						MongoUtils.buildTodayQuery(Optional.empty(), 2)));
+		// the newest written rollup versions the time frame responses
+		Stream<IndexDefinition> updatedIndexes = rollupColNames.stream().sorted().map(colName -> {
+			boolean cbCol = colName.startsWith(CoinbaseService.CB_COL);
+			Query probe = new Query().limit(1).with(Sort.by(DtoUtils.UPDATEDAT).descending());
+			if (!cbCol) {
+				probe.addCriteria(Criteria.where(PAIR).is("btcusd"));
+			}
+			return new IndexDefinition(colName,
+					cbCol ? List.of(DtoUtils.UPDATEDAT) : List.of(PAIR, DtoUtils.UPDATEDAT), probe);
+		});
+		Stream<IndexDefinition> userIndexes = Stream.of(
+				new IndexDefinition(USER_COL, List.of("userId"), new Query(Criteria.where("userId").is(""))),
+				new IndexDefinition(USER_COL, List.of("salt"), new Query(Criteria.where("salt").is(""))),
+				new IndexDefinition(REVOKED_TOKEN_COL, List.of("uuid"), new Query(Criteria.where("uuid").is(""))));
+		return Stream.of(quoteIndexes, cbIndexes, minuteIndexes, updatedIndexes, userIndexes)
+				.flatMap(myStream -> myStream).toList();
+	}
+
+	public Mono<Set<String>> ensureIndexes() {
+		List<IndexDefinition> indexDefinitions = this.createIndexDefinitions();
+		return Flux.fromIterable(indexDefinitions)
+				.concatMap(indexDefinition -> (indexDefinition.unique()
+						? this.myMongoRepository.ensureUniqueIndex(indexDefinition.collectionName(),
+								indexDefinition.fields())
+						: this.myMongoRepository.ensureIndex(indexDefinition.collectionName(),
+								indexDefinition.fields()))
+						.timeout(Duration.ofMinutes(5L))
+						.doOnError(ex -> LOG.warn(String.format("ensureIndex(%s, %s) failed",
+								indexDefinition.collectionName(), indexDefinition.fields()), ex))
+						.onErrorResume(ex -> Mono.empty()))
+				.thenMany(Flux.fromIterable(indexDefinitions)).concatMap(this::verifyIndex)
+				.collectList().map(results -> {
+					if (!this.collectionScans.isEmpty()) {
+						LOG.warn(String.format("Hot queries scan the collections: %s", this.collectionScans));
+						if (this.failReadiness) {
+							AvailabilityChangeEvent.publish(this.applicationEventPublisher, this,
+									ReadinessState.REFUSING_TRAFFIC);
+						}
+					}
+					return Set.copyOf(this.collectionScans);
+				});
+	}
+
+	public Set<String> getCollectionScans() {
+		return Set.copyOf(this.collectionScans);
+	}
+
+	private Query createProbe(Optional<String> pair, TimeFrame timeFrame) {
+		return timeFrame == null ? MongoUtils.buildTodayQuery(pair, 2) : MongoUtils.buildTimeFrameQuery(pair, timeFrame);
+	}
+
+	private Mono<Boolean> verifyIndex(IndexDefinition indexDefinition) {
+		return this.myMongoRepository.explain(indexDefinition.probe(), indexDefinition.collectionName())
+				.timeout(Duration.ofSeconds(30L)).map(explain -> {
+					Object winningPlan = Optional.ofNullable(explain.get("queryPlanner", Document.class))
+							.map(queryPlanner -> queryPlanner.get("winningPlan")).orElse(explain);
+					boolean collectionScan = containsStage(winningPlan, COLLSCAN);
+					String key = String.format("%s%s", indexDefinition.collectionName(), indexDefinition.fields());
+					if (collectionScan) {
+						this.collectionScans.add(key);
+					} else {
+						this.collectionScans.remove(key);
+					}
+					return collectionScan;
+				}).doOnError(ex -> LOG.warn(String.format("explain() on %s failed", indexDefinition.collectionName()),
+						ex))
+				.onErrorResume(ex -> Mono.empty());
+	}
+
+	static boolean containsStage(Object plan, String stage) {
+		boolean result = false;
+		if (plan instanceof Document document) {
+			result = stage.equals(document.get("stage"))
+					|| document.values().stream().anyMatch(value -> containsStage(value, stage));
+		} else if (plan instanceof List<?> list) {
+			result = list.stream().anyMatch(value -> containsStage(value, stage));
+		}
+		return result;
+	}
+}
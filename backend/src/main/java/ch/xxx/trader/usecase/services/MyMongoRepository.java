@@ -16,11 +16,16 @@
 package ch.xxx.trader.usecase.services;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.bson.Document;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
 import com.mongodb.reactivestreams.client.MongoCollection;
 
 import reactor.core.publisher.Flux;
@@ -36,6 +41,8 @@ public interface MyMongoRepository {
 	
 	<T> Flux<T> find(Query query, Class<T> entityClass, String collectionName);
 	
+	<T> Flux<T> findDistinct(Query query, String field, String collectionName, Class<T> resultClass);
+	
 	<T> Flux<T> insertAll(Mono<? extends Collection<? extends T>> batchToSave, String collectionName);
 	
 	<T> Mono<T> insert(Mono<T> quote);
@@ -46,7 +53,28 @@ public interface MyMongoRepository {
 	
 	<T> Mono<T> save(T objectToSave);
 	
+	<T> Mono<T> save(T objectToSave, String collectionName);
+	
 	<T> Mono<DeleteResult> remove(Mono<T> quote);
 	
+	Mono<UpdateResult> upsert(Query query, Update update, String collectionName);
+	
+	Mono<DeleteResult> remove(Query query, String collectionName);
+	
+	<T> T convert(Document document, Class<T> entityClass);
+	
+	<T> Flux<T> convert(Flux<Document> documents, Class<T> entityClass, String collectionName);
+	
+	<T> Mono<BulkWriteResult> bulkUpsert(Collection<? extends T> objectsToSave, List<String> keyFields,
+			String collectionName);
+	
 	Mono<String> ensureIndex(String collectionName, String propertyName);
+	
+	Mono<String> ensureIndex(String collectionName, List<String> propertyNames);
+	
+	Mono<Document> explain(Query query, String collectionName);
+	
+	Mono<String> ensureUniqueIndex(String collectionName, List<String> propertyNames);
+	
+	<O> Flux<O> aggregate(Aggregation aggregation, String collectionName, Class<O> outputType);
 }
@@ -0,0 +1,29 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import ch.xxx.trader.domain.model.entity.QuoteBf;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import ch.xxx.trader.domain.model.entity.QuoteIb;
+import reactor.core.publisher.Mono;
+
+public interface MyQuoteClient {
+	Mono<QuoteBs> getQuoteBitstamp(String currpair);
+	Mono<QuoteBf> getQuoteBitfinex(String currpair);
+	Mono<QuoteIb> getQuoteItbit(String currpair);
+	Mono<QuoteCbRates> getQuoteCoinbase(String currency);
+}
@@ -0,0 +1,66 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.QuoteExchange;
+import ch.xxx.trader.domain.model.dto.QuotePair;
+
+@Service
+public class PairRegistry {
+	private static final Logger LOG = LoggerFactory.getLogger(PairRegistry.class);
+	private final List<QuotePair> quotePairs;
+
+	public PairRegistry(@Value("${ingestion.pairs.bitstamp:}") String[] bitstampPairs,
+			@Value("${ingestion.pairs.bitfinex:}") String[] bitfinexPairs,
+			@Value("${ingestion.pairs.itbit:}") String[] itbitPairs,
+			@Value("${ingestion.pairs.coinbase:}") String[] coinbasePairs) {
+		this.quotePairs = Stream
+				.of(this.toQuotePairs(QuoteExchange.BITSTAMP, bitstampPairs),
+						this.toQuotePairs(QuoteExchange.BITFINEX, bitfinexPairs),
+						this.toQuotePairs(QuoteExchange.ITBIT, itbitPairs),
+						this.toQuotePairs(QuoteExchange.COINBASE, coinbasePairs))
+				.flatMap(List::stream).toList();
+		LOG.info("Registered quote pairs: {}", this.quotePairs);
+	}
+
+	private List<QuotePair> toQuotePairs(QuoteExchange exchange, String[] pairs) {
+		return Arrays.stream(pairs).map(String::trim).filter(pair -> !pair.isBlank()).distinct()
+				.map(pair -> new QuotePair(exchange, pair)).toList();
+	}
+
+	public List<QuotePair> getQuotePairs() {
+		return this.quotePairs;
+	}
+
+	public List<QuotePair> getQuotePairs(QuoteExchange exchange) {
+		return this.quotePairs.stream().filter(quotePair -> quotePair.exchange().equals(exchange)).toList();
+	}
+
+	public Map<QuoteExchange, List<QuotePair>> getQuotePairsByExchange() {
+		return this.quotePairs.stream().collect(Collectors.groupingBy(QuotePair::exchange));
+	}
+}
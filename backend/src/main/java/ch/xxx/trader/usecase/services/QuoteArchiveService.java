@@ -0,0 +1,209 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.client.result.DeleteResult;
+
+import ch.xxx.trader.usecase.common.DtoUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Moves the raw quotes older than the retention days into the archive once
+ * the day rollups of all their pairs exist. Archived days are written as segments and then
+ * deleted from Mongo in batches. The find method reads the archived days of
+ * a createdAt ascending query before the quotes that are still in Mongo.
+ */
+@Service
+public class QuoteArchiveService {
+	private static final Logger LOG = LoggerFactory.getLogger(QuoteArchiveService.class);
+	private static final String PAIR = "pair";
+	private static final String ID = "_id";
+	private final MyMongoRepository myMongoRepository;
+	private final MyQuoteArchive myQuoteArchive;
+	private final QuoteBucketService quoteBucketService;
+	private final boolean enabled;
+	private final int rawDays;
+	private final int deleteBatchSize;
+	private final ZoneId zoneId = ZoneId.systemDefault();
+	private final List<ArchiveDefinition> archiveDefinitions = List.of(
+			new ArchiveDefinition(BitstampService.BS_COL, BitstampService.BS_DAY_COL),
+			new ArchiveDefinition(BitfinexService.BF_COL, BitfinexService.BF_DAY_COL),
+			new ArchiveDefinition(ItbitService.IB_COL, ItbitService.IB_DAY_COL),
+			new ArchiveDefinition(CoinbaseService.CB_COL, CoinbaseService.CB_DAY_COL));
+
+	public record ArchiveDefinition(String colName, String dayColName) {
+	}
+
+	private record CreatedAtRange(Date begin, boolean beginIncluded, Optional<Date> end, boolean endIncluded) {
+		boolean contains(Date createdAt) {
+			return createdAt != null
+					&& (this.beginIncluded ? !createdAt.before(this.begin) : createdAt.after(this.begin))
+					&& this.end.map(myEnd -> this.endIncluded ? !createdAt.after(myEnd) : createdAt.before(myEnd))
+							.orElse(Boolean.TRUE);
+		}
+	}
+
+	public QuoteArchiveService(MyMongoRepository myMongoRepository, MyQuoteArchive myQuoteArchive,
+			QuoteBucketService quoteBucketService, @Value("${retention.enabled:false}") boolean enabled,
+			@Value("${retention.raw.days:30}") int rawDays,
+			@Value("${retention.delete.batch-size:1000}") int deleteBatchSize) {
+		this.myMongoRepository = myMongoRepository;
+		this.myQuoteArchive = myQuoteArchive;
+		this.quoteBucketService = quoteBucketService;
+		this.enabled = enabled;
+		// the today queries must stay in Mongo
+		this.rawDays = Math.max(2, rawDays);
+		this.deleteBatchSize = deleteBatchSize;
+	}
+
+	public Flux<Long> archiveAll() {
+		if (!this.enabled) {
+			return Flux.empty();
+		}
+		return Flux.fromIterable(this.archiveDefinitions).concatMap(this::archive);
+	}
+
+	public Mono<Long> archive(ArchiveDefinition archiveDefinition) {
+		LocalDate retentionBegin = LocalDate.now(this.zoneId).minusDays(this.rawDays);
+		Query firstQuery = new Query().with(Sort.by(DtoUtils.CREATEDAT).ascending());
+		Query lastRollupQuery = new Query().with(Sort.by(DtoUtils.CREATEDAT).descending());
+		Mono<LocalDate> firstDay = this.myMongoRepository
+				.findOne(firstQuery, Document.class, this.quoteBucketService.sourceColName(archiveDefinition.colName()))
+				.map(document -> this.toLocalDate(document.getDate(DtoUtils.CREATEDAT)));
+		// a day is rolled up once its day document exists
+		Mono<LocalDate> rolledUpEnd = this.myMongoRepository
+				.findOne(lastRollupQuery, Document.class, archiveDefinition.dayColName())
+				.map(document -> this.toLocalDate(document.getDate(DtoUtils.CREATEDAT)).plusDays(1));
+		return Mono.zip(firstDay, rolledUpEnd).flatMapMany(days -> {
+			LocalDate end = days.getT2().isBefore(retentionBegin) ? days.getT2() : retentionBegin;
+			return Flux.fromStream(days.getT1().datesUntil(end));
+		}).concatMap(day -> this.archiveDay(archiveDefinition, day)).reduce(0L, Long::sum)
+				.timeout(Duration.ofHours(1L))
+				.doOnNext(count -> LOG.info("Archived {} {} documents", count, archiveDefinition.colName()))
+				.doOnError(ex -> LOG.warn(String.format("Archiving %s failed", archiveDefinition.colName()), ex))
+				.onErrorResume(ex -> Mono.just(0L));
+	}
+
+	private Mono<Long> archiveDay(ArchiveDefinition archiveDefinition, LocalDate day) {
+		String colName = archiveDefinition.colName();
+		Date begin = this.toDate(day);
+		Date end = this.toDate(day.plusDays(1));
+		Query query = new Query(Criteria.where(DtoUtils.CREATEDAT).gte(begin).lt(end));
+		query.with(Sort.by(Direction.ASC, PAIR, DtoUtils.CREATEDAT));
+		return this.quoteBucketService.find(query, Document.class, colName).collectList()
+				.filterWhen(documents -> this.isRolledUp(archiveDefinition.dayColName(), day, documents))
+				.flatMap(documents -> documents.isEmpty() ? Mono.just(0L)
+						: this.myQuoteArchive.write(colName, day, documents))
+				.flatMap(count -> this.delete(this.quoteBucketService.sourceColName(colName), begin, end)
+						.thenReturn(count))
+				.defaultIfEmpty(0L);
+	}
+
+	private Mono<Boolean> isRolledUp(String dayColName, LocalDate day, List<Document> documents) {
+		Set<Optional<Object>> pairs = documents.stream().map(document -> Optional.ofNullable(document.get(PAIR)))
+				.collect(Collectors.toSet());
+		Query query = new Query(
+				Criteria.where(DtoUtils.CREATEDAT).gte(this.toDate(day)).lt(this.toDate(day.plusDays(1))));
+		query.fields().include(PAIR);
+		return this.myMongoRepository.find(query, Document.class, dayColName)
+				.map(document -> Optional.ofNullable(document.get(PAIR))).collect(Collectors.toSet())
+				.map(rolledUpPairs -> rolledUpPairs.containsAll(pairs)).doOnNext(rolledUp -> {
+					if (!rolledUp) {
+						LOG.info("Not archiving {}, not all its pairs have a rollup in {}", day, dayColName);
+					}
+				});
+	}
+
+	private Mono<Long> delete(String sourceColName, Date begin, Date end) {
+		return this.deleteBatch(sourceColName, begin, end)
+				.expand(count -> count < this.deleteBatchSize ? Mono.empty()
+						: this.deleteBatch(sourceColName, begin, end))
+				.reduce(0L, Long::sum);
+	}
+
+	private Mono<Long> deleteBatch(String sourceColName, Date begin, Date end) {
+		Query query = new Query(Criteria.where(DtoUtils.CREATEDAT).gte(begin).lt(end)).limit(this.deleteBatchSize);
+		query.fields().include(ID);
+		return this.myMongoRepository.find(query, Document.class, sourceColName).map(document -> document.get(ID))
+				.collectList()
+				.flatMap(ids -> ids.isEmpty() ? Mono.just(0L)
+						: this.myMongoRepository.remove(new Query(Criteria.where(ID).in(ids)), sourceColName)
+								.map(DeleteResult::getDeletedCount));
+	}
+
+	public <T> Flux<T> find(Query query, Class<T> entityClass, String colName) {
+		Flux<T> live = this.quoteBucketService.find(query, entityClass, colName);
+		Document criteria = query.getQueryObject();
+		Optional<CreatedAtRange> range = this.createRange(criteria);
+		if (!this.enabled || range.isEmpty()
+				|| !new Document(DtoUtils.CREATEDAT, 1).equals(query.getSortObject())) {
+			return live;
+		}
+		LocalDate firstDay = this.toLocalDate(range.get().begin());
+		LocalDate lastDay = range.get().end().map(this::toLocalDate).orElse(LocalDate.now(this.zoneId));
+		Optional<Object> pair = Optional.ofNullable(criteria.get(PAIR)).filter(String.class::isInstance);
+		Flux<T> archived = this.myMongoRepository.convert(this.myQuoteArchive.days(colName)
+				.filter(day -> !day.isBefore(firstDay) && !day.isAfter(lastDay))
+				.concatMap(day -> this.myQuoteArchive.read(colName, day)
+						.filter(document -> pair.map(myPair -> myPair.equals(document.get(PAIR))).orElse(Boolean.TRUE)
+								&& range.get().contains(document.getDate(DtoUtils.CREATEDAT)))
+						.sort(Comparator.comparing(document -> document.getDate(DtoUtils.CREATEDAT)))),
+				entityClass, colName);
+		Flux<T> result = archived.concatWith(live);
+		return query.getLimit() > 0 ? result.take(query.getLimit()) : result;
+	}
+
+	private Optional<CreatedAtRange> createRange(Document criteria) {
+		Optional<CreatedAtRange> result = Optional.empty();
+		if (criteria.get(DtoUtils.CREATEDAT) instanceof Document createdAt) {
+			Optional<Date> end = Optional.ofNullable(createdAt.get("$lt", createdAt.get("$lte")))
+					.filter(Date.class::isInstance).map(Date.class::cast);
+			boolean endIncluded = !createdAt.containsKey("$lt");
+			result = Optional.ofNullable(createdAt.get("$gt", createdAt.get("$gte"))).filter(Date.class::isInstance)
+					.map(begin -> new CreatedAtRange((Date) begin, !createdAt.containsKey("$gt"), end, endIncluded));
+		}
+		return result;
+	}
+
+	private LocalDate toLocalDate(Date date) {
+		return date.toInstant().atZone(this.zoneId).toLocalDate();
+	}
+
+	private Date toDate(LocalDate day) {
+		return Date.from(day.atStartOfDay(this.zoneId).toInstant());
+	}
+}
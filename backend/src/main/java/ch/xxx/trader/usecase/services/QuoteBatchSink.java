@@ -0,0 +1,141 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.MongoUtils;
+import ch.xxx.trader.domain.model.entity.MinuteQuote;
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.domain.model.entity.QuoteBf;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import ch.xxx.trader.domain.model.entity.QuoteIb;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Sinks.EmitFailureHandler;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+@Service
+public class QuoteBatchSink {
+	private static final Logger LOG = LoggerFactory.getLogger(QuoteBatchSink.class);
+	private static final EmitFailureHandler EMIT_FAILURE_HANDLER = EmitFailureHandler
+			.busyLooping(Duration.ofSeconds(1L));
+	private final MyMongoRepository myMongoRepository;
+	private final MeterRegistry meterRegistry;
+	private final QuoteBucketService quoteBucketService;
+	private final Sinks.Many<PendingQuote> quoteSink = Sinks.many().unicast().onBackpressureBuffer();
+	private final Scheduler mongoBatchScheduler = Schedulers.newBoundedElastic(4, 1000, "mongoBatch", 10);
+	private final Sinks.Empty<Void> flushCompleted = Sinks.empty();
+	private final RetryBackoffSpec flushRetry;
+
+	private record PendingQuote(Quote quote, Sinks.One<Quote> written) {
+	}
+
+	public QuoteBatchSink(MyMongoRepository myMongoRepository, MeterRegistry meterRegistry,
+			QuoteBucketService quoteBucketService, @Value("${ingestion.batch.size:200}") int batchSize,
+			@Value("${ingestion.batch.max-wait-ms:5000}") long batchMaxWaitMs,
+			@Value("${ingestion.batch.flush.retries:3}") int flushRetries,
+			@Value("${ingestion.batch.flush.backoff-ms:500}") long flushBackoffMs) {
+		this.myMongoRepository = myMongoRepository;
+		this.meterRegistry = meterRegistry;
+		this.quoteBucketService = quoteBucketService;
+		// a retried insert can store a quote twice if the timed out write went through
+		this.flushRetry = Retry.backoff(flushRetries, Duration.ofMillis(flushBackoffMs))
+				.filter(ex -> !(ex instanceof DuplicateKeyException))
+				.onRetryExhaustedThrow((retrySpec, retrySignal) -> retrySignal.failure());
+		this.quoteSink.asFlux().groupBy(pendingQuote -> this.collectionName(pendingQuote.quote()))
+				.flatMap(group -> group.bufferTimeout(batchSize, Duration.ofMillis(batchMaxWaitMs))
+						.concatMap(batch -> this.flush(group.key(), batch)))
+				.doFinally(signal -> this.flushCompleted.tryEmitEmpty()).subscribe();
+	}
+
+	/**
+	 * Emits the quote when its batch is stored, errors if the batch could not be
+	 * stored after the retries.
+	 */
+	public Mono<Quote> emit(Quote quote) {
+		return Mono.defer(() -> {
+			if (quote instanceof MinuteQuote minuteQuote) {
+				minuteQuote.setMinute(MongoUtils.minuteOf(quote.getCreatedAt()));
+			}
+			PendingQuote pendingQuote = new PendingQuote(quote, Sinks.one());
+			this.quoteSink.emitNext(pendingQuote, EMIT_FAILURE_HANDLER);
+			return pendingQuote.written().asMono();
+		});
+	}
+
+	private Mono<Integer> flush(String collectionName, List<PendingQuote> batch) {
+		Timer.Sample sample = Timer.start(this.meterRegistry);
+		List<Quote> quotes = batch.stream().map(PendingQuote::quote).toList();
+		Mono<Long> stored = Mono.defer(() -> this.quoteBucketService.isBucketed(collectionName)
+				? this.quoteBucketService.append(collectionName, quotes)
+				: this.myMongoRepository.insertAll(Mono.just(quotes), collectionName).count());
+		return stored.timeout(Duration.ofSeconds(10L)).retryWhen(this.flushRetry.doBeforeRetry(
+				retrySignal -> LOG.info(String.format("Retrying the flush of %d quotes into %s", quotes.size(),
+						collectionName))))
+				.subscribeOn(this.mongoBatchScheduler).map(Long::intValue).doOnSuccess(count -> {
+					sample.stop(this.meterRegistry.timer("quote.batch.flush.latency", "collection", collectionName));
+					DistributionSummary.builder("quote.batch.flush.size").tag("collection", collectionName)
+							.register(this.meterRegistry).record(count);
+					batch.forEach(pendingQuote -> pendingQuote.written().tryEmitValue(pendingQuote.quote()));
+				}).doOnError(ex -> {
+					LOG.warn(String.format("Flush of %d quotes into %s failed", quotes.size(), collectionName), ex);
+					this.meterRegistry.counter("quote.batch.flush.failed", "collection", collectionName)
+							.increment(quotes.size());
+					batch.forEach(pendingQuote -> pendingQuote.written().tryEmitError(ex));
+				})
+				// the failure is reported to the emitters, the next batches are still flushed
+				.onErrorResume(ex -> Mono.just(0));
+	}
+
+	private String collectionName(Quote quote) {
+		String result;
+		if (quote instanceof QuoteBs) {
+			result = BitstampService.BS_COL;
+		} else if (quote instanceof QuoteBf) {
+			result = BitfinexService.BF_COL;
+		} else if (quote instanceof QuoteIb) {
+			result = ItbitService.IB_COL;
+		} else if (quote instanceof QuoteCbRates) {
+			result = CoinbaseService.CB_COL;
+		} else {
+			throw new IllegalArgumentException(String.format("Unsupported quote type: %s", quote.getClass()));
+		}
+		return result;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		this.quoteSink.emitComplete(EMIT_FAILURE_HANDLER);
+		LOG.info("Quote batch sink completed, flushing the remaining quotes.");
+		this.flushCompleted.asMono().timeout(Duration.ofSeconds(10L), Mono.empty()).block();
+	}
+}
@@ -0,0 +1,238 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.domain.model.entity.QuoteBf;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.domain.model.entity.QuoteIb;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Optional bucket layout for the raw minute quotes of the exchanges with pairs.
+ * A bucket document holds the quotes of one pair and one clock hour:
+ * {pair, createdAt: hour begin, count, quotes: [quote, ...]}. Ingested quotes
+ * are appended with $push, range reads select the buckets of the range and
+ * unwind them before the criteria of the raw query are applied. Raw quotes
+ * stored before the bucket layout was enabled are moved into their buckets by
+ * the migration.
+ */
+@Service
+public class QuoteBucketService {
+	private static final Logger LOG = LoggerFactory.getLogger(QuoteBucketService.class);
+	public static final String BUCKET_SUFFIX = "Bucket";
+	public static final String QUOTES_FIELD = "quotes";
+	public static final String COUNT_FIELD = "count";
+	private static final String PAIR = "pair";
+	private static final String ID = "_id";
+	// concurrent first upserts of a bucket race for the unique index, the loser updates the new bucket
+	private static final Retry DUPLICATE_KEY_RETRY = Retry.max(3).filter(DuplicateKeyException.class::isInstance);
+	private static final Set<String> BUCKET_COLS = Set.of(BitstampService.BS_COL, BitfinexService.BF_COL,
+			ItbitService.IB_COL);
+	private final MyMongoRepository myMongoRepository;
+	private final boolean bucket;
+	private final int migrationBatchSize;
+
+	public QuoteBucketService(MyMongoRepository myMongoRepository,
+			@Value("${quote.storage.bucket:false}") boolean bucket,
+			@Value("${quote.storage.bucket.migration.batch-size:500}") int migrationBatchSize) {
+		this.myMongoRepository = myMongoRepository;
+		this.bucket = bucket;
+		this.migrationBatchSize = migrationBatchSize;
+	}
+
+	public boolean isBucketed(String colName) {
+		return this.bucket && BUCKET_COLS.contains(colName);
+	}
+
+	public String sourceColName(String colName) {
+		return this.isBucketed(colName) ? colName + BUCKET_SUFFIX : colName;
+	}
+
+	public Mono<Long> ensureIndexes() {
+		return !this.bucket ? Mono.just(0L)
+				: Flux.fromIterable(BUCKET_COLS)
+						.concatMap(colName -> this.myMongoRepository
+								.ensureUniqueIndex(this.sourceColName(colName), List.of(PAIR, DtoUtils.CREATEDAT))
+								.timeout(Duration.ofMinutes(5L))
+								.doOnError(ex -> LOG.warn(String.format("Bucket index on %s failed",
+										this.sourceColName(colName)), ex))
+								.onErrorResume(ex -> Mono.empty()))
+						.count();
+	}
+
+	public Mono<Long> append(String colName, List<? extends Quote> quotes) {
+		Map<List<Object>, List<Quote>> buckets = quotes.stream().map(Quote.class::cast)
+				.collect(Collectors.groupingBy(
+						quote -> List.of(this.pairOf(quote), bucketBegin(quote.getCreatedAt())),
+						LinkedHashMap::new, Collectors.toList()));
+		return Flux.fromIterable(buckets.entrySet()).concatMap(entry -> {
+			Query query = new Query(Criteria.where(PAIR).is(entry.getKey().get(0)).and(DtoUtils.CREATEDAT)
+					.is(entry.getKey().get(1)));
+			Update update = new Update().push(QUOTES_FIELD).each(entry.getValue().toArray()).inc(COUNT_FIELD,
+					entry.getValue().size());
+			return this.myMongoRepository.upsert(query, update, this.sourceColName(colName))
+					.retryWhen(DUPLICATE_KEY_RETRY).map(result -> (long) entry.getValue().size());
+		}).reduce(0L, Long::sum);
+	}
+
+	public Flux<Long> migrateAll() {
+		return !this.bucket ? Flux.empty() : Flux.fromIterable(BUCKET_COLS).concatMap(this::migrate);
+	}
+
+	public Mono<Long> migrate(String colName) {
+		return this.migrateBatch(colName)
+				.expand(count -> count < this.migrationBatchSize ? Mono.empty() : this.migrateBatch(colName))
+				.reduce(0L, Long::sum).doOnNext(count -> LOG.info(
+						String.format("Moved %d %s quotes into %s", count, colName, this.sourceColName(colName))));
+	}
+
+	private Mono<Long> migrateBatch(String colName) {
+		// moved quotes are deleted, every batch starts at the oldest remaining raw quote
+		Query query = new Query().with(Sort.by(DtoUtils.CREATEDAT).ascending()).limit(this.migrationBatchSize);
+		return this.myMongoRepository.find(query, Document.class, colName)
+				.collect(Collectors.groupingBy(
+						document -> List.of(document.get(PAIR), bucketBegin(document.getDate(DtoUtils.CREATEDAT))),
+						LinkedHashMap::new, Collectors.toList()))
+				.flatMapMany(buckets -> Flux.fromIterable(buckets.entrySet()))
+				.concatMap(entry -> this.moveQuotes(colName, entry.getKey(), entry.getValue())).reduce(0L, Long::sum)
+				.timeout(Duration.ofMinutes(5L));
+	}
+
+	private Mono<Long> moveQuotes(String colName, List<Object> bucketKey, List<Document> quotes) {
+		List<Object> ids = quotes.stream().map(document -> document.get(ID)).toList();
+		Criteria bucketCriteria = Criteria.where(PAIR).is(bucketKey.get(0)).and(DtoUtils.CREATEDAT)
+				.is(bucketKey.get(1));
+		Query movedQuery = new Query(bucketCriteria).addCriteria(Criteria.where(QUOTES_FIELD + "." + ID).in(ids));
+		movedQuery.fields().include(ID);
+		Update update = new Update().push(QUOTES_FIELD).each(quotes.toArray()).inc(COUNT_FIELD, quotes.size());
+		// a batch that was pushed before an interrupted delete is not pushed twice
+		return this.myMongoRepository.findOne(movedQuery, Document.class, this.sourceColName(colName)).hasElement()
+				.flatMap(moved -> moved ? Mono.empty()
+						: this.myMongoRepository.upsert(new Query(bucketCriteria), update, this.sourceColName(colName))
+								.retryWhen(DUPLICATE_KEY_RETRY))
+				.then(this.myMongoRepository.remove(new Query(Criteria.where(ID).in(ids)), colName))
+				.thenReturn((long) quotes.size());
+	}
+
+	public <T> Mono<T> findOne(Query query, Class<T> entityClass, String colName) {
+		return this.isBucketed(colName) ? this.find(Query.of(query).limit(1), entityClass, colName).next()
+				: this.myMongoRepository.findOne(query, entityClass, colName);
+	}
+
+	public <T> Flux<T> find(Query query, Class<T> entityClass, String colName) {
+		if (!this.isBucketed(colName)) {
+			return this.myMongoRepository.find(query, entityClass, colName);
+		}
+		List<AggregationOperation> operations = new ArrayList<>(
+				this.createUnwindOperations(query.getQueryObject(), query.getSortObject(), query.getLimit()));
+		if (!query.getSortObject().isEmpty()) {
+			operations.add(context -> new Document("$sort", query.getSortObject()));
+		}
+		if (query.getLimit() > 0) {
+			operations.add(context -> new Document("$limit", query.getLimit()));
+		}
+		return this.myMongoRepository.aggregate(
+				Aggregation.newAggregation(operations)
+						.withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build()),
+				this.sourceColName(colName), entityClass);
+	}
+
+	/**
+	 * Selects the buckets that can contain matching quotes, unwinds them and
+	 * matches the quotes with the raw criteria.
+	 */
+	public List<AggregationOperation> createUnwindOperations(Document criteria, Document sort, int limit) {
+		Document bucketMatch = new Document();
+		if (criteria.containsKey(PAIR)) {
+			bucketMatch.append(PAIR, criteria.get(PAIR));
+		}
+		if (criteria.get(DtoUtils.CREATEDAT) instanceof Document createdAt) {
+			bucketMatch.append(DtoUtils.CREATEDAT, this.createBucketRange(createdAt));
+		}
+		List<AggregationOperation> operations = new ArrayList<>();
+		operations.add(context -> new Document("$match", bucketMatch));
+		Object createdAtSort = sort.get(DtoUtils.CREATEDAT);
+		if (createdAtSort != null && sort.size() == 1) {
+			operations.add(context -> new Document("$sort", new Document(DtoUtils.CREATEDAT, createdAtSort)));
+			// every bucket holds at least one quote, without further criteria the limit bounds the buckets
+			if (limit > 0 && criteria.keySet().stream().allMatch(PAIR::equals)) {
+				operations.add(context -> new Document("$limit", limit));
+			}
+		}
+		operations.add(context -> new Document("$unwind", "$" + QUOTES_FIELD));
+		operations.add(context -> new Document("$replaceRoot", new Document("newRoot", "$" + QUOTES_FIELD)));
+		if (!criteria.isEmpty()) {
+			operations.add(context -> new Document("$match", criteria));
+		}
+		return operations;
+	}
+
+	private Document createBucketRange(Document createdAt) {
+		Document result = new Document();
+		Stream.of("$gt", "$gte").filter(createdAt::containsKey).findFirst()
+				.map(createdAt::get).filter(Date.class::isInstance)
+				.ifPresent(begin -> result.append("$gte", bucketBegin((Date) begin)));
+		Stream.of("$lt", "$lte").filter(createdAt::containsKey).findFirst().map(createdAt::get)
+				.ifPresent(end -> result.append("$lte", end));
+		return result;
+	}
+
+	private String pairOf(Quote quote) {
+		String result;
+		if (quote instanceof QuoteBs quoteBs) {
+			result = quoteBs.getPair();
+		} else if (quote instanceof QuoteBf quoteBf) {
+			result = quoteBf.getPair();
+		} else if (quote instanceof QuoteIb quoteIb) {
+			result = quoteIb.getPair();
+		} else {
+			throw new IllegalArgumentException(String.format("Unsupported quote type: %s", quote.getClass()));
+		}
+		return result;
+	}
+
+	static Date bucketBegin(Date createdAt) {
+		return Date.from(createdAt.toInstant().truncatedTo(ChronoUnit.HOURS));
+	}
+}
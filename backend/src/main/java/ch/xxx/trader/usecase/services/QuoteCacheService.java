@@ -0,0 +1,220 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import ch.xxx.trader.usecase.common.QuoteRingBuffer;
+import ch.xxx.trader.usecase.common.QuoteRingBuffer.Rows;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyRollupDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Keeps the quotes of the last day per pair in ring buffers, so the today
+ * timeframes are copied from memory instead of scanning Mongo. The rings are
+ * fed by the ingestion, warmed from Mongo at startup and topped up from Mongo
+ * once per sync interval with the quotes other instances have ingested.
+ */
+@Service
+public class QuoteCacheService {
+	private static final Logger LOG = LoggerFactory.getLogger(QuoteCacheService.class);
+	// covers the batching delay of the quotes stored by other instances
+	private static final Duration SYNC_OVERLAP = Duration.ofMinutes(2L);
+	private static final int TODAY_LIMIT = 1000;
+	private final QuoteBucketService quoteBucketService;
+	private final boolean enabled;
+	private final int capacity;
+	private final long syncIntervalMs;
+	private final Map<Class<? extends Quote>, QuoteCache<? extends Quote>> quoteCaches = new ConcurrentHashMap<>();
+	private final Scheduler mongoScheduler = Schedulers.newBoundedElastic(4, 100, "mongoCache", 10);
+
+	@FunctionalInterface
+	public interface RowWriter<T> {
+		void write(T quote, double[] row);
+	}
+
+	@FunctionalInterface
+	public interface RowFactory<T> {
+		T create(String pair, Date createdAt, double[] row);
+	}
+
+	public record CacheDefinition<T extends Quote>(String exchange, String colName, Class<T> colType,
+			Function<T, String> pairFunction, int width, RowWriter<T> rowWriter, RowFactory<T> rowFactory,
+			boolean hourAligned) {
+		public static <T extends Quote> CacheDefinition<T> of(MyRollupDefinition<T> rollupDefinition) {
+			List<Function<T, BigDecimal>> valueFunctions = rollupDefinition.valueFunctions();
+			return new CacheDefinition<>(rollupDefinition.exchange(), rollupDefinition.colName(),
+					rollupDefinition.colType(), rollupDefinition.pairFunction(), valueFunctions.size(),
+					(quote, row) -> {
+						for (int i = 0; i < row.length; i++) {
+							BigDecimal value = valueFunctions.get(i).apply(quote);
+							row[i] = value == null ? Double.NaN : value.doubleValue();
+						}
+					}, (pair, createdAt, row) -> {
+						BigDecimal[] values = new BigDecimal[row.length];
+						for (int i = 0; i < row.length; i++) {
+							values[i] = Double.isNaN(row[i]) ? null : BigDecimal.valueOf(row[i]);
+						}
+						return rollupDefinition.quoteFactory().create(pair, createdAt, values);
+					}, false);
+		}
+	}
+
+	private static class QuoteCache<T extends Quote> {
+		private final CacheDefinition<T> cacheDefinition;
+		private final int capacity;
+		private final Map<String, QuoteRingBuffer> rings = new ConcurrentHashMap<>();
+		private final AtomicBoolean syncing = new AtomicBoolean(false);
+		private volatile boolean warm = false;
+		private volatile long syncedAt = 0L;
+
+		private QuoteCache(CacheDefinition<T> cacheDefinition, int capacity) {
+			this.cacheDefinition = cacheDefinition;
+			this.capacity = capacity;
+		}
+
+		private void add(Quote quote) {
+			T myQuote = this.cacheDefinition.colType().cast(quote);
+			double[] row = new double[this.cacheDefinition.width()];
+			this.cacheDefinition.rowWriter().write(myQuote, row);
+			this.rings.computeIfAbsent(this.cacheDefinition.pairFunction().apply(myQuote),
+					pair -> new QuoteRingBuffer(this.capacity, this.cacheDefinition.width()))
+					.add(myQuote.getCreatedAt().getTime(), row);
+		}
+	}
+
+	public QuoteCacheService(QuoteBucketService quoteBucketService,
+			@Value("${quote.cache.enabled:true}") boolean enabled,
+			@Value("${quote.cache.capacity:1500}") int capacity,
+			@Value("${quote.cache.sync-interval-ms:60000}") long syncIntervalMs) {
+		this.quoteBucketService = quoteBucketService;
+		this.enabled = enabled;
+		this.capacity = capacity;
+		this.syncIntervalMs = syncIntervalMs;
+	}
+
+	public <T extends Quote> void register(CacheDefinition<T> cacheDefinition) {
+		this.quoteCaches.put(cacheDefinition.colType(), new QuoteCache<>(cacheDefinition, this.capacity));
+	}
+
+	public void add(Quote quote) {
+		QuoteCache<? extends Quote> quoteCache = this.quoteCaches.get(quote.getClass());
+		if (this.enabled && quoteCache != null) {
+			quoteCache.add(quote);
+		}
+	}
+
+	public Mono<Long> warmUp() {
+		return !this.enabled ? Mono.just(0L)
+				: Flux.fromIterable(this.quoteCaches.values()).concatMap(this::sync).reduce(0L, Long::sum);
+	}
+
+	/**
+	 * The quotes of the last day with a minute divisible by minuteStep, empty if
+	 * the cache can not answer and Mongo has to be asked.
+	 */
+	public <T extends Quote> Optional<Flux<T>> findToday(Class<T> colType, String pair, int minuteStep) {
+		@SuppressWarnings("unchecked")
+		QuoteCache<T> quoteCache = (QuoteCache<T>) this.quoteCaches.get(colType);
+		if (!this.enabled || quoteCache == null) {
+			return Optional.empty();
+		}
+		if (System.currentTimeMillis() - quoteCache.syncedAt >= this.syncIntervalMs) {
+			this.sync(quoteCache).subscribe();
+		}
+		QuoteRingBuffer ring = quoteCache.rings.get(pair);
+		return !quoteCache.warm || ring == null ? Optional.empty()
+				: Optional.of(Flux.defer(() -> Flux.fromIterable(this.createQuotes(quoteCache.cacheDefinition, pair,
+						ring.copySince(createTodayBegin().getTime()), minuteStep))));
+	}
+
+	private <T extends Quote> List<T> createQuotes(CacheDefinition<T> cacheDefinition, String pair, Rows rows,
+			int minuteStep) {
+		ZoneId zoneId = ZoneId.systemDefault();
+		List<T> quotes = new ArrayList<>();
+		for (int index = 0; index < rows.size() && quotes.size() < TODAY_LIMIT; index++) {
+			Instant createdAt = Instant.ofEpochMilli(rows.createdAt()[index]);
+			if (LocalDateTime.ofInstant(createdAt, zoneId).getMinute() % minuteStep == 0) {
+				quotes.add(cacheDefinition.rowFactory().create(pair, Date.from(createdAt), rows.row(index)));
+			}
+		}
+		return quotes;
+	}
+
+	private <T extends Quote> Mono<Long> sync(QuoteCache<T> quoteCache) {
+		return Mono.defer(() -> {
+			if (!quoteCache.syncing.compareAndSet(false, true)) {
+				return Mono.just(0L);
+			}
+			CacheDefinition<T> cacheDefinition = quoteCache.cacheDefinition;
+			long syncedAt = System.currentTimeMillis();
+			Date from = quoteCache.warm ? new Date(quoteCache.syncedAt - SYNC_OVERLAP.toMillis())
+					: createTodayBegin();
+			// delta frames are decoded from the full frame at the start of their hour
+			Date begin = !cacheDefinition.hourAligned() ? from
+					: Date.from(from.toInstant().atZone(ZoneId.systemDefault()).truncatedTo(ChronoUnit.HOURS)
+							.toInstant());
+			Query query = new Query(Criteria.where(DtoUtils.CREATEDAT).gte(begin));
+			query.with(Sort.by(DtoUtils.CREATEDAT).ascending());
+			return this.quoteBucketService.find(query, cacheDefinition.colType(), cacheDefinition.colName())
+					.filter(quote -> quote.getCreatedAt().after(from)).doOnNext(quoteCache::add).count()
+					.timeout(Duration.ofMinutes(1L)).subscribeOn(this.mongoScheduler).doOnSuccess(count -> {
+						if (!quoteCache.warm) {
+							LOG.info(String.format("Warmed the %s quote cache with %d quotes",
+									cacheDefinition.exchange(), count));
+						}
+						quoteCache.syncedAt = syncedAt;
+						quoteCache.warm = true;
+					})
+					.doOnError(ex -> LOG.warn(String.format("Syncing the %s quote cache failed",
+							cacheDefinition.exchange()), ex))
+					.onErrorReturn(0L).doFinally(signal -> quoteCache.syncing.set(false));
+		});
+	}
+
+	private static Date createTodayBegin() {
+		Calendar cal = Calendar.getInstance();
+		cal.add(Calendar.DAY_OF_YEAR, -1);
+		return cal.getTime();
+	}
+}
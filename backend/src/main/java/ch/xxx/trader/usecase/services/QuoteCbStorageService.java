@@ -0,0 +1,165 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.QuoteCbCodec;
+import ch.xxx.trader.domain.model.entity.QuoteCbDictionary;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Owns the packed Coinbase storage format. Ingested snapshots are chained to
+ * their stored predecessor within the same hour, so the first snapshot of every
+ * hour is a full frame and hour aligned range reads can decode the delta
+ * frames. The chain only moves on after a snapshot is stored. A snapshot
+ * following a failed or still pending write is a full frame again.
+ */
+@Service
+public class QuoteCbStorageService {
+	private static final Logger LOG = LoggerFactory.getLogger(QuoteCbStorageService.class);
+	public static final String DICTIONARY_COL = "quoteCbDictionary";
+	public static final String PACKED_FIELD = "rates";
+	public static final String DICTIONARY_FIELD = "dictionary";
+	public static final String KEY_AT_FIELD = "keyAt";
+	public static final String PREV_AT_FIELD = "prevAt";
+	public static final List<String> PACKED_FIELDS = List.of(PACKED_FIELD, DICTIONARY_FIELD, KEY_AT_FIELD,
+			PREV_AT_FIELD);
+	private final MyMongoRepository myMongoRepository;
+	private final QuoteCbCodec quoteCbCodec;
+	private final boolean packed;
+	private final boolean delta;
+	private final int migrationBatchSize;
+	private QuoteCbRates lastSnapshot = null;
+	private QuoteCbRates pendingSnapshot = null;
+
+	public QuoteCbStorageService(MyMongoRepository myMongoRepository, QuoteCbCodec quoteCbCodec,
+			@Value("${coinbase.storage.packed:false}") boolean packed,
+			@Value("${coinbase.storage.delta:false}") boolean delta,
+			@Value("${coinbase.storage.migration.batch-size:500}") int migrationBatchSize) {
+		this.myMongoRepository = myMongoRepository;
+		this.quoteCbCodec = quoteCbCodec;
+		this.packed = packed;
+		this.delta = packed && delta;
+		this.migrationBatchSize = migrationBatchSize;
+	}
+
+	public boolean isPacked() {
+		return this.packed;
+	}
+
+	public boolean isDelta() {
+		return this.delta;
+	}
+
+	public synchronized QuoteCbRates chainSnapshot(QuoteCbRates quote) {
+		if (this.delta) {
+			this.chain(quote, this.pendingSnapshot == null ? this.lastSnapshot : null);
+			this.pendingSnapshot = quote;
+		}
+		return quote;
+	}
+
+	public synchronized void snapshotStored(QuoteCbRates quote, boolean stored) {
+		if (this.delta && this.pendingSnapshot == quote) {
+			this.pendingSnapshot = null;
+			// only the direct predecessor is needed to encode the next delta frame
+			quote.setPrevious(null);
+			this.lastSnapshot = stored ? quote : null;
+		}
+	}
+
+	public Mono<Integer> initDictionaries() {
+		QuoteCbDictionary current = new QuoteCbDictionary(this.quoteCbCodec.getVersion(),
+				this.quoteCbCodec.getCurrencies());
+		Query currentQuery = new Query(Criteria.where("_id").is(current.getVersion()));
+		return this.myMongoRepository.findOne(currentQuery, QuoteCbDictionary.class, DICTIONARY_COL)
+				.switchIfEmpty(Mono.defer(() -> this.packed
+						? this.myMongoRepository.save(current, DICTIONARY_COL)
+						: Mono.empty()))
+				.thenMany(this.myMongoRepository.find(new Query(), QuoteCbDictionary.class, DICTIONARY_COL))
+				.map(dictionary -> this.quoteCbCodec.register(dictionary.getVersion(), dictionary.getCurrencies()))
+				.count().map(Long::intValue).timeout(Duration.ofSeconds(30L))
+				.doOnNext(count -> LOG.info(String.format("Registered %d Coinbase currency dictionaries", count)))
+				.doOnError(ex -> LOG.warn("Loading the Coinbase currency dictionaries failed", ex))
+				.onErrorReturn(0);
+	}
+
+	public Mono<Long> migrate(String colName, boolean raw) {
+		if (!this.packed) {
+			return Mono.just(0L);
+		}
+		QuoteCbRates[] previous = new QuoteCbRates[1];
+		Date[] migratedUntil = new Date[1];
+		return this.migrateBatch(colName, raw, previous, migratedUntil)
+				.expand(count -> count < this.migrationBatchSize ? Mono.empty()
+						: this.migrateBatch(colName, raw, previous, migratedUntil))
+				.reduce(0L, Long::sum).doOnNext(count -> LOG.info(
+						String.format("Migrated %d %s documents to the packed format", count, colName)));
+	}
+
+	private Mono<Long> migrateBatch(String colName, boolean raw, QuoteCbRates[] previous, Date[] migratedUntil) {
+		Criteria criteria = Criteria.where(PACKED_FIELD).exists(false);
+		// the index scan resumes at the last migrated document instead of the oldest one
+		Optional.ofNullable(migratedUntil[0]).ifPresent(myDate -> criteria.and(DtoUtils.CREATEDAT).gte(myDate));
+		Query query = new Query(criteria);
+		query.with(Sort.by(DtoUtils.CREATEDAT).ascending()).limit(this.migrationBatchSize);
+		return this.myMongoRepository.find(query, QuoteCbRates.class, colName).map(quote -> {
+			if (raw && this.delta) {
+				previous[0] = this.chain(quote, previous[0]);
+			}
+			return quote;
+		}).concatMap(quote -> this.myMongoRepository.save(quote, colName))
+				.doOnNext(quote -> migratedUntil[0] = quote.getCreatedAt()).count()
+				.timeout(Duration.ofMinutes(5L));
+	}
+
+	public Flux<Long> migrateAll(List<String> rawColNames, List<String> rollupColNames) {
+		return Flux.concat(Flux.fromIterable(rawColNames).concatMap(colName -> this.migrate(colName, true)),
+				Flux.fromIterable(rollupColNames).concatMap(colName -> this.migrate(colName, false)));
+	}
+
+	private QuoteCbRates chain(QuoteCbRates quote, QuoteCbRates last) {
+		if (last != null && last.getCreatedAt().before(quote.getCreatedAt())
+				&& this.truncateToHour(last.getCreatedAt()).equals(this.truncateToHour(quote.getCreatedAt()))) {
+			quote.setPrevious(last);
+			quote.setKeyAt(last.getKeyAt());
+		} else {
+			quote.setKeyAt(quote.getCreatedAt());
+		}
+		return quote;
+	}
+
+	private Date truncateToHour(Date date) {
+		return Date.from(date.toInstant().atZone(ZoneId.systemDefault()).truncatedTo(ChronoUnit.HOURS).toInstant());
+	}
+}
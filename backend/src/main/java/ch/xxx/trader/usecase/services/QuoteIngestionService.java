@@ -0,0 +1,121 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.QuoteExchange;
+import ch.xxx.trader.domain.model.dto.QuotePair;
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+public class QuoteIngestionService {
+	private static final Logger LOG = LoggerFactory.getLogger(QuoteIngestionService.class);
+	private final MyQuoteClient quoteClient;
+	private final PairRegistry pairRegistry;
+	private final QuoteBatchSink quoteBatchSink;
+	private final BitfinexStreamService bitfinexStreamService;
+	private final IncrementalRollupService incrementalRollupService;
+	private final QuoteCbStorageService quoteCbStorageService;
+	private final QuoteCacheService quoteCacheService;
+	private final LatestQuoteService latestQuoteService;
+	private final int exchangeConcurrency;
+	private final Scheduler mongoImportScheduler = Schedulers.newBoundedElastic(40, 40, "mongoImport", 10);
+
+	public QuoteIngestionService(MyQuoteClient quoteClient, PairRegistry pairRegistry,
+			QuoteBatchSink quoteBatchSink, BitfinexStreamService bitfinexStreamService,
+			IncrementalRollupService incrementalRollupService, QuoteCbStorageService quoteCbStorageService,
+			QuoteCacheService quoteCacheService, LatestQuoteService latestQuoteService,
+			@Value("${ingestion.exchange.concurrency:4}") int exchangeConcurrency) {
+		this.quoteClient = quoteClient;
+		this.pairRegistry = pairRegistry;
+		this.quoteBatchSink = quoteBatchSink;
+		this.bitfinexStreamService = bitfinexStreamService;
+		this.incrementalRollupService = incrementalRollupService;
+		this.quoteCbStorageService = quoteCbStorageService;
+		this.quoteCacheService = quoteCacheService;
+		this.latestQuoteService = latestQuoteService;
+		this.exchangeConcurrency = exchangeConcurrency;
+	}
+
+	public Mono<Long> ingestQuotes() {
+		return Flux.fromIterable(this.pairRegistry.getQuotePairsByExchange().entrySet())
+				.filter(entry -> !(QuoteExchange.BITFINEX.equals(entry.getKey())
+						&& this.bitfinexStreamService.isStreaming()))
+				.flatMap(entry -> this.ingestExchange(entry.getValue()))
+				.concatWith(this.ingestConflatedQuotes()).count();
+	}
+
+	private Flux<Quote> ingestConflatedQuotes() {
+		return Flux.defer(() -> Flux.fromIterable(this.bitfinexStreamService.drainConflatedQuotes()))
+				.flatMap(this::storeQuote);
+	}
+
+	private Flux<Quote> ingestExchange(List<QuotePair> quotePairs) {
+		return Flux.fromIterable(quotePairs).flatMap(this::ingestQuote, this.exchangeConcurrency);
+	}
+
+	private Mono<Quote> ingestQuote(QuotePair quotePair) {
+		boolean[] exceptionLogged = new boolean[1];
+		exceptionLogged[0] = false;
+		return this.fetchQuote(quotePair).timeout(Duration.ofSeconds(5L)).doOnError(ex -> {
+			exceptionLogged[0] = true;
+			LOG.warn(String.format("%s %s data request failed", quotePair.exchange(), quotePair.pair()), ex);
+		}).subscribeOn(this.mongoImportScheduler)
+				// the quote is stored with its batch, including the flush retries
+				.flatMap(myQuote -> this.storeQuote(myQuote).timeout(Duration.ofSeconds(50L))
+						.subscribeOn(this.mongoImportScheduler).doOnError(ex -> {
+							if (!exceptionLogged[0]) {
+								LOG.warn(String.format("%s %s data store failed", quotePair.exchange(),
+										quotePair.pair()), ex);
+							}
+						}))
+				.onErrorResume(ex -> Mono.empty());
+	}
+
+	private Mono<? extends Quote> fetchQuote(QuotePair quotePair) {
+		return switch (quotePair.exchange()) {
+		case BITSTAMP -> this.quoteClient.getQuoteBitstamp(quotePair.pair());
+		case BITFINEX -> this.quoteClient.getQuoteBitfinex(quotePair.pair());
+		case ITBIT -> this.quoteClient.getQuoteItbit(quotePair.pair());
+		case COINBASE -> this.quoteClient.getQuoteCoinbase(quotePair.pair())
+				.map(this.quoteCbStorageService::chainSnapshot);
+		};
+	}
+
+	private Mono<Quote> storeQuote(Quote quote) {
+		Mono<Quote> stored = this.quoteBatchSink.emit(quote);
+		if (quote instanceof QuoteCbRates quoteCbRates) {
+			stored = stored.doOnNext(myQuote -> this.quoteCbStorageService.snapshotStored(quoteCbRates, true))
+					.doOnError(ex -> this.quoteCbStorageService.snapshotStored(quoteCbRates, false))
+					.doOnCancel(() -> this.quoteCbStorageService.snapshotStored(quoteCbRates, false));
+		}
+		return stored.doOnNext(this.quoteCacheService::add)
+				.flatMap(this.latestQuoteService::publish)
+				.flatMap(myQuote -> this.incrementalRollupService.addQuote(myQuote).thenReturn(myQuote));
+	}
+}
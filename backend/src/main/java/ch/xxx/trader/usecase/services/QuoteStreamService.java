@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.QuoteExchange;
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.usecase.services.LatestQuoteService.LatestQuote;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+
+/**
+ * Streams the latest quotes to the subscribers as server sent events. Every
+ * subscriber gets the current quotes of its filter, then the newer quotes and
+ * a heartbeat comment. A subscriber that fills its buffer is dropped, the
+ * browser reconnects and starts again with the current quotes.
+ */
+@Service
+public class QuoteStreamService {
+	private static final Logger LOG = LoggerFactory.getLogger(QuoteStreamService.class);
+	private final LatestQuoteService latestQuoteService;
+	private final int bufferSize;
+	private final Duration heartbeat;
+	private final Map<QuoteExchange, StreamDefinition<? extends Quote>> streamDefinitions = new ConcurrentHashMap<>();
+
+	/**
+	 * The pairFunction maps the requested pair to the pair of the latest quotes,
+	 * the viewFunction creates the event data. Exchanges without definition send
+	 * their quotes as they are.
+	 */
+	public record StreamDefinition<T extends Quote>(QuoteExchange exchange, Class<T> colType,
+			UnaryOperator<String> pairFunction, Function<T, ?> viewFunction) {
+	}
+
+	public QuoteStreamService(LatestQuoteService latestQuoteService,
+			@Value("${quote.stream.buffer-size:64}") int bufferSize,
+			@Value("${quote.stream.heartbeat-ms:15000}") long heartbeatMs) {
+		this.latestQuoteService = latestQuoteService;
+		this.bufferSize = bufferSize;
+		this.heartbeat = Duration.ofMillis(heartbeatMs);
+	}
+
+	public <T extends Quote> void register(StreamDefinition<T> streamDefinition) {
+		this.streamDefinitions.put(streamDefinition.exchange(), streamDefinition);
+	}
+
+	public Optional<QuoteExchange> findExchange(String exchange) {
+		return Stream.of(QuoteExchange.values())
+				.filter(quoteExchange -> quoteExchange.getValue().equalsIgnoreCase(exchange)).findFirst();
+	}
+
+	public Flux<ServerSentEvent<Object>> streamQuotes(Optional<String> exchange, Optional<String> pair) {
+		Optional<QuoteExchange> myExchange = exchange.flatMap(this::findExchange);
+		if (exchange.isPresent() && myExchange.isEmpty()) {
+			return Flux.error(new IllegalArgumentException(String.format("Unknown exchange: %s", exchange.get())));
+		}
+		Flux<LatestQuote> latestQuotes = Flux.merge(this.latestQuoteService.streamLatest(),
+				Flux.defer(() -> Flux.fromIterable(this.latestQuoteService.findAllLatest())))
+				.filter(latestQuote -> myExchange.map(latestQuote.exchange()::equals).orElse(Boolean.TRUE)
+						&& pair.map(myPair -> this.matchesPair(latestQuote, myPair)).orElse(Boolean.TRUE));
+		// instances that do not ingest pick up the newer quotes with the refresh
+		Flux<ServerSentEvent<Object>> heartbeats = Flux.interval(this.heartbeat)
+				.doOnNext(tick -> this.latestQuoteService.refreshStale())
+				.map(tick -> ServerSentEvent.builder().comment("heartbeat").build());
+		return Flux.merge(latestQuotes.map(this::createEvent), heartbeats)
+				.onBackpressureBuffer(this.bufferSize).onErrorResume(Exceptions::isOverflow, ex -> {
+					LOG.info(String.format("Dropped a stream subscriber of %s %s after %d pending events",
+							exchange.orElse("all"), pair.orElse("all"), this.bufferSize));
+					return Flux.empty();
+				});
+	}
+
+	private boolean matchesPair(LatestQuote latestQuote, String pair) {
+		StreamDefinition<? extends Quote> streamDefinition = this.streamDefinitions.get(latestQuote.exchange());
+		String myPair = streamDefinition == null ? pair : streamDefinition.pairFunction().apply(pair.toLowerCase());
+		return latestQuote.pair().equalsIgnoreCase(myPair);
+	}
+
+	private ServerSentEvent<Object> createEvent(LatestQuote latestQuote) {
+		StreamDefinition<? extends Quote> streamDefinition = this.streamDefinitions.get(latestQuote.exchange());
+		return ServerSentEvent.builder()
+				.id(Long.toHexString(latestQuote.quote().getCreatedAt().getTime()))
+				.event(latestQuote.exchange().getValue())
+				.data(streamDefinition == null ? latestQuote.quote() : createView(streamDefinition, latestQuote))
+				.build();
+	}
+
+	private static <T extends Quote> Object createView(StreamDefinition<T> streamDefinition,
+			LatestQuote latestQuote) {
+		return streamDefinition.viewFunction().apply(streamDefinition.colType().cast(latestQuote.quote()));
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.common.MongoUtils.TimeFrame;
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import ch.xxx.trader.usecase.common.QuoteVersion;
+import reactor.core.publisher.Mono;
+
+/**
+ * Versions the time frame responses without reading their quotes. The ETag
+ * combines the newest write of the collection and pair with the last bucket
+ * that dropped out of the time frame window. The Last-Modified is the later of
+ * the time this instance noticed the newest write and the time the window
+ * dropped that bucket. Ingested quotes are only appended, their newest write
+ * is the createdAt of the latest quote. Rollup buckets can be rewritten in
+ * place, their newest write is the highest updatedAt and is looked up once per
+ * check interval.
+ */
+@Service
+public class QuoteVersionService {
+	private static final Logger LOG = LoggerFactory.getLogger(QuoteVersionService.class);
+	private static final String PAIR = "pair";
+	private static final Map<TimeFrame, WindowDefinition> WINDOW_DEFINITIONS = Map.of(TimeFrame.TODAY,
+			new WindowDefinition(Calendar.DAY_OF_YEAR, 1, ChronoUnit.MINUTES, Duration.ofMinutes(1L)),
+			TimeFrame.SEVENDAYS,
+			new WindowDefinition(Calendar.DAY_OF_YEAR, 7, ChronoUnit.HOURS, Duration.ofMinutes(5L)),
+			TimeFrame.THIRTYDAYS,
+			new WindowDefinition(Calendar.DAY_OF_YEAR, 30, ChronoUnit.DAYS, Duration.ofMinutes(15L)),
+			TimeFrame.NINTYDAYS,
+			new WindowDefinition(Calendar.DAY_OF_YEAR, 90, ChronoUnit.DAYS, Duration.ofMinutes(30L)),
+			TimeFrame.Month6, new WindowDefinition(Calendar.MONTH, 6, ChronoUnit.DAYS, Duration.ofMinutes(30L)),
+			TimeFrame.Year1, new WindowDefinition(Calendar.YEAR, 1, ChronoUnit.WEEKS, Duration.ofHours(1L)));
+	private final MyMongoRepository myMongoRepository;
+	private final LatestQuoteService latestQuoteService;
+	private final long checkIntervalMs;
+	private final Map<Class<? extends Quote>, VersionDefinition<? extends Quote>> versionDefinitions =
+			new ConcurrentHashMap<>();
+	private final Map<String, Newest> newests = new ConcurrentHashMap<>();
+
+	/**
+	 * The collections the time frames are read from, the quotes without pair are
+	 * kept in the latest quote map under their collection name.
+	 */
+	public record VersionDefinition<T extends Quote>(Class<T> colType, Map<TimeFrame, String> colNames) {
+	}
+
+	private record WindowDefinition(int calendarField, int amount, ChronoUnit unit, Duration maxAge) {
+	}
+
+	private record Newest(long writtenAt, long observedAt, long checkedAt) {
+	}
+
+	public QuoteVersionService(MyMongoRepository myMongoRepository, LatestQuoteService latestQuoteService,
+			@Value("${quote.version.check-interval-ms:10000}") long checkIntervalMs) {
+		this.myMongoRepository = myMongoRepository;
+		this.latestQuoteService = latestQuoteService;
+		this.checkIntervalMs = checkIntervalMs;
+	}
+
+	public <T extends Quote> void register(VersionDefinition<T> versionDefinition) {
+		this.versionDefinitions.put(versionDefinition.colType(), versionDefinition);
+	}
+
+	/**
+	 * The version of the time frame, empty if it can not be versioned.
+	 */
+	public <T extends Quote> Mono<QuoteVersion> findVersion(Class<T> colType, String timeFrame,
+			Optional<String> pair) {
+		VersionDefinition<? extends Quote> versionDefinition = this.versionDefinitions.get(colType);
+		Optional<TimeFrame> myTimeFrame = Stream.of(TimeFrame.values())
+				.filter(value -> value.getValue().equals(timeFrame)).findFirst()
+				.filter(value -> versionDefinition != null && versionDefinition.colNames().containsKey(value)
+						&& WINDOW_DEFINITIONS.containsKey(value));
+		if (myTimeFrame.isEmpty()) {
+			return Mono.empty();
+		}
+		String colName = versionDefinition.colNames().get(myTimeFrame.get());
+		Mono<Date> newestWrittenAt = TimeFrame.TODAY.equals(myTimeFrame.get())
+				? this.latestQuoteService.findLatest(colType, pair.orElse(colName)).map(Quote::getCreatedAt)
+				: this.findNewestBucket(colName, pair, DtoUtils.UPDATEDAT)
+						.switchIfEmpty(Mono.defer(() -> this.findNewestBucket(colName, pair, DtoUtils.CREATEDAT)));
+		WindowDefinition windowDefinition = WINDOW_DEFINITIONS.get(myTimeFrame.get());
+		return this.findNewest(colName + "/" + pair.orElse(""), newestWrittenAt)
+				.map(newest -> createVersion(newest, windowDefinition, System.currentTimeMillis()));
+	}
+
+	// buckets written before the updatedAt marker fall back to their createdAt
+	private Mono<Date> findNewestBucket(String colName, Optional<String> pair, String dateField) {
+		Query query = new Query().limit(1).with(Sort.by(dateField).descending());
+		pair.ifPresent(myPair -> query.addCriteria(Criteria.where(PAIR).is(myPair)));
+		query.fields().include(dateField);
+		return this.myMongoRepository.findOne(query, Document.class, colName)
+				.flatMap(document -> Mono.justOrEmpty(document.getDate(dateField)));
+	}
+
+	private Mono<Newest> findNewest(String key, Mono<Date> newestWrittenAt) {
+		long now = System.currentTimeMillis();
+		Newest newest = this.newests.get(key);
+		if (newest != null && now - newest.checkedAt() < this.checkIntervalMs) {
+			return Mono.just(newest);
+		}
+		return newestWrittenAt.map(writtenAt -> this.newests.compute(key,
+				(myKey, oldNewest) -> oldNewest != null && oldNewest.writtenAt() == writtenAt.getTime()
+						? new Newest(oldNewest.writtenAt(), oldNewest.observedAt(), now)
+						: new Newest(writtenAt.getTime(), now, now)))
+				.timeout(Duration.ofSeconds(5L))
+				.doOnError(ex -> LOG.warn(String.format("Reading the newest quote of %s failed", key), ex))
+				.onErrorResume(ex -> Mono.justOrEmpty(newest));
+	}
+
+	private static QuoteVersion createVersion(Newest newest, WindowDefinition windowDefinition, long now) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(now);
+		cal.add(windowDefinition.calendarField(), -windowDefinition.amount());
+		Date windowBegin = cal.getTime();
+		Date droppedBucket = ServiceUtils.bucketBegin(windowBegin, windowDefinition.unit());
+		long droppedAt = now - (windowBegin.getTime() - droppedBucket.getTime());
+		String eTag = String.format("\"%s-%s\"", Long.toHexString(newest.writtenAt()),
+				Long.toHexString(droppedBucket.getTime()));
+		return new QuoteVersion(eTag, new Date(Math.max(newest.observedAt(), droppedAt)),
+				windowDefinition.maxAge());
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.client.result.DeleteResult;
+
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyRollupDefinition;
+import reactor.core.publisher.Mono;
+
+@Service
+public class RollupAggregationService {
+	private static final Logger LOG = LoggerFactory.getLogger(RollupAggregationService.class);
+	private static final String COUNT = "count";
+	private static final String IDS = "ids";
+	private static final int MIN_COUNT = 3;
+	private static final int SCALE = 10;
+	private final MyMongoRepository myMongoRepository;
+	private final String timezone = ZoneId.systemDefault().getId();
+	private final boolean numericDecimals;
+	private final QuoteBucketService quoteBucketService;
+
+	public RollupAggregationService(MyMongoRepository myMongoRepository,
+			@Value("${mongo.decimal.numeric:false}") boolean numericDecimals, QuoteBucketService quoteBucketService) {
+		this.myMongoRepository = myMongoRepository;
+		this.numericDecimals = numericDecimals;
+		this.quoteBucketService = quoteBucketService;
+	}
+
+	public <T extends Quote> Mono<String> ensureRollupIndex(MyRollupDefinition<T> rollupDefinition, String colName) {
+		return this.removeDuplicates(rollupDefinition, colName)
+				.doOnNext(removed -> LOG.info(String.format("Removed %d duplicate rollups from %s", removed, colName)))
+				.then(this.myMongoRepository.ensureUniqueIndex(colName, rollupDefinition.keyFields()));
+	}
+
+	private <T extends Quote> Mono<Long> removeDuplicates(MyRollupDefinition<T> rollupDefinition, String colName) {
+		Document key = new Document();
+		rollupDefinition.keyFields().forEach(keyField -> key.append(keyField, "$" + keyField));
+		// the rollup with the most quotes is kept
+		List<AggregationOperation> operations = List.of(
+				context -> new Document("$sort", new Document(COUNT, -1).append("_id", 1)),
+				context -> new Document("$group",
+						new Document("_id", key).append(IDS, new Document("$push", "$_id"))),
+				context -> new Document("$match", new Document(IDS + ".1", new Document("$exists", true))));
+		return this.myMongoRepository
+				.aggregate(Aggregation.newAggregation(operations)
+						.withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build()), colName,
+						Document.class)
+				.map(document -> document.getList(IDS, Object.class))
+				.concatMap(ids -> this.myMongoRepository.remove(
+						new Query(Criteria.where("_id").in(ids.subList(1, ids.size()))), colName))
+				.map(DeleteResult::getDeletedCount).reduce(0L, Long::sum).filter(removed -> removed > 0L);
+	}
+
+	public <T extends Quote> Mono<Void> aggregateQuotes(MyRollupDefinition<T> rollupDefinition, String colName,
+			Date begin, Date end, Optional<String> pair, boolean hour) {
+		Document match = new Document(DtoUtils.CREATEDAT, new Document("$gt", begin).append("$lt", end));
+		pair.ifPresent(myPair -> rollupDefinition.pairField().ifPresent(pairField -> match.append(pairField, myPair)));
+		List<AggregationOperation> operations = new ArrayList<>();
+		if (this.quoteBucketService.isBucketed(rollupDefinition.colName())) {
+			operations.addAll(this.quoteBucketService.createUnwindOperations(match, new Document(), 0));
+		} else {
+			operations.add(context -> new Document("$match", match));
+		}
+		operations.addAll(List.of(context -> this.createGroupStage(rollupDefinition, hour),
+				context -> new Document("$match", new Document(COUNT, new Document("$gte", MIN_COUNT))),
+				context -> this.createProjectStage(rollupDefinition),
+				// like the java rollup upserts, the projection has no _id and replacing keeps the bucket _id
+				context -> new Document("$merge",
+						new Document("into", colName).append("on", rollupDefinition.keyFields())
+								.append("whenMatched", "replace").append("whenNotMatched", "insert"))));
+		return this.myMongoRepository.aggregate(Aggregation.newAggregation(operations),
+				this.quoteBucketService.sourceColName(rollupDefinition.colName()), Document.class).then();
+	}
+
+	private <T extends Quote> Document createGroupStage(MyRollupDefinition<T> rollupDefinition, boolean hour) {
+		Document bucket = new Document("year", this.createDatePart("$year"))
+				.append("month", this.createDatePart("$month")).append("day", this.createDatePart("$dayOfMonth"))
+				.append("hour", hour ? this.createDatePart("$hour") : 0).append("timezone", this.timezone);
+		Document id = new Document(DtoUtils.CREATEDAT, new Document("$dateFromParts", bucket));
+		rollupDefinition.pairField().ifPresent(pairField -> id.append(pairField, "$" + pairField));
+		Document group = new Document("_id", id).append(COUNT, new Document("$sum", 1));
+		rollupDefinition.valueFields()
+				.forEach(valueField -> group.append(valueField,
+						new Document("$avg", new Document("$convert", new Document("input", "$" + valueField)
+								.append("to", "decimal").append("onError", null).append("onNull", null)))));
+		return new Document("$group", group);
+	}
+
+	private Document createDatePart(String operator) {
+		return new Document(operator, new Document("date", "$" + DtoUtils.CREATEDAT).append("timezone", this.timezone));
+	}
+
+	private <T extends Quote> Document createProjectStage(MyRollupDefinition<T> rollupDefinition) {
+		Document project = new Document("_id", 0).append(DtoUtils.CREATEDAT, "$_id." + DtoUtils.CREATEDAT)
+				.append("_class", rollupDefinition.colType().getName())
+				.append(COUNT, new Document("$toLong", "$" + COUNT)).append(DtoUtils.UPDATEDAT, "$$NOW");
+		rollupDefinition.pairField().ifPresent(pairField -> project.append(pairField, "$_id." + pairField));
+		rollupDefinition.valueFields().forEach(valueField -> {
+			Document rounded = new Document("$round", List.of("$" + valueField, SCALE));
+			project.append(valueField, this.numericDecimals ? rounded : new Document("$toString", rounded));
+		});
+		rollupDefinition.dateFields()
+				.forEach(dateField -> project.append(dateField, "$_id." + DtoUtils.CREATEDAT));
+		return new Document("$project", project);
+	}
+}
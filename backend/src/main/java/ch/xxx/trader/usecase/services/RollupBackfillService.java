@@ -0,0 +1,192 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import ch.xxx.trader.domain.model.entity.Quote;
+import ch.xxx.trader.domain.model.entity.RollupCheckpoint;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyRollupDefinition;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyTimeFrame;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+public class RollupBackfillService {
+	@FunctionalInterface
+	public interface ChunkProcessor {
+		Mono<?> process(MyTimeFrame timeFrame, Optional<String> pair);
+	}
+
+	private static final Logger LOG = LoggerFactory.getLogger(RollupBackfillService.class);
+	private static final String NO_PAIR = "";
+	private static final String CHECKPOINT_COL = "rollupCheckpoint";
+	private final MyMongoRepository myMongoRepository;
+	private final MeterRegistry meterRegistry;
+	private final int parallelism;
+	private final Scheduler backfillScheduler;
+	private final QuoteBucketService quoteBucketService;
+	private final Map<String, AtomicLong> pendingChunks = new ConcurrentHashMap<>();
+
+	public RollupBackfillService(MyMongoRepository myMongoRepository, MeterRegistry meterRegistry,
+			@Value("${rollup.backfill.parallelism:4}") int parallelism, QuoteBucketService quoteBucketService) {
+		this.myMongoRepository = myMongoRepository;
+		this.quoteBucketService = quoteBucketService;
+		this.meterRegistry = meterRegistry;
+		this.parallelism = Math.max(1, parallelism);
+		this.backfillScheduler = Schedulers.newBoundedElastic(this.parallelism, 1000, "rollupBackfill");
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		this.backfillScheduler.dispose();
+	}
+
+	public <T extends Quote> long backfill(MyRollupDefinition<T> rollupDefinition, String colName,
+			MyTimeFrame timeFrame, ChunkProcessor chunkProcessor) {
+		Counter chunkCounter = Counter.builder("rollup.backfill.chunks").tag("collection", colName)
+				.register(this.meterRegistry);
+		Timer chunkTimer = Timer.builder("rollup.backfill.chunk.duration").tag("collection", colName)
+				.register(this.meterRegistry);
+		AtomicLong pending = this.pendingChunks.computeIfAbsent(colName, myColName -> this.meterRegistry
+				.gauge("rollup.backfill.chunks.pending", List.of(Tag.of("collection", myColName)), new AtomicLong()));
+		Date windowBegin = this.startOfDay(timeFrame.begin().getTime()).getTime();
+		Query pendingQuery = new Query();
+		pendingQuery.addCriteria(Criteria.where("colName").is(colName).and("done").is(false));
+		Query currentQuery = new Query();
+		currentQuery.addCriteria(Criteria.where("colName").is(colName).and("begin").gte(windowBegin));
+		long start = System.nanoTime();
+		// the chunks of the current time frame are reconciled again, even if they are done
+		long chunks = this.findPairs(rollupDefinition).collectList()
+				.flatMap(pairs -> Flux
+						.merge(this.myMongoRepository.find(pendingQuery, RollupCheckpoint.class, CHECKPOINT_COL),
+								this.myMongoRepository.find(currentQuery, RollupCheckpoint.class, CHECKPOINT_COL))
+						.collect(Collectors.toMap(this::createChunkKey, Function.identity(), (cp1, cp2) -> cp1))
+						.flatMap(checkpoints -> this.createMissingCheckpoints(colName, timeFrame, pairs, checkpoints)))
+				.flatMapMany(Flux::fromIterable)
+				.filter(checkpoint -> !checkpoint.isDone() || !checkpoint.getBegin().before(windowBegin))
+				.collectList().doOnNext(checkpoints -> pending.set(checkpoints.size()))
+				.flatMapMany(Flux::fromIterable)
+				.flatMap(checkpoint -> this.processChunk(checkpoint, chunkProcessor, chunkTimer)
+						.subscribeOn(this.backfillScheduler).doOnNext(myCheckpoint -> {
+							chunkCounter.increment();
+							pending.decrementAndGet();
+						}), this.parallelism)
+				.count().block();
+		double seconds = Math.max(1L, System.nanoTime() - start) / 1_000_000_000.0;
+		LOG.info(String.format("Backfill of %s: %d chunks in %.1fs, %.2f chunks/s", colName, chunks, seconds,
+				chunks / seconds));
+		return chunks;
+	}
+
+	private <T extends Quote> Flux<String> findPairs(MyRollupDefinition<T> rollupDefinition) {
+		return rollupDefinition.pairField()
+				.map(pairField -> this.myMongoRepository.findDistinct(new Query(), pairField,
+						this.quoteBucketService.sourceColName(rollupDefinition.colName()), String.class))
+				.orElse(Flux.just(NO_PAIR));
+	}
+
+	private Mono<List<RollupCheckpoint>> createMissingCheckpoints(String colName, MyTimeFrame timeFrame,
+			List<String> pairs, Map<String, RollupCheckpoint> checkpoints) {
+		Date today = Date.from(LocalDate.now().atStartOfDay().atZone(ZoneId.systemDefault()).toInstant());
+		List<RollupCheckpoint> missingCheckpoints = new ArrayList<>();
+		Calendar begin = this.startOfDay(timeFrame.begin().getTime());
+		Calendar end = Calendar.getInstance();
+		end.setTime(begin.getTime());
+		end.add(Calendar.DAY_OF_YEAR, 1);
+		while (end.getTime().before(today)) {
+			for (String pair : pairs) {
+				RollupCheckpoint checkpoint = new RollupCheckpoint(colName, NO_PAIR.equals(pair) ? null : pair,
+						begin.getTime(), end.getTime());
+				if (!checkpoints.containsKey(this.createChunkKey(checkpoint))) {
+					missingCheckpoints.add(checkpoint);
+				}
+			}
+			begin.add(Calendar.DAY_OF_YEAR, 1);
+			end.add(Calendar.DAY_OF_YEAR, 1);
+		}
+		LOG.info(String.format("Backfill of %s: %d chunks pending, %d new", colName,
+				checkpoints.values().stream().filter(checkpoint -> !checkpoint.isDone()).count(),
+				missingCheckpoints.size()));
+		return this.myMongoRepository.insertAll(Mono.just(missingCheckpoints), CHECKPOINT_COL).collectList()
+				.map(insertedCheckpoints -> {
+					List<RollupCheckpoint> result = new ArrayList<>(checkpoints.values());
+					result.addAll(insertedCheckpoints);
+					result.sort((cp1, cp2) -> cp1.getBegin().compareTo(cp2.getBegin()));
+					return result;
+				});
+	}
+
+	private Mono<RollupCheckpoint> processChunk(RollupCheckpoint checkpoint, ChunkProcessor chunkProcessor,
+			Timer chunkTimer) {
+		Timer.Sample sample = Timer.start(this.meterRegistry);
+		Calendar begin = Calendar.getInstance();
+		begin.setTime(checkpoint.getBegin());
+		Calendar end = Calendar.getInstance();
+		end.setTime(checkpoint.getEnd());
+		return chunkProcessor.process(new MyTimeFrame(begin, end), Optional.ofNullable(checkpoint.getPair()))
+				.then(Mono.fromCallable(() -> {
+					checkpoint.setDone(true);
+					checkpoint.setUpdatedAt(new Date());
+					return checkpoint;
+				})).flatMap(myCheckpoint -> this.myMongoRepository.save(myCheckpoint))
+				.timeout(Duration.ofMinutes(5L)).doOnSuccess(myCheckpoint -> sample.stop(chunkTimer))
+				.doOnError(ex -> LOG.warn(String.format("Backfill chunk %s failed, it stays pending",
+						this.createChunkKey(checkpoint)), ex))
+				.onErrorResume(ex -> Mono.empty());
+	}
+
+	private Calendar startOfDay(Date date) {
+		Calendar result = Calendar.getInstance();
+		result.setTime(date);
+		result.set(Calendar.HOUR_OF_DAY, 0);
+		result.set(Calendar.MINUTE, 0);
+		result.set(Calendar.SECOND, 0);
+		result.set(Calendar.MILLISECOND, 0);
+		return result;
+	}
+
+	private String createChunkKey(RollupCheckpoint checkpoint) {
+		return String.format("%s-%s-%d", checkpoint.getColName(),
+				Optional.ofNullable(checkpoint.getPair()).orElse(NO_PAIR), checkpoint.getBegin().getTime());
+	}
+}
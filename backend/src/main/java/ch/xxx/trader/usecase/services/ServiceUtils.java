@@ -16,34 +16,88 @@
 package ch.xxx.trader.usecase.services;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.text.SimpleDateFormat;
+import java.time.DayOfWeek;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import ch.xxx.trader.domain.model.entity.Quote;
 import ch.xxx.trader.usecase.common.DtoUtils;
+import ch.xxx.trader.usecase.common.QuoteRollup;
+import ch.xxx.trader.usecase.common.QuoteRollup.Accumulation;
+import ch.xxx.trader.usecase.common.QuoteRollup.QuoteFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 @Service
 public class ServiceUtils {
 	public record MyTimeFrame(Calendar begin, Calendar end) {
 	}
 
+	public record MyRollupDefinition<T extends Quote>(String exchange, String colName, Class<T> colType,
+			Optional<String> pairField, Function<T, String> pairFunction, List<String> valueFields,
+			List<Function<T, BigDecimal>> valueFunctions, List<String> dateFields, QuoteFactory<T> quoteFactory,
+			Optional<Accumulation> accumulation) {
+		public MyRollupDefinition(String exchange, String colName, Class<T> colType, Optional<String> pairField,
+				Function<T, String> pairFunction, List<String> valueFields,
+				List<Function<T, BigDecimal>> valueFunctions, List<String> dateFields, QuoteFactory<T> quoteFactory) {
+			this(exchange, colName, colType, pairField, pairFunction, valueFields, valueFunctions, dateFields,
+					quoteFactory, Optional.empty());
+		}
+
+		public List<String> keyFields() {
+			return Stream.concat(this.pairField.stream(), Stream.of(DtoUtils.CREATEDAT)).toList();
+		}
+	}
+
+	private static final Logger LOG = LoggerFactory.getLogger(ServiceUtils.class);
+	private static final int ROLLUP_UPSERT_SIZE = 1000;
+	private static final String AGGREGATION_MODE = "aggregation";
 	private final MyMongoRepository myMongoRepository;
+	private final RollupAggregationService rollupAggregationService;
+	private final boolean aggregationRollup;
+	private final int reconcileDays;
+	private final boolean backfillEnabled;
+	private final Accumulation accumulation;
+	private final RollupBackfillService rollupBackfillService;
+	private final QuoteArchiveService quoteArchiveService;
+	private final Scheduler mongoScheduler = Schedulers.newBoundedElastic(10, 10, "mongoRollup", 10);
 
-	public ServiceUtils(MyMongoRepository myMongoRepository) {
+	public ServiceUtils(MyMongoRepository myMongoRepository, RollupAggregationService rollupAggregationService,
+			RollupBackfillService rollupBackfillService, @Value("${rollup.mode:java}") String rollupMode,
+			@Value("${rollup.reconcile.days:1}") int reconcileDays,
+			@Value("${rollup.backfill.enabled:false}") boolean backfillEnabled,
+			@Value("${rollup.accumulation:compensated}") String accumulation, QuoteArchiveService quoteArchiveService) {
 		this.myMongoRepository = myMongoRepository;
+		this.rollupAggregationService = rollupAggregationService;
+		this.aggregationRollup = AGGREGATION_MODE.equalsIgnoreCase(rollupMode.trim());
+		this.reconcileDays = reconcileDays;
+		this.rollupBackfillService = rollupBackfillService;
+		this.backfillEnabled = backfillEnabled;
+		this.accumulation = Accumulation.valueOf(accumulation.trim().toUpperCase());
+		this.quoteArchiveService = quoteArchiveService;
 	}
 
 	public List<Calendar> createDayHours(Calendar begin) {
@@ -59,9 +113,141 @@ public class ServiceUtils {
 		return hours;
 	}
 
-	public BigDecimal avgHourValue(BigDecimal v1, BigDecimal v2, long count) {
-		return v1.add(v2 == null ? BigDecimal.ZERO
-				: v2.divide(BigDecimal.valueOf(count == 0 ? 1 : count), 10, RoundingMode.HALF_UP));
+	public <T extends Quote> void rollupQuotes(MyRollupDefinition<T> rollupDefinition, String colName,
+			boolean hour) {
+		LocalDateTime startAll = LocalDateTime.now();
+		String exchange = rollupDefinition.exchange();
+		String period = hour ? "Hour" : "Day";
+		MyTimeFrame timeFrame = this.createTimeFrame(colName, rollupDefinition.colType(), hour);
+		this.rollupAggregationService.ensureRollupIndex(rollupDefinition, colName).subscribeOn(this.mongoScheduler)
+				.block();
+		boolean aggregation = this.aggregationRollup && !rollupDefinition.valueFields().isEmpty();
+		if (this.backfillEnabled) {
+			long chunks = this.rollupBackfillService.backfill(rollupDefinition, colName, timeFrame,
+					(myTimeFrame, pair) -> this.rollupChunk(rollupDefinition, colName, myTimeFrame, pair, hour,
+							aggregation));
+			LOG.info(this.createAvgLogStatement(startAll,
+					String.format("Backfilled %d %s %s chunks Time:", chunks, exchange, period)));
+			return;
+		}
+		SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy");
+		Calendar now = Calendar.getInstance();
+		now.setTime(Date.from(LocalDate.now().atStartOfDay().atZone(ZoneId.systemDefault()).toInstant()));
+		// a failed day stops the rollup, the next run starts again with it
+		while (timeFrame.end().before(now)) {
+			Date start = new Date();
+			this.rollupChunk(rollupDefinition, colName, timeFrame, Optional.empty(), hour, aggregation)
+					.subscribeOn(this.mongoScheduler).block();
+			LOG.info(String.format("Prepared %s %s Data for: %s Time: %dms", exchange, period,
+					sdf.format(timeFrame.begin().getTime()), new Date().getTime() - start.getTime()));
+			timeFrame.begin().add(Calendar.DAY_OF_YEAR, 1);
+			timeFrame.end().add(Calendar.DAY_OF_YEAR, 1);
+		}
+		LOG.info(this.createAvgLogStatement(startAll,
+				String.format("Prepared %s %s Data Time:", exchange, hour ? "Hourly" : "Daily")));
+	}
+
+	/**
+	 * Folds the persisted buckets of sourceColName into the coarser day, week or
+	 * month buckets of colName. The source buckets are weighted with their count,
+	 * the last stored bucket is recomputed and only completed buckets are stored.
+	 */
+	public <T extends Quote> void rollupBuckets(MyRollupDefinition<T> rollupDefinition, String sourceColName,
+			String colName, ChronoUnit unit) {
+		LocalDateTime startAll = LocalDateTime.now();
+		this.rollupAggregationService.ensureRollupIndex(rollupDefinition, colName).subscribeOn(this.mongoScheduler)
+				.block();
+		Date end = bucketBegin(new Date(), unit);
+		Query lastQuery = new Query().with(Sort.by(DtoUtils.CREATEDAT).descending());
+		Query firstQuery = new Query().with(Sort.by(DtoUtils.CREATEDAT).ascending());
+		Long count = this.myMongoRepository.findOne(lastQuery, Document.class, colName)
+				.switchIfEmpty(Mono.defer(() -> this.myMongoRepository.findOne(firstQuery, Document.class,
+						sourceColName)))
+				.map(document -> bucketBegin(document.getDate(DtoUtils.CREATEDAT), unit))
+				.flatMap(begin -> this.rollupBuckets(rollupDefinition, sourceColName, colName, unit, begin, end))
+				.defaultIfEmpty(0L).subscribeOn(this.mongoScheduler).block();
+		LOG.info(this.createAvgLogStatement(startAll, String.format("Rolled up %d %s %s buckets into %s Time:",
+				count, rollupDefinition.exchange(), sourceColName, colName)));
+	}
+
+	private <T extends Quote> Mono<Long> rollupBuckets(MyRollupDefinition<T> rollupDefinition, String sourceColName,
+			String colName, ChronoUnit unit, Date begin, Date end) {
+		Query query = new Query();
+		query.addCriteria(Criteria.where(DtoUtils.CREATEDAT).gte(begin).lt(end));
+		query.with(Sort.by(DtoUtils.CREATEDAT).ascending());
+		QuoteRollup<T> quoteRollup = QuoteRollup.fromBuckets(
+				createdAt -> Optional.of(bucketBegin(createdAt, unit)), rollupDefinition.pairFunction(),
+				rollupDefinition.valueFunctions(), rollupDefinition.quoteFactory(),
+				rollupDefinition.accumulation().orElse(this.accumulation));
+		return this.myMongoRepository.find(query, rollupDefinition.colType(), sourceColName)
+				.transform(quoteRollup::rollup).buffer(ROLLUP_UPSERT_SIZE)
+				.concatMap(myColl -> this.myMongoRepository
+						.bulkUpsert(myColl, rollupDefinition.keyFields(), colName).timeout(Duration.ofSeconds(30L))
+						.map(result -> (long) result.getUpserts().size() + result.getMatchedCount()))
+				.timeout(Duration.ofHours(1L))
+				.doOnError(ex -> LOG.warn(String.format("%s rollup of %s into %s failed",
+						rollupDefinition.exchange(), sourceColName, colName), ex))
+				.reduce(0L, Long::sum);
+	}
+
+	static Date bucketBegin(Date createdAt, ChronoUnit unit) {
+		if (ChronoUnit.MINUTES.equals(unit) || ChronoUnit.HOURS.equals(unit)) {
+			return Date.from(createdAt.toInstant().atZone(ZoneId.systemDefault()).truncatedTo(unit).toInstant());
+		}
+		LocalDate day = createdAt.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+		LocalDate begin = switch (unit) {
+		case WEEKS -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+		case MONTHS -> day.withDayOfMonth(1);
+		case DAYS -> day;
+		default -> throw new IllegalArgumentException("Unsupported bucket unit: " + unit);
+		};
+		return Date.from(begin.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+
+	private <T extends Quote> Mono<Long> rollupChunk(MyRollupDefinition<T> rollupDefinition, String colName,
+			MyTimeFrame timeFrame, Optional<String> pair, boolean hour, boolean aggregation) {
+		Mono<Boolean> aggregated = aggregation ? this.aggregateQuotes(rollupDefinition, colName, timeFrame, pair, hour)
+				: Mono.just(Boolean.FALSE);
+		return aggregated.flatMap(done -> done ? Mono.just(0L)
+				: this.rollupQuotes(rollupDefinition, colName, timeFrame, pair, hour));
+	}
+
+	private <T extends Quote> Mono<Boolean> aggregateQuotes(MyRollupDefinition<T> rollupDefinition, String colName,
+			MyTimeFrame timeFrame, Optional<String> pair, boolean hour) {
+		return this.rollupAggregationService
+				.aggregateQuotes(rollupDefinition, colName, timeFrame.begin().getTime(), timeFrame.end().getTime(),
+						pair, hour)
+				.timeout(Duration.ofMinutes(1L)).thenReturn(Boolean.TRUE)
+				.doOnError(ex -> LOG.warn(String.format("%s aggregation into %s failed, using the java rollup",
+						rollupDefinition.exchange(), colName), ex))
+				.onErrorReturn(Boolean.FALSE);
+	}
+
+	private <T extends Quote> Mono<Long> rollupQuotes(MyRollupDefinition<T> rollupDefinition, String colName,
+			MyTimeFrame timeFrame, Optional<String> pair, boolean hour) {
+		Query query = new Query();
+		query.addCriteria(
+				Criteria.where(DtoUtils.CREATEDAT).gt(timeFrame.begin().getTime()).lt(timeFrame.end().getTime()));
+		pair.ifPresent(myPair -> rollupDefinition.pairField()
+				.ifPresent(pairField -> query.addCriteria(Criteria.where(pairField).is(myPair))));
+		query.with(Sort.by(DtoUtils.CREATEDAT).ascending());
+		QuoteRollup<T> quoteRollup = new QuoteRollup<>(this.createBucketBoundaries(timeFrame, hour),
+				rollupDefinition.pairFunction(), rollupDefinition.valueFunctions(), rollupDefinition.quoteFactory(),
+				rollupDefinition.accumulation().orElse(this.accumulation));
+		// the upserts on the unique bucket keys make reruns and racing rollups idempotent
+		return this.quoteArchiveService.find(query, rollupDefinition.colType(), rollupDefinition.colName())
+				.timeout(Duration.ofSeconds(5L)).transform(quoteRollup::rollup).buffer(ROLLUP_UPSERT_SIZE)
+				.concatMap(myColl -> this.myMongoRepository
+						.bulkUpsert(myColl, rollupDefinition.keyFields(), colName).timeout(Duration.ofSeconds(30L))
+						.map(result -> (long) result.getUpserts().size() + result.getMatchedCount()))
+				.doOnError(ex -> LOG.warn(String.format("%s prepare %s data failed", rollupDefinition.exchange(),
+						hour ? "hour" : "day"), ex))
+				.reduce(0L, Long::sum);
+	}
+
+	private List<Date> createBucketBoundaries(MyTimeFrame timeFrame, boolean hour) {
+		return hour ? this.createDayHours(timeFrame.begin()).stream().map(Calendar::getTime).toList()
+				: List.of(timeFrame.begin().getTime(), timeFrame.end().getTime());
 	}
 
 	public List<String> showThreads() {
@@ -92,6 +278,8 @@ public class ServiceUtils {
 		Optional<? extends Quote> firstQuote = Optional
 				.ofNullable(this.myMongoRepository.findOne(query, colType).block());
 		query = new Query();
+		query.addCriteria(Criteria.where(DtoUtils.CREATEDAT).lt(Date.from(LocalDate.now()
+				.minusDays(this.reconcileDays).atStartOfDay().atZone(ZoneId.systemDefault()).toInstant())));
 		query.with(Sort.by(DtoUtils.CREATEDAT).descending());
 		Optional<? extends Quote> lastHourQuote = Optional
 				.ofNullable(this.myMongoRepository.findOne(query, colType, colName).block());
@@ -111,8 +299,12 @@ public class ServiceUtils {
 		Calendar begin = Calendar.getInstance();
 		Calendar end = Calendar.getInstance();
 		begin.setTime(globalBeginn.getTime());
+		if (!hour) {
+			begin.set(Calendar.HOUR_OF_DAY, 0);
+		}
 		begin.set(Calendar.MINUTE, 0);
 		begin.set(Calendar.SECOND, 0);
+		begin.set(Calendar.MILLISECOND, 0);
 		end.setTime(begin.getTime());
 		end.add(Calendar.DAY_OF_YEAR, 1);
 		return new MyTimeFrame(begin, end);
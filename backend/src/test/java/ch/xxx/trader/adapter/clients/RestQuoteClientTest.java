@@ -0,0 +1,45 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.clients;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.xxx.trader.domain.model.entity.QuoteCbAccessors;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+
+public class RestQuoteClientTest {
+	@Test
+	public void parseCoinbaseRates() throws IOException {
+		String json = "{\"warnings\":[{\"id\":\"rates\",\"message\":\"x\"}],\"data\":{\"currency\":\"BTC\","
+				+ "\"meta\":{\"usd\":\"1\"},\"rates\":{\"USD\":\"26512.245\",\"EUR\":\"24980.5\",\"1INCH\":\"99000\","
+				+ "\"TRY\":\"712345.1\",\"UNKNOWN\":\"7\",\"ETH\":16.25}},\"rates\":{\"LTC\":\"1\"}}";
+		QuoteCbRates quote = RestQuoteClient
+				.parseCoinbaseRates(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertEquals(QuoteCbAccessors.size(), quote.values().length);
+		Assertions.assertEquals(26512.245, quote.getRate("usd"));
+		Assertions.assertEquals(24980.5, quote.getRate("eur"));
+		Assertions.assertEquals(99000.0, quote.getRate("1inch"));
+		Assertions.assertEquals(712345.1, quote.getRate("try"));
+		Assertions.assertEquals(16.25, quote.getRate("eth"));
+		Assertions.assertTrue(Double.isNaN(quote.getRate("ltc")));
+		Assertions.assertEquals("26512.245", quote.toQuoteCb().getUsd().toPlainString());
+	}
+}
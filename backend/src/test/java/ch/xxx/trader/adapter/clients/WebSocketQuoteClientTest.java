@@ -0,0 +1,91 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.clients;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.xxx.trader.domain.model.entity.QuoteBf;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+public class WebSocketQuoteClientTest {
+	private final AtomicInteger connections = new AtomicInteger();
+	private final Set<String> resubscribedSymbols = ConcurrentHashMap.newKeySet();
+	private DisposableServer server;
+
+	@BeforeEach
+	public void startServer() {
+		this.server = HttpServer.create().host("localhost").port(0).route(routes -> routes.ws("/ws/2", (in, out) -> {
+			int connection = this.connections.incrementAndGet();
+			AtomicInteger channels = new AtomicInteger();
+			Flux<String> subscriptions = in.receive().asString();
+			// the first connection is closed after one ticker to force a reconnect
+			subscriptions = connection == 1 ? subscriptions.take(1) : subscriptions;
+			return out.sendString(subscriptions.concatMap(msg -> {
+				String symbol = msg.replaceAll(".*\"symbol\":\"t([A-Z]+)\".*", "$1");
+				if (connection > 1) {
+					this.resubscribedSymbols.add(symbol);
+				}
+				int chanId = channels.incrementAndGet();
+				return Flux.just(
+						String.format("{\"event\":\"subscribed\",\"channel\":\"ticker\",\"chanId\":%d,\"symbol\":\"t%s\",\"pair\":\"%s\"}",
+								chanId, symbol, symbol),
+						String.format("[%d,\"hb\"]", chanId),
+						String.format("[%d,[100.0,1.5,102.0,2.5,-1.0,-0.01,101.0,1234.5,110.0,90.0]]", chanId));
+			}).concatWith(connection == 1 ? Flux.empty() : Flux.never()));
+		})).bindNow();
+	}
+
+	@AfterEach
+	public void stopServer() {
+		this.server.disposeNow();
+	}
+
+	@Test
+	public void streamQuotesBitfinexReconnects() {
+		WebSocketQuoteClient client = new WebSocketQuoteClient(new ObjectMapper(),
+				String.format("ws://localhost:%d/ws/2", this.server.port()));
+		List<QuoteBf> quotes = client.streamQuotesBitfinex(List.of("btcusd", "ethusd")).take(3).collectList()
+				.block(Duration.ofSeconds(10L));
+		Assertions.assertEquals(3, quotes.size());
+		Assertions.assertEquals(2, this.connections.get());
+		Assertions.assertEquals(Set.of("BTCUSD", "ETHUSD"), this.resubscribedSymbols);
+		Assertions.assertEquals(Set.of("btcusd", "ethusd"),
+				quotes.stream().map(QuoteBf::getPair).collect(Collectors.toSet()));
+		QuoteBf quote = quotes.get(0);
+		Assertions.assertEquals(new BigDecimal("101.0"), quote.getMid());
+		Assertions.assertEquals(new BigDecimal("100.0"), quote.getBid());
+		Assertions.assertEquals(new BigDecimal("102.0"), quote.getAsk());
+		Assertions.assertEquals(new BigDecimal("101.0"), quote.getLast_price());
+		Assertions.assertEquals(new BigDecimal("90.0"), quote.getLow());
+		Assertions.assertEquals(new BigDecimal("110.0"), quote.getHigh());
+		Assertions.assertEquals(new BigDecimal("1234.5"), quote.getVolume());
+	}
+}
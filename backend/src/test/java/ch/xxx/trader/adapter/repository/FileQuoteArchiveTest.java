@@ -0,0 +1,56 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.repository;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileQuoteArchiveTest {
+	@TempDir
+	private Path archiveDir;
+
+	@Test
+	public void segmentsAreSortedAndMerged() {
+		FileQuoteArchive fileQuoteArchive = new FileQuoteArchive(this.archiveDir.toString());
+		LocalDate day = LocalDate.of(2024, 3, 1);
+		Document ethQuote = this.createQuote("ethusd", 1000L, "1.5");
+		Document btcQuote = this.createQuote("btcusd", 2000L, "65000.25");
+		Document earlyBtcQuote = this.createQuote("btcusd", 1000L, "64000.75");
+		Assertions.assertEquals(2L, fileQuoteArchive.write("quoteBs", day, List.of(ethQuote, btcQuote)).block());
+		// writing the day again adds the new documents and keeps the archived ones once
+		Assertions.assertEquals(2L,
+				fileQuoteArchive.write("quoteBs", day, List.of(earlyBtcQuote, btcQuote)).block());
+		List<Document> archived = fileQuoteArchive.read("quoteBs", day).collectList().block();
+		Assertions.assertEquals(List.of(earlyBtcQuote, btcQuote, ethQuote), archived);
+		Assertions.assertEquals(new Decimal128(new BigDecimal("64000.75")), archived.get(0).get("last"));
+		Assertions.assertEquals(List.of(day), fileQuoteArchive.days("quoteBs").collectList().block());
+		Assertions.assertTrue(fileQuoteArchive.read("quoteBf", day).collectList().block().isEmpty());
+	}
+
+	private Document createQuote(String pair, long createdAt, String last) {
+		return new Document("pair", pair).append("createdAt", new Date(createdAt)).append("last",
+				new Decimal128(new BigDecimal(last)));
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.adapter.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+import ch.xxx.trader.domain.common.QuoteCbCodec;
+import ch.xxx.trader.domain.model.entity.QuoteCbAccessors;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import reactor.core.publisher.Flux;
+
+@ExtendWith(MockitoExtension.class)
+public class QuoteCbChainReaderTest {
+	private static final String CB_COL = "quoteCb";
+	private final QuoteCbCodec quoteCbCodec = new QuoteCbCodec(List.of(QuoteCbAccessors.FIELDS));
+	@Mock
+	private ReactiveMongoOperations operations;
+
+	@Test
+	public void decodeReadStartingMidHour() {
+		double[][] rates = new double[4][];
+		for (int i = 0; i < rates.length; i++) {
+			rates[i] = QuoteCbRates.createEmptyRates();
+			rates[i][0] = 100.0 + i;
+			rates[i][5] = 0.5 * i;
+		}
+		int[] storedIndexes = this.quoteCbCodec.storedIndexes(this.quoteCbCodec.getVersion()).get();
+		QuoteCbRates[] frames = new QuoteCbRates[rates.length];
+		for (int i = 0; i < frames.length; i++) {
+			frames[i] = QuoteCbRates.packed(new Date(i * 60000L),
+					this.quoteCbCodec.encode(rates[i], i == 0 ? null : rates[i - 1]), storedIndexes, new Date(0L),
+					i == 0 ? null : new Date((i - 1) * 60000L));
+		}
+		Mockito.when(this.operations.find(ArgumentMatchers.any(Query.class), ArgumentMatchers.eq(QuoteCbRates.class),
+				ArgumentMatchers.eq(CB_COL))).thenReturn(Flux.just(frames[0], frames[1]));
+		List<QuoteCbRates> result = new QuoteCbChainReader(this.operations)
+				.decode(Flux.just(frames[2], frames[3]), QuoteCbRates.class, CB_COL).collectList().block();
+		Assertions.assertEquals(2, result.size());
+		Assertions.assertArrayEquals(rates[2], result.get(0).values());
+		Assertions.assertArrayEquals(rates[3], result.get(1).values());
+		Assertions.assertFalse(result.get(1).isBrokenChain());
+		Mockito.verify(this.operations, Mockito.times(1)).find(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq(QuoteCbRates.class), ArgumentMatchers.eq(CB_COL));
+	}
+}
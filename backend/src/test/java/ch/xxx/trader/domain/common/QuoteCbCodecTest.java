@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.domain.common;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.xxx.trader.domain.model.entity.QuoteCbAccessors;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+
+public class QuoteCbCodecTest {
+	private final QuoteCbCodec quoteCbCodec = new QuoteCbCodec(List.of(QuoteCbAccessors.FIELDS));
+
+	@Test
+	public void fullFrameRoundTrip() {
+		double[] rates = this.createRates(new Random(3L));
+		byte[] data = this.quoteCbCodec.encode(rates, null);
+		int[] storedIndexes = this.quoteCbCodec.storedIndexes(this.quoteCbCodec.getVersion()).get();
+		Assertions.assertArrayEquals(rates, QuoteCbCodec.decode(data, storedIndexes, null));
+		QuoteCbRates quote = QuoteCbRates.packed(new Date(), data, storedIndexes, null, null);
+		Assertions.assertEquals(rates[QuoteCbAccessors.indexOf("usd")], quote.getRate("usd"));
+		Assertions.assertTrue(Double.isNaN(quote.getRate(1)));
+	}
+
+	@Test
+	public void deltaChainRoundTrip() {
+		Random random = new Random(5L);
+		double[] first = this.createRates(random);
+		double[] second = first.clone();
+		for (int i = 0; i < second.length; i += 7) {
+			second[i] = Double.isNaN(second[i]) ? 1.5 : second[i] * (1.0 + random.nextGaussian() * 0.001);
+		}
+		second[3] = Double.NaN;
+		int[] storedIndexes = this.quoteCbCodec.storedIndexes(this.quoteCbCodec.getVersion()).get();
+		byte[] full = this.quoteCbCodec.encode(first, null);
+		byte[] delta = this.quoteCbCodec.encode(second, first);
+		Assertions.assertTrue(delta.length < full.length / 2,
+				String.format("delta %d bytes, full %d bytes", delta.length, full.length));
+		QuoteCbRates key = QuoteCbRates.packed(new Date(0L), full, storedIndexes, new Date(0L), null);
+		QuoteCbRates next = QuoteCbRates.packed(new Date(60000L), delta, storedIndexes, new Date(0L), new Date(0L));
+		Assertions.assertTrue(next.isBrokenChain());
+		QuoteCbRates decoded = next.decode(key);
+		Assertions.assertEquals(second[7], decoded.getRate(7));
+		Assertions.assertArrayEquals(second, decoded.values());
+		Assertions.assertTrue(next.decode(null).isBrokenChain());
+		Assertions.assertTrue(next.decode(decoded).isBrokenChain());
+	}
+
+	@Test
+	public void decodeOlderDictionary() {
+		List<String> oldDictionary = List.of("eur", "gone", "usd");
+		int version = this.quoteCbCodec.register(QuoteCbCodec.dictionaryVersion(oldDictionary), oldDictionary);
+		byte[] data = new QuoteCbCodec(oldDictionary).encode(new double[] { 0.9, 7.0, Double.NaN }, null);
+		QuoteCbRates quote = QuoteCbRates.packed(new Date(), data, this.quoteCbCodec.storedIndexes(version).get(),
+				null, null);
+		Assertions.assertEquals(0.9, quote.getRate("eur"));
+		Assertions.assertTrue(Double.isNaN(quote.getRate("usd")));
+		Assertions.assertEquals(1L, Arrays.stream(quote.values()).filter(rate -> !Double.isNaN(rate))
+				.count());
+	}
+
+	private double[] createRates(Random random) {
+		double[] rates = QuoteCbRates.createEmptyRates();
+		for (int i = 0; i < rates.length; i++) {
+			rates[i] = i % 11 == 1 ? Double.NaN : random.nextDouble() * Math.pow(10, random.nextInt(8));
+		}
+		return rates;
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.domain.model.entity;
+
+import java.math.BigDecimal;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class QuoteCbAccessorsTest {
+
+	@Test
+	public void accessorTable() {
+		long bigDecimalFields = Stream.of(QuoteCb.class.getDeclaredFields())
+				.filter(field -> BigDecimal.class.equals(field.getType())).count();
+		Assertions.assertEquals(bigDecimalFields, QuoteCbAccessors.size());
+		QuoteCb quoteCb = new QuoteCb();
+		quoteCb.set1Inch(new BigDecimal("1"));
+		quoteCb.setSuper(new BigDecimal("2"));
+		quoteCb.setTry(new BigDecimal("3"));
+		quoteCb.setUsd(new BigDecimal("4"));
+		Assertions.assertEquals(new BigDecimal("1"), QuoteCbAccessors.get(quoteCb, QuoteCbAccessors.indexOf("1inch")));
+		Assertions.assertEquals(new BigDecimal("2"), QuoteCbAccessors.get(quoteCb, QuoteCbAccessors.indexOf("super")));
+		Assertions.assertEquals(new BigDecimal("3"), QuoteCbAccessors.get(quoteCb, QuoteCbAccessors.indexOf("try1")));
+		Assertions.assertEquals(new BigDecimal("4"), QuoteCbAccessors.get(quoteCb, QuoteCbAccessors.indexOf("USD")));
+		QuoteCbAccessors.set(quoteCb, QuoteCbAccessors.indexOf("inch1"), new BigDecimal("5"));
+		Assertions.assertEquals(new BigDecimal("5"), quoteCb.get1inch());
+		Assertions.assertEquals(-1, QuoteCbAccessors.indexOf("unknown"));
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.xxx.trader.domain.common.CandleResolution;
+import ch.xxx.trader.domain.model.entity.Candle;
+import ch.xxx.trader.usecase.services.CandleService;
+import reactor.core.publisher.Flux;
+
+public class CandleAggregatorTest {
+	private static final long MINUTE = 60000L;
+
+	@Test
+	public void aggregateMinuteCandles() {
+		Date begin = CandleResolution.DAY1.bucketBegin(new Date());
+		List<Candle> ticks = List.of(this.createTick("btcusd", begin, 0L, "10", "1"),
+				this.createTick("ethusd", begin, 1000L, "1", null), this.createTick("btcusd", begin, 2000L, "12", "2"),
+				this.createTick("btcusd", begin, 3000L, "8", "3"), this.createTick("btcusd", begin, 4000L, "9", null),
+				this.createTick("btcusd", begin, MINUTE, "11", "4"));
+		List<Candle> result = new CandleAggregator(CandleResolution.MINUTE1).aggregate(Flux.fromIterable(ticks))
+				.collectList().block();
+		Assertions.assertEquals(3, result.size());
+		Candle candle = result.get(0);
+		Assertions.assertEquals("btcusd", candle.getPair());
+		Assertions.assertEquals("1m", candle.getResolution());
+		Assertions.assertEquals(begin, candle.getCreatedAt());
+		Assertions.assertEquals(new BigDecimal("10"), candle.getOpen());
+		Assertions.assertEquals(new BigDecimal("12"), candle.getHigh());
+		Assertions.assertEquals(new BigDecimal("8"), candle.getLow());
+		Assertions.assertEquals(new BigDecimal("9"), candle.getClose());
+		Assertions.assertEquals(new BigDecimal("3"), candle.getVolume());
+		Assertions.assertEquals(4L, candle.getCount());
+		Assertions.assertEquals(new Date(begin.getTime() + MINUTE), result.get(1).getCreatedAt());
+		Assertions.assertEquals("ethusd", result.get(2).getPair());
+	}
+
+	@Test
+	public void aggregateHigherResolution() {
+		Date begin = CandleResolution.DAY1.bucketBegin(new Date());
+		List<Candle> minuteCandles = Flux.range(0, 60)
+				.map(minute -> new Candle("btcusd", "1m", new Date(begin.getTime() + minute * MINUTE),
+						BigDecimal.valueOf(minute), BigDecimal.valueOf(minute + 1), BigDecimal.valueOf(minute - 1),
+						BigDecimal.valueOf(minute), null, 2L))
+				.collectList().block();
+		List<Candle> result = new CandleAggregator(CandleResolution.MINUTE15)
+				.aggregate(Flux.fromIterable(minuteCandles)).collectList().block();
+		Assertions.assertEquals(4, result.size());
+		Assertions.assertEquals(new BigDecimal("15"), result.get(1).getOpen());
+		Assertions.assertEquals(new BigDecimal("30"), result.get(1).getHigh());
+		Assertions.assertEquals(new BigDecimal("14"), result.get(1).getLow());
+		Assertions.assertEquals(new BigDecimal("29"), result.get(1).getClose());
+		Assertions.assertEquals(30L, result.get(1).getCount());
+		Assertions.assertEquals(new Date(begin.getTime() + 45 * MINUTE), result.get(3).getCreatedAt());
+	}
+
+	private Candle createTick(String pair, Date begin, long offset, String price, String volume) {
+		return CandleService.createTicks(pair, new Date(begin.getTime() + offset), new BigDecimal(price),
+				volume == null ? null : new BigDecimal(volume)).get(0);
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class QuoteResponsesTest {
+	private static final QuoteVersion VERSION = new QuoteVersion("\"a-b\"", new Date(60000L),
+			Duration.ofMinutes(5L));
+
+	@Test
+	public void notModifiedWithoutQuotes() {
+		HttpHeaders requestHeaders = new HttpHeaders();
+		requestHeaders.setIfNoneMatch("W/\"a-b\"");
+		ResponseEntity<List<String>> response = QuoteResponses
+				.<String>createTimeFrameResponse(requestHeaders, Mono.just(VERSION),
+						() -> Assertions.fail("The quotes must not be read"))
+				.block();
+		Assertions.assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+		Assertions.assertEquals("\"a-b\"", response.getHeaders().getETag());
+		Assertions.assertEquals("max-age=300, public", response.getHeaders().getCacheControl());
+	}
+
+	@Test
+	public void modifiedWithQuotes() {
+		HttpHeaders requestHeaders = new HttpHeaders();
+		requestHeaders.setIfNoneMatch("\"a-c\"");
+		requestHeaders.setIfModifiedSince(60000L);
+		ResponseEntity<List<String>> response = QuoteResponses
+				.createTimeFrameResponse(requestHeaders, Mono.just(VERSION), () -> Flux.just("quote")).block();
+		Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+		Assertions.assertEquals(List.of("quote"), response.getBody());
+		Assertions.assertEquals(60000L, response.getHeaders().getLastModified());
+		HttpHeaders sinceHeaders = new HttpHeaders();
+		sinceHeaders.setIfModifiedSince(60000L);
+		Assertions.assertTrue(QuoteResponses.isNotModified(sinceHeaders, VERSION));
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.xxx.trader.usecase.common.QuoteRingBuffer.Rows;
+
+public class QuoteRingBufferTest {
+
+	@Test
+	public void overwriteOldestRows() {
+		QuoteRingBuffer ring = new QuoteRingBuffer(3, 2);
+		for (long createdAt = 1L; createdAt <= 5L; createdAt++) {
+			Assertions.assertTrue(ring.add(createdAt, new double[] { createdAt, createdAt * 10 }));
+		}
+		Rows rows = ring.copySince(Long.MIN_VALUE);
+		Assertions.assertArrayEquals(new long[] { 3L, 4L, 5L }, rows.createdAt());
+		Assertions.assertArrayEquals(new double[] { 5.0, 50.0 }, rows.row(2));
+		Assertions.assertArrayEquals(new long[] { 5L }, ring.copySince(4L).createdAt());
+		Assertions.assertEquals(5L, ring.newest());
+	}
+
+	@Test
+	public void mergeOlderRows() {
+		QuoteRingBuffer ring = new QuoteRingBuffer(4, 1);
+		ring.add(10L, new double[] { 10.0 });
+		ring.add(30L, new double[] { 30.0 });
+		ring.add(40L, new double[] { 40.0 });
+		Assertions.assertTrue(ring.add(20L, new double[] { 20.0 }));
+		Assertions.assertFalse(ring.add(30L, new double[] { 31.0 }));
+		Assertions.assertTrue(ring.add(25L, new double[] { 25.0 }));
+		Assertions.assertFalse(ring.add(5L, new double[] { 5.0 }));
+		Rows rows = ring.copySince(Long.MIN_VALUE);
+		Assertions.assertArrayEquals(new long[] { 20L, 25L, 30L, 40L }, rows.createdAt());
+		Assertions.assertArrayEquals(new double[] { 20.0, 25.0, 30.0, 40.0 }, rows.columns()[0]);
+	}
+}
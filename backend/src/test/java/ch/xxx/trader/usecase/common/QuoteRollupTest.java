@@ -0,0 +1,262 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.common;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import ch.xxx.trader.domain.model.entity.QuoteBf;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.domain.model.entity.QuoteCbAccessors;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+import ch.xxx.trader.usecase.common.QuoteRollup.Accumulation;
+import reactor.core.publisher.Flux;
+
+public class QuoteRollupTest {
+	private static final long HOUR = 3600000L;
+	private static final List<Function<QuoteBs, BigDecimal>> BS_VALUES = List.of(QuoteBs::getHigh, QuoteBs::getLast,
+			QuoteBs::getBid, QuoteBs::getVwap, QuoteBs::getVolume, QuoteBs::getLow, QuoteBs::getAsk, QuoteBs::getOpen);
+
+	@Test
+	public void rollupHourBuckets() {
+		QuoteRollup<QuoteBf> quoteRollup = this.createRollup(List.of(new Date(0L), new Date(HOUR),
+				new Date(2 * HOUR), new Date(3 * HOUR)));
+		List<QuoteBf> quotes = List.of(this.createQuote("btcusd", 0L, "100"), this.createQuote("btcusd", 1000L, "10"),
+				this.createQuote("ethusd", 2000L, "1"), this.createQuote("btcusd", 3000L, "20"),
+				this.createQuote("ethusd", 4000L, "2"), this.createQuote("btcusd", 5000L, "30"),
+				this.createQuote("ethusd", HOUR, "100"), this.createQuote("btcusd", HOUR + 1000L, "40"),
+				this.createQuote("btcusd", 2 * HOUR + 1000L, "1"), this.createQuote("btcusd", 2 * HOUR + 2000L, "2"),
+				this.createQuote("btcusd", 2 * HOUR + 3000L, "4"));
+		List<QuoteBf> result = quoteRollup.rollup(Flux.fromIterable(quotes)).collectList().block();
+		Assertions.assertEquals(2, result.size());
+		Assertions.assertEquals("btcusd", result.get(0).getPair());
+		Assertions.assertEquals(new Date(0L), result.get(0).getCreatedAt());
+		Assertions.assertEquals(new BigDecimal("20.0000000000"), result.get(0).getMid());
+		Assertions.assertEquals(new Date(2 * HOUR), result.get(1).getCreatedAt());
+		Assertions.assertEquals(new BigDecimal("2.3333333333"), result.get(1).getMid());
+	}
+
+	@Test
+	public void rollupInterleavedPairs() {
+		QuoteRollup<QuoteBf> quoteRollup = this.createRollup(List.of(new Date(0L), new Date(HOUR),
+				new Date(2 * HOUR)));
+		List<QuoteBf> quotes = List.of(this.createQuote("btcusd", 1000L, "10"),
+				this.createQuote("ethusd", 1000L, "1"), this.createQuote("btcusd", 2000L, "20"),
+				this.createQuote("ethusd", 2000L, "2"), this.createQuote("ethusd", HOUR + 1000L, "100"),
+				this.createQuote("btcusd", HOUR - 1000L, "30"), this.createQuote("ethusd", HOUR - 500L, "3"));
+		List<QuoteBf> result = new ArrayList<>();
+		quotes.forEach(quote -> result.addAll(quoteRollup.add(quote)));
+		result.addAll(quoteRollup.finish());
+		Assertions.assertEquals(1, result.size());
+		Assertions.assertEquals("btcusd", result.get(0).getPair());
+		Assertions.assertEquals(new BigDecimal("20.0000000000"), result.get(0).getMid());
+	}
+
+	@Test
+	public void rollupDayBucket() {
+		QuoteRollup<QuoteBf> quoteRollup = this.createRollup(List.of(new Date(0L), new Date(24 * HOUR)));
+		List<QuoteBf> result = quoteRollup.rollup(Flux.range(1, 24 * 60)
+				.map(minute -> this.createQuote("btcusd", minute * 60000L, minute.toString()))).collectList().block();
+		Assertions.assertEquals(1, result.size());
+		Assertions.assertEquals(new BigDecimal("720.0000000000"), result.get(0).getMid());
+	}
+
+	@Test
+	public void rollupWeightedBuckets() {
+		for (Accumulation accumulation : Accumulation.values()) {
+			QuoteRollup<QuoteBf> quoteRollup = QuoteRollup.fromBuckets(createdAt -> Optional.of(new Date(0L)),
+					QuoteBf::getPair, List.of(QuoteBf::getMid), (pair, bucketBegin, avgs) -> {
+						QuoteBf quoteBf = new QuoteBf(avgs[0], null, null, null, null, null, null, "");
+						quoteBf.setPair(pair);
+						quoteBf.setCreatedAt(bucketBegin);
+						return quoteBf;
+					}, accumulation);
+			QuoteBf first = this.createQuote("btcusd", 0L, "10");
+			first.setCount(3L);
+			QuoteBf second = this.createQuote("btcusd", HOUR, "40");
+			QuoteBf third = this.createQuote("btcusd", 2 * HOUR, "20");
+			third.setCount(2L);
+			List<QuoteBf> result = quoteRollup.rollup(Flux.just(first, second, third)).collectList().block();
+			Assertions.assertEquals(1, result.size());
+			Assertions.assertEquals(new Date(0L), result.get(0).getCreatedAt());
+			Assertions.assertEquals(6L, result.get(0).getCount());
+			Assertions.assertEquals(new BigDecimal("18.3333333333"), result.get(0).getMid(), accumulation.name());
+		}
+	}
+
+	@Test
+	public void compensatedMatchesExact() {
+		this.assertMatchesExact(Accumulation.COMPENSATED);
+	}
+
+	@Test
+	public void compensatedAllocatesLess() {
+		List<QuoteBs> quotes = this.createBsQuotes(new Random(7L), 24 * 60);
+		ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assumptions.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+		long[] allocated = new long[Accumulation.values().length];
+		for (int run = 0; run < 5; run++) {
+			for (Accumulation accumulation : Accumulation.values()) {
+				QuoteRollup<QuoteBs> quoteRollup = this.createBsRollup(accumulation);
+				long start = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+				quotes.forEach(quoteRollup::add);
+				quoteRollup.finish();
+				allocated[accumulation.ordinal()] = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId())
+						- start;
+			}
+		}
+		Assertions.assertTrue(
+				allocated[Accumulation.COMPENSATED.ordinal()] < allocated[Accumulation.EXACT.ordinal()]);
+	}
+
+	@Test
+	public void columnarMatchesExact() {
+		this.assertMatchesExact(Accumulation.COLUMNAR);
+	}
+
+	@Test
+	public void columnarMatchesExactForVectorQuotes() {
+		Random random = new Random(11L);
+		List<QuoteCbRates> quotes = new ArrayList<>();
+		for (int minute = 1; minute < 24 * 60; minute++) {
+			double[] rates = QuoteCbRates.createEmptyRates();
+			for (int i = 0; i < rates.length; i++) {
+				rates[i] = i % 7 == 0 ? Double.NaN : random.nextDouble() * Math.pow(10, i % 12 - 6);
+			}
+			quotes.add(new QuoteCbRates(new Date(minute * 60000L), rates));
+		}
+		List<QuoteCbRates> exact = this.createCbRollup(Accumulation.EXACT).rollup(Flux.fromIterable(quotes))
+				.collectList().block();
+		List<QuoteCbRates> result = this.createCbRollup(Accumulation.COLUMNAR).rollup(Flux.fromIterable(quotes))
+				.collectList().block();
+		Assertions.assertEquals(1, result.size());
+		for (int i = 0; i < QuoteCbAccessors.size(); i++) {
+			double exactValue = exact.get(0).getRate(i);
+			double resultValue = result.get(0).getRate(i);
+			Assertions.assertEquals(exactValue, resultValue, Math.max(Math.abs(exactValue) * 1E-12, 1E-10));
+		}
+	}
+
+	@Test
+	public void columnSumsMatchScalar() {
+		Random random = new Random(3L);
+		int size = QuoteCbAccessors.size();
+		ColumnSums columnSums = ColumnSums.factory().apply(size);
+		ColumnSums scalarColumnSums = new ScalarColumnSums(size);
+		for (int row = 0; row < 1000; row++) {
+			double[] values = new double[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = i % 5 == 0 ? Double.NaN : random.nextGaussian() * Math.pow(10, i % 16 - 8);
+			}
+			columnSums.addRow(values, row % 3 + 1L);
+			scalarColumnSums.addRow(values, row % 3 + 1L);
+		}
+		for (int i = 0; i < size; i++) {
+			Assertions.assertEquals(scalarColumnSums.sum(i), columnSums.sum(i));
+		}
+	}
+
+	private void assertMatchesExact(Accumulation accumulation) {
+		List<QuoteBs> quotes = this.createBsQuotes(new Random(42L), 24 * 60);
+		List<QuoteBs> exact = this.createBsRollup(Accumulation.EXACT).rollup(Flux.fromIterable(quotes)).collectList()
+				.block();
+		List<QuoteBs> result = this.createBsRollup(accumulation).rollup(Flux.fromIterable(quotes)).collectList()
+				.block();
+		Assertions.assertEquals(exact.size(), result.size());
+		for (int i = 0; i < exact.size(); i++) {
+			for (Function<QuoteBs, BigDecimal> value : BS_VALUES) {
+				BigDecimal exactValue = value.apply(exact.get(i));
+				BigDecimal resultValue = value.apply(result.get(i));
+				BigDecimal tolerance = exactValue.abs().multiply(new BigDecimal("1E-12")).max(new BigDecimal("1E-10"));
+				Assertions.assertTrue(exactValue.subtract(resultValue).abs().compareTo(tolerance) <= 0,
+						String.format("%s != %s", exactValue, resultValue));
+			}
+		}
+	}
+
+	private QuoteRollup<QuoteCbRates> createCbRollup(Accumulation accumulation) {
+		List<Function<QuoteCbRates, BigDecimal>> values = new ArrayList<>();
+		for (int i = 0; i < QuoteCbAccessors.size(); i++) {
+			int index = i;
+			values.add(quote -> Double.isNaN(quote.getRate(index)) ? null : BigDecimal.valueOf(quote.getRate(index)));
+		}
+		return new QuoteRollup<>(List.of(new Date(0L), new Date(24 * HOUR)), quote -> "", values,
+				(pair, bucketBegin, avgs) -> new QuoteCbRates(bucketBegin,
+						Arrays.stream(avgs).mapToDouble(BigDecimal::doubleValue).toArray()),
+				accumulation);
+	}
+
+	private QuoteRollup<QuoteBs> createBsRollup(Accumulation accumulation) {
+		return new QuoteRollup<>(List.of(new Date(0L), new Date(24 * HOUR)), QuoteBs::getPair, BS_VALUES,
+				(pair, bucketBegin, avgs) -> {
+					QuoteBs quoteBs = new QuoteBs(avgs[0], avgs[1], bucketBegin, avgs[2], avgs[3], avgs[4], avgs[5],
+							avgs[6], avgs[7]);
+					quoteBs.setPair(pair);
+					quoteBs.setCreatedAt(bucketBegin);
+					return quoteBs;
+				}, accumulation);
+	}
+
+	private List<QuoteBs> createBsQuotes(Random random, int minutes) {
+		List<QuoteBs> quotes = new ArrayList<>();
+		for (int minute = 1; minute < minutes; minute++) {
+			for (String pair : List.of("btcusd", "xrpeur")) {
+				BigDecimal[] values = new BigDecimal[8];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = BigDecimal.valueOf(random.nextDouble() * Math.pow(10, i * 2 - 6)).setScale(8,
+							RoundingMode.HALF_UP);
+				}
+				QuoteBs quoteBs = new QuoteBs(values[0], values[1], null, values[2], values[3], values[4], values[5],
+						values[6], values[7]);
+				quoteBs.setPair(pair);
+				quoteBs.setCreatedAt(new Date(minute * 60000L));
+				quotes.add(quoteBs);
+			}
+		}
+		return quotes;
+	}
+
+	private QuoteRollup<QuoteBf> createRollup(List<Date> boundaries) {
+		List<Function<QuoteBf, BigDecimal>> values = List.of(QuoteBf::getMid);
+		return new QuoteRollup<>(boundaries, QuoteBf::getPair, values, (pair, bucketBegin, avgs) -> {
+			QuoteBf quoteBf = new QuoteBf(avgs[0], null, null, null, null, null, null, "");
+			quoteBf.setPair(pair);
+			quoteBf.setCreatedAt(bucketBegin);
+			return quoteBf;
+		});
+	}
+
+	private QuoteBf createQuote(String pair, long createdAt, String mid) {
+		QuoteBf quoteBf = new QuoteBf(new BigDecimal(mid), null, null, null, null, null, null, "");
+		quoteBf.setPair(pair);
+		quoteBf.setCreatedAt(new Date(createdAt));
+		return quoteBf;
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.result.UpdateResult;
+
+import ch.xxx.trader.domain.common.QuoteExchange;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import ch.xxx.trader.usecase.services.LatestQuoteService.LatestDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class LatestQuoteServiceTest {
+	@Mock
+	private MyMongoRepository myMongoRepository;
+
+	@Test
+	public void keepNewestQuoteInMemory() {
+		Mockito.when(this.myMongoRepository.upsert(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(LatestQuoteService.LATEST_QUOTE_COL)))
+				.thenReturn(Mono.just(UpdateResult.acknowledged(0L, 0L, null)));
+		Mockito.when(this.myMongoRepository.find(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq(Document.class), ArgumentMatchers.eq(LatestQuoteService.LATEST_QUOTE_COL)))
+				.thenReturn(Flux.empty());
+		LatestQuoteService latestQuoteService = new LatestQuoteService(this.myMongoRepository, 10000L);
+		latestQuoteService.register(new LatestDefinition<>(QuoteExchange.BITSTAMP, QuoteBs.class, QuoteBs::getPair));
+		QuoteBs newer = this.createQuote("btcusd", 2000L);
+		latestQuoteService.publish(newer).block();
+		latestQuoteService.publish(this.createQuote("btcusd", 1000L)).block();
+		Assertions.assertSame(newer, latestQuoteService.findLatest(QuoteBs.class, "btcusd").block());
+		Mockito.verify(this.myMongoRepository, Mockito.times(1)).upsert(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(LatestQuoteService.LATEST_QUOTE_COL));
+		Mockito.verify(this.myMongoRepository, Mockito.never()).findOne(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.any(), ArgumentMatchers.anyString());
+	}
+
+	@Test
+	public void skipOlderQuoteInCollection() {
+		Mockito.when(this.myMongoRepository.upsert(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(LatestQuoteService.LATEST_QUOTE_COL)))
+				.thenReturn(Mono.error(new DuplicateKeyException("newer quote stored")));
+		LatestQuoteService latestQuoteService = new LatestQuoteService(this.myMongoRepository, 10000L);
+		latestQuoteService.register(new LatestDefinition<>(QuoteExchange.BITSTAMP, QuoteBs.class, QuoteBs::getPair));
+		QuoteBs quote = this.createQuote("btcusd", 1000L);
+		Assertions.assertSame(quote, latestQuoteService.publish(quote).block());
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		Mockito.verify(this.myMongoRepository).upsert(query.capture(), ArgumentMatchers.any(Update.class),
+				ArgumentMatchers.eq(LatestQuoteService.LATEST_QUOTE_COL));
+		Assertions.assertEquals(new Document("$lt", new Date(1000L)),
+				query.getValue().getQueryObject().get(DtoUtils.CREATEDAT));
+	}
+
+	private QuoteBs createQuote(String pair, long createdAt) {
+		QuoteBs quoteBs = new QuoteBs(BigDecimal.ONE, BigDecimal.ONE, new Date(createdAt), BigDecimal.ONE,
+				BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE);
+		quoteBs.setPair(pair);
+		quoteBs.setCreatedAt(new Date(createdAt));
+		return quoteBs;
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.query.Query;
+
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class MongoIndexServiceTest {
+	@Mock
+	private MyMongoRepository myMongoRepository;
+	@Mock
+	private ApplicationEventPublisher applicationEventPublisher;
+
+	@Test
+	public void collectionScanRefusesReadiness() {
+		Document ixscan = new Document("queryPlanner", new Document("winningPlan",
+				new Document("stage", "LIMIT").append("inputStage", new Document("stage", "FETCH").append("inputStage",
+						new Document("stage", "IXSCAN")))));
+		Document collscan = new Document("queryPlanner", new Document("winningPlan",
+				new Document("stage", "SORT").append("inputStage", new Document("stage", "COLLSCAN"))));
+		Mockito.when(this.myMongoRepository.ensureIndex(ArgumentMatchers.anyString(), ArgumentMatchers.anyList()))
+				.thenReturn(Mono.just("index"));
+		Mockito.when(
+				this.myMongoRepository.ensureUniqueIndex(ArgumentMatchers.anyString(), ArgumentMatchers.anyList()))
+				.thenReturn(Mono.just("uniqueIndex"));
+		Mockito.when(this.myMongoRepository.explain(ArgumentMatchers.any(Query.class), ArgumentMatchers.anyString()))
+				.thenAnswer(invocation -> Mono.just(
+						BitstampService.BS_HOUR_COL.equals(invocation.getArgument(1)) ? collscan : ixscan));
+		MongoIndexService mongoIndexService = new MongoIndexService(this.myMongoRepository,
+				this.applicationEventPublisher, true);
+		Set<String> collectionScans = mongoIndexService.ensureIndexes().block();
+		Assertions.assertEquals(Set.of(BitstampService.BS_HOUR_COL + List.of("pair", "createdAt"),
+				BitstampService.BS_HOUR_COL + List.of("pair", "updatedAt")), collectionScans);
+		List<MongoIndexService.IndexDefinition> indexDefinitions = mongoIndexService.createIndexDefinitions();
+		long uniqueIndexes = indexDefinitions.stream().filter(MongoIndexService.IndexDefinition::unique).count();
+		Assertions.assertEquals(16L, uniqueIndexes);
+		Assertions.assertTrue(this.findProbe(indexDefinitions, BitstampService.BS_COL).containsKey("$or"));
+		Assertions.assertFalse(this.findProbe(indexDefinitions, BitstampService.BS_HOUR_COL).containsKey("$or"));
+		Assertions.assertFalse(this.findProbe(indexDefinitions, CoinbaseService.CB_WEEK_COL).containsKey("$or"));
+		Mockito.verify(this.myMongoRepository, Mockito.times(indexDefinitions.size() - (int) uniqueIndexes))
+				.ensureIndex(ArgumentMatchers.anyString(), ArgumentMatchers.anyList());
+		Mockito.verify(this.myMongoRepository, Mockito.times((int) uniqueIndexes))
+				.ensureUniqueIndex(ArgumentMatchers.anyString(), ArgumentMatchers.anyList());
+		Mockito.verify(this.applicationEventPublisher)
+				.publishEvent(ArgumentMatchers.any(AvailabilityChangeEvent.class));
+	}
+
+	private Document findProbe(List<MongoIndexService.IndexDefinition> indexDefinitions, String colName) {
+		return indexDefinitions.stream()
+				.filter(indexDefinition -> colName.equals(indexDefinition.collectionName())
+						&& indexDefinition.fields().contains("createdAt") && indexDefinition.fields().size() <= 2)
+				.findFirst().map(indexDefinition -> indexDefinition.probe().getQueryObject()).orElseThrow();
+	}
+}
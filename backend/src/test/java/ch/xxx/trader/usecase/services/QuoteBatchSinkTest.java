@@ -0,0 +1,85 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Date;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import ch.xxx.trader.domain.common.MongoUtils;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class QuoteBatchSinkTest {
+	@Mock
+	private MyMongoRepository myMongoRepository;
+
+	@Test
+	public void emitAfterRetriedFlush() {
+		QuoteBs quote = this.createQuote();
+		Mockito.when(this.myMongoRepository.insertAll(ArgumentMatchers.any(),
+				ArgumentMatchers.eq(BitstampService.BS_COL)))
+				.thenReturn(Flux.error(new DataAccessResourceFailureException("unavailable")))
+				.thenReturn(Flux.just(quote));
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		QuoteBatchSink quoteBatchSink = this.createSink(meterRegistry);
+		Assertions.assertSame(quote, quoteBatchSink.emit(quote).block(Duration.ofSeconds(5L)));
+		Assertions.assertEquals(MongoUtils.minuteOf(quote.getCreatedAt()), quote.getMinute());
+		Mockito.verify(this.myMongoRepository, Mockito.times(2)).insertAll(ArgumentMatchers.any(),
+				ArgumentMatchers.eq(BitstampService.BS_COL));
+		Assertions.assertNull(meterRegistry.find("quote.batch.flush.failed").counter());
+	}
+
+	@Test
+	public void emitErrorAfterFailedFlush() {
+		Mockito.when(this.myMongoRepository.insertAll(ArgumentMatchers.any(),
+				ArgumentMatchers.eq(BitstampService.BS_COL)))
+				.thenReturn(Flux.error(new DataAccessResourceFailureException("unavailable")));
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		QuoteBatchSink quoteBatchSink = this.createSink(meterRegistry);
+		Assertions.assertThrows(DataAccessResourceFailureException.class,
+				() -> quoteBatchSink.emit(this.createQuote()).block(Duration.ofSeconds(5L)));
+		Mockito.verify(this.myMongoRepository, Mockito.times(3)).insertAll(ArgumentMatchers.any(),
+				ArgumentMatchers.eq(BitstampService.BS_COL));
+		Assertions.assertEquals(1.0, meterRegistry.counter("quote.batch.flush.failed", "collection",
+				BitstampService.BS_COL).count());
+	}
+
+	private QuoteBatchSink createSink(SimpleMeterRegistry meterRegistry) {
+		return new QuoteBatchSink(this.myMongoRepository, meterRegistry,
+				new QuoteBucketService(this.myMongoRepository, false, 500), 1, 10L, 2, 1L);
+	}
+
+	private QuoteBs createQuote() {
+		QuoteBs quoteBs = new QuoteBs(BigDecimal.ONE, BigDecimal.ONE, new Date(), BigDecimal.ONE, BigDecimal.ONE,
+				BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE);
+		quoteBs.setPair("btcusd");
+		quoteBs.setCreatedAt(new Date());
+		return quoteBs;
+	}
+}
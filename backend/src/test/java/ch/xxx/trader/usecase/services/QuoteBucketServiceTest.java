@@ -0,0 +1,145 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class QuoteBucketServiceTest {
+	private static final long HOUR = 3600000L;
+	@Mock
+	private MyMongoRepository myMongoRepository;
+
+	@Test
+	public void appendPushesOneUpdatePerPairAndHour() {
+		Mockito.when(this.myMongoRepository.upsert(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.any(Update.class), ArgumentMatchers.anyString()))
+				.thenReturn(Mono.just(UpdateResult.acknowledged(1L, 1L, null)));
+		QuoteBucketService quoteBucketService = new QuoteBucketService(this.myMongoRepository, true, 500);
+		List<QuoteBs> quotes = List.of(this.createQuote("btcusd", 10 * HOUR + 60000L),
+				this.createQuote("btcusd", 10 * HOUR + 120000L), this.createQuote("ethusd", 10 * HOUR + 60000L),
+				this.createQuote("btcusd", 11 * HOUR + 60000L));
+		Assertions.assertEquals(4L, quoteBucketService.append(BitstampService.BS_COL, quotes).block());
+		ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+		Mockito.verify(this.myMongoRepository, Mockito.times(3)).upsert(ArgumentMatchers.any(Query.class),
+				updates.capture(), ArgumentMatchers.eq(BitstampService.BS_COL + QuoteBucketService.BUCKET_SUFFIX));
+		MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+		MongoMappingContext mappingContext = new MongoMappingContext();
+		mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+		converter.setCustomConversions(conversions);
+		converter.afterPropertiesSet();
+		Document pushed = new UpdateMapper(converter).getMappedObject(updates.getAllValues().get(0).getUpdateObject(),
+				Optional.empty());
+		List<?> each = pushed.get("$push", Document.class).get(QuoteBucketService.QUOTES_FIELD, Document.class)
+				.get("$each", List.class);
+		Assertions.assertEquals(2, each.size());
+		Assertions.assertEquals("btcusd", ((Document) each.get(0)).get("pair"));
+	}
+
+	@Test
+	public void unwindSelectsTheBucketsOfTheRange() {
+		QuoteBucketService quoteBucketService = new QuoteBucketService(this.myMongoRepository, true, 500);
+		Date begin = new Date(10 * HOUR + 1800000L);
+		Document criteria = new Document("pair", "btcusd").append("createdAt", new Document("$gt", begin));
+		List<Document> stages = Aggregation
+				.newAggregation(quoteBucketService.createUnwindOperations(criteria,
+						new Document("createdAt", 1), 1000))
+				.toPipeline(Aggregation.DEFAULT_CONTEXT);
+		Assertions.assertEquals(new Document("$match", new Document("pair", "btcusd").append("createdAt",
+				new Document("$gte", new Date(10 * HOUR)))), stages.get(0));
+		Assertions.assertEquals(new Document("$match", criteria), stages.get(stages.size() - 1));
+		Assertions.assertTrue(stages.stream().noneMatch(stage -> stage.containsKey("$limit")));
+		List<AggregationOperation> firstQuote = quoteBucketService.createUnwindOperations(new Document(),
+				new Document("createdAt", 1), 1);
+		Assertions.assertTrue(Aggregation.newAggregation(firstQuote).toPipeline(Aggregation.DEFAULT_CONTEXT)
+				.contains(new Document("$limit", 1)));
+		Assertions.assertFalse(new QuoteBucketService(this.myMongoRepository, false, 500)
+				.isBucketed(BitstampService.BS_COL));
+	}
+
+	@Test
+	public void migrateMovesRawQuotesOnce() {
+		Document moved = new Document("_id", new ObjectId()).append("pair", "btcusd").append("createdAt",
+				new Date(10 * HOUR + 60000L));
+		Document open = new Document("_id", new ObjectId()).append("pair", "btcusd").append("createdAt",
+				new Date(11 * HOUR + 60000L));
+		String bucketCol = BitstampService.BS_COL + QuoteBucketService.BUCKET_SUFFIX;
+		Mockito.when(this.myMongoRepository.find(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq(Document.class), ArgumentMatchers.eq(BitstampService.BS_COL)))
+				.thenReturn(Flux.just(moved, open));
+		Mockito.when(this.myMongoRepository.findOne(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq(Document.class), ArgumentMatchers.eq(bucketCol)))
+				.thenReturn(Mono.just(new Document()), Mono.empty());
+		AtomicInteger attempts = new AtomicInteger();
+		Mockito.when(this.myMongoRepository.upsert(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(bucketCol)))
+				.thenReturn(Mono.defer(() -> attempts.getAndIncrement() == 0
+						? Mono.error(new DuplicateKeyException("E11000"))
+						: Mono.just(UpdateResult.acknowledged(1L, 1L, null))));
+		Mockito.when(this.myMongoRepository.remove(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq(BitstampService.BS_COL))).thenReturn(Mono.just(DeleteResult.acknowledged(1L)));
+		QuoteBucketService quoteBucketService = new QuoteBucketService(this.myMongoRepository, true, 500);
+		Assertions.assertEquals(2L, quoteBucketService.migrate(BitstampService.BS_COL).block());
+		ArgumentCaptor<Query> bucketQueries = ArgumentCaptor.forClass(Query.class);
+		Mockito.verify(this.myMongoRepository, Mockito.times(1)).upsert(bucketQueries.capture(),
+				ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(bucketCol));
+		Assertions.assertEquals(2, attempts.get());
+		Assertions.assertEquals(new Date(11 * HOUR), bucketQueries.getValue().getQueryObject().get("createdAt"));
+		Mockito.verify(this.myMongoRepository, Mockito.times(2)).remove(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq(BitstampService.BS_COL));
+	}
+
+	private QuoteBs createQuote(String pair, long createdAt) {
+		QuoteBs quote = new QuoteBs(BigDecimal.ONE, BigDecimal.ONE, new Date(createdAt), BigDecimal.ONE,
+				BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE);
+		quote.setPair(pair);
+		quote.setCreatedAt(new Date(createdAt));
+		return quote;
+	}
+}
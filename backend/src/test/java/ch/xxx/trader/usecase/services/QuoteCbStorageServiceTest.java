@@ -0,0 +1,69 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ch.xxx.trader.domain.common.QuoteCbCodec;
+import ch.xxx.trader.domain.model.entity.QuoteCbAccessors;
+import ch.xxx.trader.domain.model.entity.QuoteCbRates;
+
+public class QuoteCbStorageServiceTest {
+	private final QuoteCbStorageService quoteCbStorageService = new QuoteCbStorageService(null,
+			new QuoteCbCodec(List.of(QuoteCbAccessors.FIELDS)), true, true, 500);
+
+	@Test
+	public void chainStoredSnapshots() {
+		QuoteCbRates first = this.chainSnapshot(1);
+		this.quoteCbStorageService.snapshotStored(first, true);
+		QuoteCbRates second = this.chainSnapshot(2);
+		Assertions.assertSame(first, second.getPrevious());
+		Assertions.assertEquals(first.getCreatedAt(), second.getKeyAt());
+	}
+
+	@Test
+	public void fullFrameAfterFailedSnapshot() {
+		this.quoteCbStorageService.snapshotStored(this.chainSnapshot(1), true);
+		this.quoteCbStorageService.snapshotStored(this.chainSnapshot(2), false);
+		QuoteCbRates third = this.chainSnapshot(3);
+		Assertions.assertNull(third.getPrevious());
+		Assertions.assertEquals(third.getCreatedAt(), third.getKeyAt());
+	}
+
+	@Test
+	public void fullFrameAfterPendingSnapshot() {
+		this.quoteCbStorageService.snapshotStored(this.chainSnapshot(1), true);
+		QuoteCbRates second = this.chainSnapshot(2);
+		QuoteCbRates third = this.chainSnapshot(3);
+		Assertions.assertNull(third.getPrevious());
+		this.quoteCbStorageService.snapshotStored(second, true);
+		this.quoteCbStorageService.snapshotStored(third, true);
+		Assertions.assertSame(third, this.chainSnapshot(4).getPrevious());
+	}
+
+	private QuoteCbRates chainSnapshot(int minute) {
+		Date createdAt = Date.from(LocalDateTime.of(2024, 1, 1, 10, minute).atZone(ZoneId.systemDefault())
+				.toInstant());
+		return this.quoteCbStorageService.chainSnapshot(new QuoteCbRates(createdAt,
+				QuoteCbRates.createEmptyRates()));
+	}
+}
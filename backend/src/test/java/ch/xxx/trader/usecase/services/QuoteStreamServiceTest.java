@@ -0,0 +1,95 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.result.UpdateResult;
+
+import ch.xxx.trader.domain.common.QuoteExchange;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.usecase.services.LatestQuoteService.LatestDefinition;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(MockitoExtension.class)
+public class QuoteStreamServiceTest {
+	@Mock
+	private MyMongoRepository myMongoRepository;
+
+	@Test
+	public void streamFilteredQuotes() {
+		Mockito.when(this.myMongoRepository.upsert(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(LatestQuoteService.LATEST_QUOTE_COL)))
+				.thenReturn(Mono.just(UpdateResult.acknowledged(0L, 0L, null)));
+		LatestQuoteService latestQuoteService = new LatestQuoteService(this.myMongoRepository, 10000L);
+		latestQuoteService.register(new LatestDefinition<>(QuoteExchange.BITSTAMP, QuoteBs.class, QuoteBs::getPair));
+		QuoteStreamService quoteStreamService = new QuoteStreamService(latestQuoteService, 4, 60000L);
+		latestQuoteService.publish(this.createQuote("btcusd", 1000L)).block();
+		StepVerifier.create(quoteStreamService.streamQuotes(Optional.of("bitstamp"), Optional.of("BTCUSD")))
+				.expectNextMatches(event -> "bitstamp".equals(event.event()) && "3e8".equals(event.id()))
+				.then(() -> latestQuoteService.publish(this.createQuote("ethusd", 2000L)).block())
+				.then(() -> latestQuoteService.publish(this.createQuote("btcusd", 3000L)).block())
+				.expectNextMatches(event -> "bb8".equals(event.id())).thenCancel().verify(Duration.ofSeconds(5L));
+	}
+
+	@Test
+	public void dropSlowSubscriber() {
+		Mockito.when(this.myMongoRepository.upsert(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.any(Update.class), ArgumentMatchers.eq(LatestQuoteService.LATEST_QUOTE_COL)))
+				.thenReturn(Mono.just(UpdateResult.acknowledged(0L, 0L, null)));
+		LatestQuoteService latestQuoteService = new LatestQuoteService(this.myMongoRepository, 10000L);
+		latestQuoteService.register(new LatestDefinition<>(QuoteExchange.BITSTAMP, QuoteBs.class, QuoteBs::getPair));
+		QuoteStreamService quoteStreamService = new QuoteStreamService(latestQuoteService, 2, 60000L);
+		StepVerifier.create(quoteStreamService.streamQuotes(Optional.empty(), Optional.empty()), 0L)
+				.then(() -> {
+					for (long createdAt = 1L; createdAt <= 3L; createdAt++) {
+						latestQuoteService.publish(this.createQuote("btcusd", createdAt)).block();
+					}
+				}).thenRequest(3L).expectNextCount(2L).verifyComplete();
+	}
+
+	@Test
+	public void rejectUnknownExchange() {
+		QuoteStreamService quoteStreamService = new QuoteStreamService(
+				new LatestQuoteService(this.myMongoRepository, 10000L), 2, 60000L);
+		Assertions.assertEquals(Optional.of(QuoteExchange.BITSTAMP), quoteStreamService.findExchange("Bitstamp"));
+		Assertions.assertTrue(quoteStreamService.findExchange("unknown").isEmpty());
+		StepVerifier.create(quoteStreamService.streamQuotes(Optional.of("unknown"), Optional.empty()))
+				.expectError(IllegalArgumentException.class).verify(Duration.ofSeconds(5L));
+	}
+
+	private QuoteBs createQuote(String pair, long createdAt) {
+		QuoteBs quoteBs = new QuoteBs(BigDecimal.ONE, BigDecimal.ONE, new Date(createdAt), BigDecimal.ONE,
+				BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE);
+		quoteBs.setPair(pair);
+		quoteBs.setCreatedAt(new Date(createdAt));
+		return quoteBs;
+	}
+}
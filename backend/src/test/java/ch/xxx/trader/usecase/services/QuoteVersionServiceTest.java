@@ -0,0 +1,79 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.query.Query;
+
+import ch.xxx.trader.domain.common.MongoUtils.TimeFrame;
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.usecase.common.DtoUtils;
+import ch.xxx.trader.usecase.services.QuoteVersionService.VersionDefinition;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class QuoteVersionServiceTest {
+	@Mock
+	private MyMongoRepository myMongoRepository;
+
+	@Test
+	public void rewrittenBucketChangesVersion() {
+		Mockito.when(this.myMongoRepository.findOne(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq(Document.class), ArgumentMatchers.eq(BitstampService.BS_HOUR_COL)))
+				.thenReturn(Mono.just(new Document(DtoUtils.UPDATEDAT, new Date(1000L))))
+				.thenReturn(Mono.just(new Document(DtoUtils.UPDATEDAT, new Date(2000L))));
+		QuoteVersionService quoteVersionService = this.createService();
+		String eTag = quoteVersionService.findVersion(QuoteBs.class, TimeFrame.SEVENDAYS.getValue(),
+				Optional.of("btcusd")).block().eTag();
+		Assertions.assertNotEquals(eTag, quoteVersionService.findVersion(QuoteBs.class,
+				TimeFrame.SEVENDAYS.getValue(), Optional.of("btcusd")).block().eTag());
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		Mockito.verify(this.myMongoRepository, Mockito.times(2)).findOne(query.capture(),
+				ArgumentMatchers.eq(Document.class), ArgumentMatchers.eq(BitstampService.BS_HOUR_COL));
+		Assertions.assertEquals(new Document(DtoUtils.UPDATEDAT, -1), query.getValue().getSortObject());
+	}
+
+	@Test
+	public void bucketWithoutUpdatedAtUsesCreatedAt() {
+		Mockito.when(this.myMongoRepository.findOne(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq(Document.class), ArgumentMatchers.eq(BitstampService.BS_HOUR_COL)))
+				.thenReturn(Mono.just(new Document()))
+				.thenReturn(Mono.just(new Document(DtoUtils.CREATEDAT, new Date(0x3e8L))));
+		Assertions.assertTrue(this.createService()
+				.findVersion(QuoteBs.class, TimeFrame.SEVENDAYS.getValue(), Optional.of("btcusd")).block().eTag()
+				.startsWith("\"3e8-"));
+	}
+
+	private QuoteVersionService createService() {
+		QuoteVersionService quoteVersionService = new QuoteVersionService(this.myMongoRepository,
+				new LatestQuoteService(this.myMongoRepository, 10000L), 0L);
+		quoteVersionService.register(new VersionDefinition<>(QuoteBs.class,
+				Map.of(TimeFrame.TODAY, BitstampService.BS_COL, TimeFrame.SEVENDAYS, BitstampService.BS_HOUR_COL)));
+		return quoteVersionService;
+	}
+}
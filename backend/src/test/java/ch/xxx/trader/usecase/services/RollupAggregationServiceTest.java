@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.mongodb.client.result.DeleteResult;
+
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyRollupDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class RollupAggregationServiceTest {
+	private static final String COL_NAME = "quotebs1h";
+	private final MyRollupDefinition<QuoteBs> rollupDefinition = new MyRollupDefinition<>("Bitstamp",
+			BitstampService.BS_COL, QuoteBs.class, Optional.of("pair"), QuoteBs::getPair, List.of("last"),
+			List.of(QuoteBs::getLast), List.of(), (pair, bucketBegin, avgs) -> null);
+	@Mock
+	private MyMongoRepository myMongoRepository;
+
+	@Test
+	public void ensureRollupIndexRemovesDuplicates() {
+		Mockito.when(this.myMongoRepository.aggregate(ArgumentMatchers.any(Aggregation.class),
+				ArgumentMatchers.eq(COL_NAME), ArgumentMatchers.eq(Document.class)))
+				.thenReturn(Flux.just(new Document("ids", List.of("a", "b", "c"))));
+		Mockito.when(this.myMongoRepository.remove(ArgumentMatchers.any(Query.class), ArgumentMatchers.eq(COL_NAME)))
+				.thenReturn(Mono.just(DeleteResult.acknowledged(2L)));
+		Mockito.when(this.myMongoRepository.ensureUniqueIndex(COL_NAME, List.of("pair", "createdAt")))
+				.thenReturn(Mono.just("index"));
+		Assertions.assertEquals("index", this.createService().ensureRollupIndex(this.rollupDefinition, COL_NAME)
+				.block());
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		Mockito.verify(this.myMongoRepository).remove(query.capture(), ArgumentMatchers.eq(COL_NAME));
+		Assertions.assertEquals(List.of("b", "c"),
+				query.getValue().getQueryObject().get("_id", Document.class).get("$in"));
+	}
+
+	@Test
+	public void ensureRollupIndexFailsOnIndexError() {
+		Mockito.when(this.myMongoRepository.aggregate(ArgumentMatchers.any(Aggregation.class),
+				ArgumentMatchers.eq(COL_NAME), ArgumentMatchers.eq(Document.class))).thenReturn(Flux.empty());
+		Mockito.when(this.myMongoRepository.ensureUniqueIndex(COL_NAME, List.of("pair", "createdAt")))
+				.thenReturn(Mono.error(new DuplicateKeyException("duplicate")));
+		Assertions.assertThrows(DuplicateKeyException.class,
+				() -> this.createService().ensureRollupIndex(this.rollupDefinition, COL_NAME).block());
+	}
+
+	@Test
+	public void aggregateQuotesReplacesBuckets() {
+		Mockito.when(this.myMongoRepository.aggregate(ArgumentMatchers.any(Aggregation.class),
+				ArgumentMatchers.eq(BitstampService.BS_COL), ArgumentMatchers.eq(Document.class)))
+				.thenReturn(Flux.empty());
+		this.createService().aggregateQuotes(this.rollupDefinition, COL_NAME, new Date(0L), new Date(3600000L),
+				Optional.of("btcusd"), true).block();
+		ArgumentCaptor<Aggregation> aggregation = ArgumentCaptor.forClass(Aggregation.class);
+		Mockito.verify(this.myMongoRepository).aggregate(aggregation.capture(),
+				ArgumentMatchers.eq(BitstampService.BS_COL), ArgumentMatchers.eq(Document.class));
+		List<Document> pipeline = aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+		Document merge = pipeline.get(pipeline.size() - 1).get("$merge", Document.class);
+		Assertions.assertEquals("replace", merge.getString("whenMatched"));
+		Assertions.assertEquals(COL_NAME, merge.getString("into"));
+	}
+
+	private RollupAggregationService createService() {
+		return new RollupAggregationService(this.myMongoRepository, false,
+				new QuoteBucketService(this.myMongoRepository, false, 500));
+	}
+}
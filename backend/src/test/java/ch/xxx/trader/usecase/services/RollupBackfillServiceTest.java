@@ -0,0 +1,111 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.usecase.services;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.query.Query;
+
+import ch.xxx.trader.domain.model.entity.QuoteBs;
+import ch.xxx.trader.domain.model.entity.RollupCheckpoint;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyRollupDefinition;
+import ch.xxx.trader.usecase.services.ServiceUtils.MyTimeFrame;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class RollupBackfillServiceTest {
+	private static final String COL_NAME = "quotebs1h";
+	private static final String CHECKPOINT_COL = "rollupCheckpoint";
+	private final MyRollupDefinition<QuoteBs> rollupDefinition = new MyRollupDefinition<>("Bitstamp",
+			BitstampService.BS_COL, QuoteBs.class, Optional.of("pair"), QuoteBs::getPair, List.of("last"),
+			List.of(QuoteBs::getLast), List.of(), (pair, bucketBegin, avgs) -> null);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	@Mock
+	private MyMongoRepository myMongoRepository;
+	private RollupBackfillService rollupBackfillService;
+
+	@AfterEach
+	public void shutdown() {
+		Optional.ofNullable(this.rollupBackfillService).ifPresent(RollupBackfillService::shutdown);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void backfillReconcilesDoneChunksOfTheTimeFrame() {
+		Date firstDay = this.createDate(3, LocalTime.MIDNIGHT);
+		RollupCheckpoint doneCheckpoint = new RollupCheckpoint(COL_NAME, "btcusd", firstDay,
+				this.createDate(2, LocalTime.MIDNIGHT));
+		doneCheckpoint.setDone(true);
+		Mockito.when(this.myMongoRepository.findDistinct(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq("pair"), ArgumentMatchers.eq(BitstampService.BS_COL),
+				ArgumentMatchers.eq(String.class))).thenReturn(Flux.just("btcusd"));
+		Mockito.when(this.myMongoRepository.find(ArgumentMatchers.any(Query.class),
+				ArgumentMatchers.eq(RollupCheckpoint.class), ArgumentMatchers.eq(CHECKPOINT_COL)))
+				.thenAnswer(invocation -> invocation.getArgument(0, Query.class).getQueryObject()
+						.containsKey("done") ? Flux.empty() : Flux.just(doneCheckpoint));
+		Mockito.when(this.myMongoRepository.insertAll(ArgumentMatchers.any(), ArgumentMatchers.eq(CHECKPOINT_COL)))
+				.thenAnswer(invocation -> invocation.getArgument(0, Mono.class)
+						.flatMapIterable(checkpoints -> (Collection<Object>) checkpoints));
+		Mockito.when(this.myMongoRepository.save(ArgumentMatchers.any(RollupCheckpoint.class)))
+				.thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+		List<Date> chunkBegins = new ArrayList<>();
+		this.rollupBackfillService = new RollupBackfillService(this.myMongoRepository, this.meterRegistry, 1,
+				new QuoteBucketService(this.myMongoRepository, false, 500));
+
+		long chunks = this.rollupBackfillService.backfill(this.rollupDefinition, COL_NAME,
+				this.createTimeFrame(this.createDate(3, LocalTime.of(10, 0))), (timeFrame, pair) -> {
+					chunkBegins.add(timeFrame.begin().getTime());
+					return Mono.just(pair);
+				});
+
+		Assertions.assertEquals(2L, chunks);
+		Assertions.assertEquals(List.of(firstDay, this.createDate(2, LocalTime.MIDNIGHT)),
+				chunkBegins.stream().sorted().toList());
+		Assertions.assertEquals(2L, this.meterRegistry.get("rollup.backfill.chunk.duration").timer().count());
+		Assertions.assertEquals(0.0, this.meterRegistry.get("rollup.backfill.chunks.pending").gauge().value());
+	}
+
+	private MyTimeFrame createTimeFrame(Date begin) {
+		Calendar beginCal = Calendar.getInstance();
+		beginCal.setTime(begin);
+		Calendar endCal = Calendar.getInstance();
+		endCal.setTime(begin);
+		endCal.add(Calendar.DAY_OF_YEAR, 1);
+		return new MyTimeFrame(beginCal, endCal);
+	}
+
+	private Date createDate(int daysAgo, LocalTime time) {
+		return Date.from(LocalDate.now().minusDays(daysAgo).atTime(time).atZone(ZoneId.systemDefault()).toInstant());
+	}
+}
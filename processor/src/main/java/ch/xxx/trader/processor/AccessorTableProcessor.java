@@ -0,0 +1,170 @@
+/**
+ *    Copyright 2016 Sven Loesekann
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package ch.xxx.trader.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the accessor table of a class annotated with AccessorTable. The
+ * getter and setter of a field are found by name ignoring case, with trailing
+ * digits of the field name dropped or moved to the front as fallbacks
+ * (super1 -> getSuper, inch1 -> get1inch). The currency of a field is the
+ * JsonProperty of the field or its setter, else the field name.
+ */
+@SupportedAnnotationTypes(AccessorTableProcessor.ACCESSOR_TABLE)
+public class AccessorTableProcessor extends AbstractProcessor {
+	static final String ACCESSOR_TABLE = "ch.xxx.trader.domain.common.AccessorTable";
+	private static final String JSON_PROPERTY = "com.fasterxml.jackson.annotation.JsonProperty";
+	private static final String BIG_DECIMAL = "java.math.BigDecimal";
+
+	private record Accessor(String field, String currency, String getter, String setter) {
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() == ElementKind.CLASS) {
+					this.generate((TypeElement) element);
+				}
+			}
+		}
+		return true;
+	}
+
+	private void generate(TypeElement typeElement) {
+		List<ExecutableElement> methods = ElementFilter.methodsIn(typeElement.getEnclosedElements()).stream()
+				.filter(method -> method.getModifiers().contains(Modifier.PUBLIC)).toList();
+		List<Accessor> accessors = new ArrayList<>();
+		for (VariableElement field : ElementFilter.fieldsIn(typeElement.getEnclosedElements())) {
+			if (field.getModifiers().contains(Modifier.STATIC) || !BIG_DECIMAL.equals(field.asType().toString())) {
+				continue;
+			}
+			String fieldName = field.getSimpleName().toString();
+			Optional<ExecutableElement> getter = this.findAccessor(methods, "get", fieldName, 0);
+			List<ExecutableElement> setters = this.findAccessors(methods, "set", fieldName, 1);
+			if (getter.isEmpty() || setters.isEmpty()) {
+				this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"No getter or setter found for field " + fieldName, field);
+				continue;
+			}
+			String currency = this.findJsonProperty(field)
+					.or(() -> setters.stream().flatMap(setter -> this.findJsonProperty(setter).stream()).findFirst())
+					.orElse(fieldName).toLowerCase(Locale.ROOT);
+			accessors.add(new Accessor(fieldName, currency, getter.get().getSimpleName().toString(),
+					setters.get(0).getSimpleName().toString()));
+		}
+		this.write(typeElement, accessors);
+	}
+
+	private Optional<ExecutableElement> findAccessor(List<ExecutableElement> methods, String prefix,
+			String fieldName, int parameters) {
+		return this.findAccessors(methods, prefix, fieldName, parameters).stream().findFirst();
+	}
+
+	private List<ExecutableElement> findAccessors(List<ExecutableElement> methods, String prefix, String fieldName,
+			int parameters) {
+		String digits = fieldName.replaceAll("^.*?(\\d*)$", "$1");
+		String letters = fieldName.substring(0, fieldName.length() - digits.length());
+		return Stream.of(fieldName, letters, digits + letters).distinct()
+				.flatMap(name -> methods.stream()
+						.filter(method -> method.getParameters().size() == parameters
+								&& method.getSimpleName().toString().equalsIgnoreCase(prefix + name)))
+				.toList();
+	}
+
+	private Optional<String> findJsonProperty(Element element) {
+		for (AnnotationMirror annotationMirror : element.getAnnotationMirrors()) {
+			if (JSON_PROPERTY.equals(annotationMirror.getAnnotationType().toString())) {
+				return annotationMirror.getElementValues().entrySet().stream()
+						.filter(entry -> entry.getKey().getSimpleName().contentEquals("value"))
+						.map(entry -> entry.getValue()).map(AnnotationValue::getValue).map(Object::toString)
+						.filter(value -> !value.isBlank()).findFirst();
+			}
+		}
+		return Optional.empty();
+	}
+
+	private void write(TypeElement typeElement, List<Accessor> accessors) {
+		String packageName = this.processingEnv.getElementUtils().getPackageOf(typeElement).getQualifiedName()
+				.toString();
+		String typeName = typeElement.getSimpleName().toString();
+		String className = typeName + "Accessors";
+		try (PrintWriter out = new PrintWriter(this.processingEnv.getFiler()
+				.createSourceFile(packageName + "." + className, typeElement).openWriter())) {
+			out.printf("package %s;%n%n", packageName);
+			out.printf("import java.math.BigDecimal;%nimport java.util.HashMap;%nimport java.util.Map;%n%n");
+			out.printf("// generated by %s%n", AccessorTableProcessor.class.getName());
+			out.printf("public final class %s {%n", className);
+			out.printf("\tpublic static final String[] FIELDS = { %s };%n", this.joinQuoted(accessors, true));
+			out.printf("\tpublic static final String[] CURRENCIES = { %s };%n", this.joinQuoted(accessors, false));
+			out.printf("\tprivate static final Map<String, Integer> INDEXES = new HashMap<>();%n%n");
+			out.printf("\tstatic {%n\t\tfor (int i = 0; i < FIELDS.length; i++) {%n");
+			out.printf("\t\t\tINDEXES.put(FIELDS[i], i);%n\t\t\tINDEXES.putIfAbsent(CURRENCIES[i], i);%n\t\t}%n\t}%n%n");
+			out.printf("\tprivate %s() {%n\t}%n%n", className);
+			out.printf("\tpublic static int size() {%n\t\treturn FIELDS.length;%n\t}%n%n");
+			out.printf("\tpublic static int indexOf(String name) {%n");
+			out.printf("\t\treturn INDEXES.getOrDefault(name.toLowerCase(), -1);%n\t}%n%n");
+			out.printf("\tpublic static BigDecimal get(%s quote, int index) {%n\t\treturn switch (index) {%n",
+					typeName);
+			for (int i = 0; i < accessors.size(); i++) {
+				out.printf("\t\tcase %d -> quote.%s();%n", i, accessors.get(i).getter());
+			}
+			out.printf("\t\tdefault -> throw new IndexOutOfBoundsException(index);%n\t\t};%n\t}%n%n");
+			out.printf("\tpublic static void set(%s quote, int index, BigDecimal value) {%n\t\tswitch (index) {%n",
+					typeName);
+			for (int i = 0; i < accessors.size(); i++) {
+				out.printf("\t\tcase %d -> quote.%s(value);%n", i, accessors.get(i).setter());
+			}
+			out.printf("\t\tdefault -> throw new IndexOutOfBoundsException(index);%n\t\t}%n\t}%n}%n");
+		} catch (IOException e) {
+			this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Generating " + className + " failed: " + e.getMessage(), typeElement);
+		}
+	}
+
+	private String joinQuoted(List<Accessor> accessors, boolean fields) {
+		return String.join(", ", accessors.stream()
+				.map(accessor -> "\"" + (fields ? accessor.field() : accessor.currency()) + "\"").toList());
+	}
+}